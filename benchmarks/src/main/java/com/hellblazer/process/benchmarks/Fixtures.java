@@ -0,0 +1,84 @@
+/** (C) Copyright 2011-2014 Chiral Behaviors, All Rights Reserved
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package com.hellblazer.process.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+
+import com.hellblazer.process.ManagedProcess;
+import com.hellblazer.process.ManagedProcessFactory;
+import com.hellblazer.process.impl.AbstractManagedProcess;
+import com.hellblazer.process.impl.ManagedProcessFactoryImpl;
+
+/**
+ * Shared set up of the processes under benchmark
+ * 
+ * @author hhildebrand
+ * 
+ */
+final class Fixtures {
+    static final ManagedProcessFactory FACTORY  = new ManagedProcessFactoryImpl();
+    static final String                ROOT_DIR = "benchmark-dirs";
+
+    /**
+     * @param name
+     * @return a freshly initialized directory to run benchmark processes in
+     * @throws IOException
+     */
+    static File directory(String name) throws IOException {
+        File directory = new File(ROOT_DIR, name);
+        AbstractManagedProcess.initializeDirectory(directory);
+        return directory;
+    }
+
+    /**
+     * @param directory
+     * @param command
+     * @return a started process running the command
+     * @throws IOException
+     */
+    static ManagedProcess start(File directory, String... command)
+                                                                  throws IOException {
+        ManagedProcess process = FACTORY.create();
+        process.setDirectory(directory);
+        process.setCommand(command);
+        process.start();
+        return process;
+    }
+
+    /**
+     * Stop the process, if any, and remove its control directory
+     * 
+     * @param process
+     * @throws IOException
+     */
+    static void destroy(ManagedProcess process) throws IOException {
+        if (process == null) {
+            return;
+        }
+        process.stop(0);
+        File directory = process.getDirectory();
+        if (directory != null) {
+            for (File file : directory.listFiles()) {
+                if (file.getName().endsWith(process.getId().toString())) {
+                    AbstractManagedProcess.remove(file);
+                }
+            }
+        }
+    }
+
+    private Fixtures() {
+    }
+}
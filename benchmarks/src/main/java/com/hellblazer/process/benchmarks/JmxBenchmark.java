@@ -0,0 +1,103 @@
+/** (C) Copyright 2011-2014 Chiral Behaviors, All Rights Reserved
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package com.hellblazer.process.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServerConnection;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.hellblazer.process.JavaProcess;
+import com.hellblazer.process.ManagedProcess;
+import com.hellblazer.process.NoLocalJmxConnectionException;
+import com.hellblazer.process.impl.JavaProcessImpl;
+import com.hellblazer.process.impl.JmxConnectorCache;
+
+/**
+ * The latency of obtaining a local JMX connection to a running Java process,
+ * both when the connector is cached by the shared {@link JmxConnectorCache}
+ * and when it must be established by attaching to the process. The cached
+ * connector is shared, so is never closed by the benchmark; to attach anew,
+ * the connectors of the process are evicted through the cache instead.
+ * 
+ * @author hhildebrand
+ * 
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JmxBenchmark {
+    private static final long STARTUP_TIMEOUT_MILLIS = 60 * 1000;
+
+    private JavaProcess       javaProcess;
+    private ManagedProcess    process;
+
+    @Benchmark
+    public MBeanServerConnection attachAndConnect() throws IOException,
+                                                  NoLocalJmxConnectionException {
+        JmxConnectorCache.getDefault().close(process.getId());
+        return javaProcess.getLocalJmxConnector(JmxTarget.JMX_CONNECTION_NAME).getMBeanServerConnection();
+    }
+
+    @Benchmark
+    public MBeanServerConnection cachedConnection() throws IOException,
+                                                  NoLocalJmxConnectionException {
+        return javaProcess.getLocalMBeanServerConnection(JmxTarget.JMX_CONNECTION_NAME);
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, InterruptedException {
+        process = Fixtures.FACTORY.create();
+        javaProcess = new JavaProcessImpl(process);
+        javaProcess.setDirectory(Fixtures.directory("jmx"));
+        javaProcess.setJavaExecutable(new File(System.getProperty("java.home"),
+                                               "bin/java"));
+        javaProcess.setVmOptions(new String[] { "-cp",
+                System.getProperty("java.class.path") });
+        javaProcess.setJavaClass(JmxTarget.class.getCanonicalName());
+        javaProcess.start();
+        long deadline = System.currentTimeMillis() + STARTUP_TIMEOUT_MILLIS;
+        while (!javaProcess.getStdOutTail(1).startsWith(JmxTarget.STARTUP_MSG)) {
+            if (!javaProcess.isActive()
+                || System.currentTimeMillis() > deadline) {
+                throw new IllegalStateException("JmxTarget did not start: "
+                                                + javaProcess.getStdErrTail(20));
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Fixtures.destroy(process);
+    }
+}
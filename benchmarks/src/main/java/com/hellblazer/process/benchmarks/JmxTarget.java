@@ -0,0 +1,49 @@
+/** (C) Copyright 2011-2014 Chiral Behaviors, All Rights Reserved
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package com.hellblazer.process.benchmarks;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.remote.JMXConnectorServer;
+import javax.management.remote.JMXConnectorServerFactory;
+import javax.management.remote.JMXServiceURL;
+
+/**
+ * The Java process connected to by the JMX benchmarks. Exports the platform
+ * MBean server on a loopback RMI connector, publishes the address of the
+ * connector in the system property {@value #JMX_CONNECTION_NAME} and sleeps.
+ * 
+ * @author hhildebrand
+ * 
+ */
+public class JmxTarget {
+    public static final String JMX_CONNECTION_NAME = "com.hellblazer.process.benchmarks.jmx";
+    public static final String STARTUP_MSG         = "JmxTarget started";
+
+    public static void main(String[] argv) throws Exception {
+        System.setProperty("java.rmi.server.hostname", "127.0.0.1");
+        JMXConnectorServer server = JMXConnectorServerFactory.newJMXConnectorServer(new JMXServiceURL(
+                                                                                                      "rmi",
+                                                                                                      "127.0.0.1",
+                                                                                                      0),
+                                                                                    null,
+                                                                                    ManagementFactory.getPlatformMBeanServer());
+        server.start();
+        System.setProperty(JMX_CONNECTION_NAME, server.getAddress().toString());
+        System.out.println(STARTUP_MSG);
+        System.out.flush();
+        Thread.sleep(Long.MAX_VALUE);
+    }
+}
@@ -0,0 +1,76 @@
+/** (C) Copyright 2011-2014 Chiral Behaviors, All Rights Reserved
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package com.hellblazer.process.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.hellblazer.process.ManagedProcess;
+
+/**
+ * The latency of creating and starting a process, from
+ * <code>ManagedProcessFactory.create()</code> to the return of
+ * <code>start()</code>, and of waiting for a trivial process to exit.
+ * 
+ * @author hhildebrand
+ * 
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LaunchBenchmark {
+    private File           directory;
+    private ManagedProcess process;
+
+    @Benchmark
+    public ManagedProcess createAndStart() throws IOException {
+        process = Fixtures.start(directory, "/bin/true");
+        return process;
+    }
+
+    @Benchmark
+    public int startAndWaitFor() throws IOException, InterruptedException {
+        process = Fixtures.start(directory, "/bin/true");
+        return process.waitFor();
+    }
+
+    @TearDown(Level.Invocation)
+    public void destroyProcess() throws IOException {
+        Fixtures.destroy(process);
+        process = null;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Fixtures.directory("launch");
+    }
+}
@@ -0,0 +1,116 @@
+/** (C) Copyright 2011-2014 Chiral Behaviors, All Rights Reserved
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package com.hellblazer.process.benchmarks;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.input.ReversedLinesFileReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.hellblazer.process.impl.AbstractManagedProcess;
+import com.hellblazer.process.impl.ReverseLineScanner;
+
+/**
+ * The cost of reading the tail of a large capture file with the memory mapped
+ * ReverseLineScanner, against the commons-io ReversedLinesFileReader it
+ * replaces, by the size of the file and the number of lines read.
+ * 
+ * @author hhildebrand
+ * 
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReverseScanBenchmark {
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+
+    @Param({ "1073741824" })
+    private long                 fileSize;
+    @Param({ "10", "1000", "100000" })
+    private int                  lines;
+    private File                 file;
+
+    @Benchmark
+    public String reversedLinesFileReader() throws IOException {
+        List<String> tail = new ArrayList<>();
+        try (ReversedLinesFileReader reader = new ReversedLinesFileReader(
+                                                                          file,
+                                                                          4096,
+                                                                          CHARSET)) {
+            String line;
+            while (tail.size() < lines && (line = reader.readLine()) != null) {
+                tail.add(line);
+            }
+        }
+        Collections.reverse(tail);
+        StringBuilder builder = new StringBuilder();
+        for (String line : tail) {
+            builder.append(line);
+            builder.append('\n');
+        }
+        return builder.toString();
+    }
+
+    @Benchmark
+    public String reverseLineScanner() throws IOException {
+        return ReverseLineScanner.tail(file, lines, CHARSET);
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        File directory = Fixtures.directory("reverse-scan");
+        file = new File(directory, "std.out");
+        try (OutputStream out = new BufferedOutputStream(
+                                                         new FileOutputStream(
+                                                                              file),
+                                                         1024 * 1024)) {
+            long written = 0;
+            for (long i = 0; written < fileSize; i++) {
+                byte[] line = ("line " + i + " of the captured output of a process\n").getBytes(CHARSET);
+                out.write(line);
+                written += line.length;
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        AbstractManagedProcess.remove(file);
+    }
+}
@@ -0,0 +1,77 @@
+/** (C) Copyright 2011-2014 Chiral Behaviors, All Rights Reserved
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package com.hellblazer.process.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.hellblazer.process.ManagedProcess;
+
+/**
+ * The latency of observing the exit of a process which runs for
+ * {@value #RUN_MILLIS} milliseconds. Anything measured above that is the delay
+ * between the exit of the process and the return of <code>waitFor()</code>.
+ * 
+ * @author hhildebrand
+ * 
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WaitForBenchmark {
+    public static final int RUN_MILLIS = 50;
+
+    private File            directory;
+    private ManagedProcess  process;
+
+    @Setup(Level.Invocation)
+    public void launch() throws IOException {
+        process = Fixtures.start(directory, "sleep",
+                                 String.valueOf(RUN_MILLIS / 1000.0));
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Fixtures.directory("wait-for");
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDown() throws IOException {
+        Fixtures.destroy(process);
+        process = null;
+    }
+
+    @Benchmark
+    public int waitFor() throws InterruptedException {
+        return process.waitFor();
+    }
+}
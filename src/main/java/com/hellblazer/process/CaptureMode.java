@@ -0,0 +1,39 @@
+/** (C) Copyright 2011-2014 Chiral Behaviors, All Rights Reserved
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package com.hellblazer.process;
+
+/**
+ * How the STD OUT and STD ERR streams of a managed process are captured.
+ * 
+ * @author hhildebrand
+ * 
+ */
+public enum CaptureMode {
+    /**
+     * The process writes directly to the capture files of its control
+     * directory, which are read by polling or watching them. The output of the
+     * process is captured whether or not a VM is managing it.
+     */
+    FILE,
+    /**
+     * The process writes to pipes, which are drained by a reader shared by
+     * all processes. The output is fanned out in memory to the tailers of the
+     * process and written to the capture files asynchronously, in large
+     * batches. The process is no longer independent of the VM which launched
+     * it: when that VM exits, the process loses its output and is signalled
+     * with SIGPIPE on its next write.
+     */
+    PIPE;
+}
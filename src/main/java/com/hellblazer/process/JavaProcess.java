@@ -16,6 +16,7 @@ package com.hellblazer.process;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.ConnectException;
 import java.util.List;
 
@@ -66,6 +67,36 @@ public interface JavaProcess extends ManagedProcess {
      */
     List<String> getVmOptions();
 
+    /**
+     * Take a histogram of the heap of the process, as
+     * <code>jcmd &lt;pid&gt; GC.class_histogram</code> would
+     * 
+     * @return the histogram, which must be closed
+     * @throws IOException
+     */
+    InputStream heapHistogram() throws IOException;
+
+    /**
+     * @return true if the process publishes the addresses of its JMX
+     *         connectors into its control directory as it starts
+     */
+    boolean isJmxAddressPublished();
+
+    /**
+     * Execute a diagnostic command in the process through the attach API, as
+     * <code>jcmd &lt;pid&gt; &lt;command&gt;</code> would, without forking a
+     * JVM to do so
+     * 
+     * @param command
+     *            - the command and its arguments, such as
+     *            <code>VM.flags -all</code>
+     * @return the output of the command, which must be closed; streamed from
+     *         the process where the attach API allows, otherwise buffered in
+     *         memory whole
+     * @throws IOException
+     */
+    InputStream jcmd(String command) throws IOException;
+
     void setArguments(List<String> arguments);
 
     void setArguments(String[] arguments);
@@ -80,7 +111,44 @@ public interface JavaProcess extends ManagedProcess {
 
     void setJavaExecutable(String javaExecutable);
 
+    /**
+     * Publish the addresses of the JMX connectors of the process into its
+     * control directory as it starts, so that the local JMX connectors of the
+     * process are resolved by reading a file, rather than by attaching to the
+     * process. The process is launched with an agent which publishes every
+     * system property holding a JMX service URL, as the property is set.
+     * 
+     * @param published
+     */
+    void setJmxAddressPublished(boolean published);
+
     void setVmOptions(List<String> vmOptions);
 
     void setVmOptions(String[] vmOptions);
+
+    /**
+     * Subscribe to the garbage collection and memory threshold notifications
+     * of the process, through the named local JMX connection. The
+     * subscription is made as soon as the process can be connected to, is
+     * made again whenever the connection is lost or the process restarted,
+     * and is cancelled when the process is destroyed.
+     * 
+     * @param connectionName
+     *            - the name of the local JMX connection
+     * @param listener
+     *            - the listener notified of the events, or null to only
+     *            aggregate the pauses of the garbage collections
+     * @return the subscription
+     */
+    MemoryEventSubscription subscribeMemoryEvents(String connectionName,
+                                                  MemoryEventListener listener);
+
+    /**
+     * Dump the threads of the process, as
+     * <code>jcmd &lt;pid&gt; Thread.print</code> would
+     * 
+     * @return the thread dump, which must be closed
+     * @throws IOException
+     */
+    InputStream threadDump() throws IOException;
 }
\ No newline at end of file
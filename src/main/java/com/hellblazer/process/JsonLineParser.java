@@ -0,0 +1,262 @@
+/** (C) Copyright 2011-2014 Chiral Behaviors, All Rights Reserved
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package com.hellblazer.process;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parses a line holding a single JSON object, as logged in the JSON lines
+ * format. The parser is a single pass over the characters of the line, and
+ * allocates nothing but the values it returns. As the parser recurses into
+ * nested values, a line nested deeper than the maximum depth is not parsed.
+ * 
+ * @author hhildebrand
+ * 
+ */
+final class JsonLineParser {
+    static final int MAX_DEPTH = 64;
+
+    /**
+     * Parse the object held by the line
+     * 
+     * @param line
+     * @return the members of the object, in order, or null if the line does
+     *         not hold exactly one JSON object, or if its values are nested
+     *         deeper than the maximum depth
+     */
+    static Map<String, Object> parse(String line) {
+        JsonLineParser parser = new JsonLineParser(line);
+        parser.skipWhitespace();
+        if (!parser.peek('{')) {
+            return null;
+        }
+        try {
+            Map<String, Object> object = parser.object();
+            parser.skipWhitespace();
+            return parser.position == line.length() ? object : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private int          depth;
+    private final String line;
+    private int          position;
+
+    private JsonLineParser(String line) {
+        this.line = line;
+    }
+
+    private List<Object> array() {
+        expect('[');
+        enter();
+        List<Object> array = new ArrayList<>();
+        skipWhitespace();
+        if (peek(']')) {
+            position++;
+            depth--;
+            return array;
+        }
+        while (true) {
+            array.add(value());
+            skipWhitespace();
+            if (peek(',')) {
+                position++;
+            } else {
+                expect(']');
+                depth--;
+                return array;
+            }
+        }
+    }
+
+    private void enter() {
+        if (++depth > MAX_DEPTH) {
+            throw new IllegalArgumentException("Nested deeper than "
+                                               + MAX_DEPTH + " at " + position);
+        }
+    }
+
+    private void expect(char c) {
+        skipWhitespace();
+        if (!peek(c)) {
+            throw new IllegalArgumentException("Expected " + c + " at "
+                                               + position);
+        }
+        position++;
+    }
+
+    private void literal(String literal) {
+        if (!line.startsWith(literal, position)) {
+            throw new IllegalArgumentException("Expected " + literal + " at "
+                                               + position);
+        }
+        position += literal.length();
+    }
+
+    private Object number() {
+        int start = position;
+        boolean integral = true;
+        if (peek('-')) {
+            position++;
+        }
+        while (position < line.length()) {
+            char c = line.charAt(position);
+            if (c == '.' || c == 'e' || c == 'E' || c == '+' || c == '-') {
+                integral = false;
+            } else if (c < '0' || c > '9') {
+                break;
+            }
+            position++;
+        }
+        String number = line.substring(start, position);
+        if (integral) {
+            try {
+                return Long.valueOf(number);
+            } catch (NumberFormatException e) {
+                // too large for a long
+            }
+        }
+        return Double.valueOf(number);
+    }
+
+    private Map<String, Object> object() {
+        expect('{');
+        enter();
+        Map<String, Object> object = new LinkedHashMap<>();
+        skipWhitespace();
+        if (peek('}')) {
+            position++;
+            depth--;
+            return object;
+        }
+        while (true) {
+            skipWhitespace();
+            String name = string();
+            expect(':');
+            object.put(name, value());
+            skipWhitespace();
+            if (peek(',')) {
+                position++;
+            } else {
+                expect('}');
+                depth--;
+                return object;
+            }
+        }
+    }
+
+    private boolean peek(char c) {
+        return position < line.length() && line.charAt(position) == c;
+    }
+
+    private void skipWhitespace() {
+        while (position < line.length()
+               && Character.isWhitespace(line.charAt(position))) {
+            position++;
+        }
+    }
+
+    private String string() {
+        expect('"');
+        StringBuilder builder = null;
+        int start = position;
+        while (position < line.length()) {
+            char c = line.charAt(position);
+            if (c == '"') {
+                String string = builder == null ? line.substring(start,
+                                                                 position)
+                                               : builder.append(line,
+                                                                start,
+                                                                position).toString();
+                position++;
+                return string;
+            }
+            if (c != '\\') {
+                position++;
+                continue;
+            }
+            if (builder == null) {
+                builder = new StringBuilder();
+            }
+            builder.append(line, start, position);
+            if (++position == line.length()) {
+                break;
+            }
+            char escaped = line.charAt(position++);
+            switch (escaped) {
+                case 'b':
+                    builder.append('\b');
+                    break;
+                case 'f':
+                    builder.append('\f');
+                    break;
+                case 'n':
+                    builder.append('\n');
+                    break;
+                case 'r':
+                    builder.append('\r');
+                    break;
+                case 't':
+                    builder.append('\t');
+                    break;
+                case 'u':
+                    if (position + 4 > line.length()) {
+                        throw new IllegalArgumentException(
+                                                           "Truncated escape at "
+                                                                   + position);
+                    }
+                    builder.append((char) Integer.parseInt(line.substring(position,
+                                                                          position + 4),
+                                                           16));
+                    position += 4;
+                    break;
+                default:
+                    builder.append(escaped);
+            }
+            start = position;
+        }
+        throw new IllegalArgumentException("Unterminated string");
+    }
+
+    private Object value() {
+        skipWhitespace();
+        if (position == line.length()) {
+            throw new IllegalArgumentException("Expected a value");
+        }
+        switch (line.charAt(position)) {
+            case '{':
+                return object();
+            case '[':
+                return array();
+            case '"':
+                return string();
+            case 't':
+                literal("true");
+                return Boolean.TRUE;
+            case 'f':
+                literal("false");
+                return Boolean.FALSE;
+            case 'n':
+                literal("null");
+                return null;
+            default:
+                return number();
+        }
+    }
+}
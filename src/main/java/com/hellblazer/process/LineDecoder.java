@@ -0,0 +1,38 @@
+/** (C) Copyright 2011-2014 Chiral Behaviors, All Rights Reserved
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package com.hellblazer.process;
+
+/**
+ * Decodes a line of the captured output of a process into a {@link LogEvent}.
+ * Decoders are called for each line as it is captured, on the threads shared
+ * by the listeners of the tailers of all processes, so must be fast and
+ * should not block.
+ * 
+ * The standard decoders are the {@link LogFormat}s.
+ * 
+ * @author hhildebrand
+ * 
+ */
+public interface LineDecoder {
+    /**
+     * Decode the line
+     * 
+     * @param line
+     *            - the line, without its terminator
+     * @return the event decoded from the line, or null if the line is to be
+     *         skipped
+     */
+    LogEvent decode(String line);
+}
@@ -0,0 +1,100 @@
+/** (C) Copyright 2011-2014 Chiral Behaviors, All Rights Reserved
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package com.hellblazer.process;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * An event decoded from a line of the captured output of a process by a
+ * {@link LineDecoder}. A structured event carries the fields decoded from the
+ * line; an unstructured event carries only the line.
+ * 
+ * @author hhildebrand
+ * 
+ */
+public class LogEvent {
+    private final Map<String, Object> fields;
+    private final String              line;
+    private final boolean             structured;
+
+    /**
+     * An unstructured event
+     * 
+     * @param line
+     */
+    public LogEvent(String line) {
+        this.line = line;
+        fields = Collections.emptyMap();
+        structured = false;
+    }
+
+    /**
+     * A structured event
+     * 
+     * @param line
+     * @param fields
+     *            - the fields decoded from the line
+     */
+    public LogEvent(String line, Map<String, Object> fields) {
+        this.line = line;
+        this.fields = Collections.unmodifiableMap(fields);
+        structured = true;
+    }
+
+    /**
+     * @param field
+     * @return the value of the field, or null if the event has no such field
+     */
+    public Object get(String field) {
+        return fields.get(field);
+    }
+
+    /**
+     * @return the fields of the event, in the order they were decoded
+     */
+    public Map<String, Object> getFields() {
+        return fields;
+    }
+
+    /**
+     * @return the line the event was decoded from
+     */
+    public String getLine() {
+        return line;
+    }
+
+    /**
+     * @param field
+     * @return the value of the field as a string, or null if the event has no
+     *         such field
+     */
+    public String getString(String field) {
+        Object value = fields.get(field);
+        return value == null ? null : value.toString();
+    }
+
+    /**
+     * @return true if fields were decoded from the line
+     */
+    public boolean isStructured() {
+        return structured;
+    }
+
+    @Override
+    public String toString() {
+        return structured ? "LogEvent " + fields : "LogEvent [" + line + "]";
+    }
+}
@@ -0,0 +1,39 @@
+/** (C) Copyright 2011-2014 Chiral Behaviors, All Rights Reserved
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package com.hellblazer.process;
+
+/**
+ * A subscriber to the events decoded from the captured output of a process.
+ * Listeners are notified in order, on the threads shared by the listeners of
+ * the tailers of all processes, so should not block for long.
+ * 
+ * @author hhildebrand
+ * 
+ */
+public interface LogEventListener {
+    /**
+     * The output could not be read
+     * 
+     * @param e
+     */
+    void handle(Exception e);
+
+    /**
+     * An event has been decoded from the output
+     * 
+     * @param event
+     */
+    void handle(LogEvent event);
+}
@@ -0,0 +1,64 @@
+/** (C) Copyright 2011-2014 Chiral Behaviors, All Rights Reserved
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package com.hellblazer.process;
+
+import java.util.Map;
+
+/**
+ * The standard formats of the lines logged by a process. A line which is not
+ * in the format is decoded as an unstructured event, so that output mixing
+ * structured and plain lines loses nothing.
+ * 
+ * @author hhildebrand
+ * 
+ */
+public enum LogFormat implements LineDecoder {
+    /**
+     * Each line is an object in JSON, the members of which are the fields of
+     * the event. Values are decoded as String, Long, Double, Boolean, null,
+     * List and Map. A line nested too deeply is decoded as an unstructured
+     * event.
+     */
+    JSON {
+        @Override
+        public LogEvent decode(String line) {
+            Map<String, Object> fields = JsonLineParser.parse(line);
+            return fields == null ? new LogEvent(line) : new LogEvent(line,
+                                                                      fields);
+        }
+    },
+    /**
+     * Each line is a sequence of key=value pairs, the values of which may be
+     * quoted. Values are decoded as String, but for bare keys, which are
+     * decoded as Boolean.TRUE.
+     */
+    LOGFMT {
+        @Override
+        public LogEvent decode(String line) {
+            Map<String, Object> fields = LogfmtParser.parse(line);
+            return fields == null ? new LogEvent(line) : new LogEvent(line,
+                                                                      fields);
+        }
+    },
+    /**
+     * Lines are not parsed, and are decoded as unstructured events
+     */
+    PLAIN {
+        @Override
+        public LogEvent decode(String line) {
+            return new LogEvent(line);
+        }
+    };
+}
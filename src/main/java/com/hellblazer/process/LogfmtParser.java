@@ -0,0 +1,116 @@
+/** (C) Copyright 2011-2014 Chiral Behaviors, All Rights Reserved
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package com.hellblazer.process;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Parses a line logged in the logfmt format: a sequence of key=value pairs
+ * separated by spaces, the values of which may be quoted, with backslash
+ * escapes. A bare key, without a value, is taken as a flag which is true.
+ * 
+ * @author hhildebrand
+ * 
+ */
+final class LogfmtParser {
+
+    /**
+     * Parse the pairs of the line
+     * 
+     * @param line
+     * @return the values of the keys, in order, or null if the line is not in
+     *         the logfmt format or has no key=value pair
+     */
+    static Map<String, Object> parse(String line) {
+        Map<String, Object> pairs = new LinkedHashMap<>();
+        boolean valued = false;
+        int position = 0;
+        int length = line.length();
+        while (true) {
+            while (position < length && line.charAt(position) <= ' ') {
+                position++;
+            }
+            if (position == length) {
+                return valued ? pairs : null;
+            }
+            int start = position;
+            while (position < length && isKey(line.charAt(position))) {
+                position++;
+            }
+            if (position == start) {
+                return null;
+            }
+            String key = line.substring(start, position);
+            if (position == length || line.charAt(position) <= ' ') {
+                pairs.put(key, Boolean.TRUE);
+                continue;
+            }
+            if (line.charAt(position) != '=') {
+                return null;
+            }
+            valued = true;
+            position++;
+            if (position < length && line.charAt(position) == '"') {
+                StringBuilder value = new StringBuilder();
+                position++;
+                while (true) {
+                    if (position == length) {
+                        return null;
+                    }
+                    char c = line.charAt(position++);
+                    if (c == '"') {
+                        break;
+                    }
+                    if (c == '\\' && position < length) {
+                        c = line.charAt(position++);
+                        switch (c) {
+                            case 'n':
+                                c = '\n';
+                                break;
+                            case 'r':
+                                c = '\r';
+                                break;
+                            case 't':
+                                c = '\t';
+                                break;
+                        }
+                    }
+                    value.append(c);
+                }
+                pairs.put(key, value.toString());
+            } else {
+                start = position;
+                while (position < length && line.charAt(position) > ' ') {
+                    if (line.charAt(position) == '"') {
+                        return null;
+                    }
+                    position++;
+                }
+                pairs.put(key, line.substring(start, position));
+            }
+            if (position < length && line.charAt(position) > ' ') {
+                return null;
+            }
+        }
+    }
+
+    private static boolean isKey(char c) {
+        return c > ' ' && c != '=' && c != '"';
+    }
+
+    private LogfmtParser() {
+    }
+}
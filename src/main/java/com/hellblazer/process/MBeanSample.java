@@ -0,0 +1,112 @@
+/** (C) Copyright 2011-2014 Chiral Behaviors, All Rights Reserved
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package com.hellblazer.process;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import javax.management.ObjectName;
+
+/**
+ * A snapshot of the MBean attributes sampled from a Java process by an
+ * {@link MBeanSampler}. The attributes are keyed by the name of the MBean they
+ * were read from, with the names registered as patterns resolved to the
+ * MBeans they matched. Attributes which could not be read are absent.
+ * 
+ * @author hhildebrand
+ * 
+ */
+public class MBeanSample implements Serializable {
+    private static final long                          serialVersionUID = 1L;
+
+    private final Map<ObjectName, Map<String, Object>> attributes;
+    private final long                                 durationMillis;
+    private final UUID                                 processId;
+    private final long                                 timestampMillis;
+
+    public MBeanSample(UUID processId, long timestampMillis,
+                       long durationMillis,
+                       Map<ObjectName, Map<String, Object>> attributes) {
+        this.processId = processId;
+        this.timestampMillis = timestampMillis;
+        this.durationMillis = durationMillis;
+        this.attributes = Collections.unmodifiableMap(attributes);
+    }
+
+    /**
+     * @param name
+     *            - the name of the MBean
+     * @param attribute
+     *            - the name of the attribute
+     * @return the value of the attribute, or null if it was not sampled
+     */
+    public Object getAttribute(ObjectName name, String attribute) {
+        Map<String, Object> values = attributes.get(name);
+        return values == null ? null : values.get(attribute);
+    }
+
+    /**
+     * @param name
+     *            - the name of the MBean
+     * @return the values of the attributes sampled from the MBean, keyed by
+     *         attribute name
+     */
+    public Map<String, Object> getAttributes(ObjectName name) {
+        Map<String, Object> values = attributes.get(name);
+        if (values == null) {
+            return Collections.emptyMap();
+        }
+        return Collections.unmodifiableMap(values);
+    }
+
+    /**
+     * @return the time taken to collect the sample, in milliseconds
+     */
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    /**
+     * @return the names of the MBeans sampled
+     */
+    public Set<ObjectName> getNames() {
+        return attributes.keySet();
+    }
+
+    /**
+     * @return the id of the process sampled
+     */
+    public UUID getProcessId() {
+        return processId;
+    }
+
+    /**
+     * @return the time the collection of the sample started, in milliseconds
+     *         since the epoch
+     */
+    public long getTimestampMillis() {
+        return timestampMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "MBeanSample [processId=" + processId + ", timestampMillis="
+               + timestampMillis + ", durationMillis=" + durationMillis
+               + ", mbeans=" + attributes.size() + "]";
+    }
+}
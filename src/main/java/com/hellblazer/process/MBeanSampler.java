@@ -0,0 +1,132 @@
+/** (C) Copyright 2011-2014 Chiral Behaviors, All Rights Reserved
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package com.hellblazer.process;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.ObjectName;
+
+/**
+ * Samples a registered set of MBean attributes from many Java processes,
+ * through the local JMX connection of each process. The attributes of each
+ * MBean are read with a single bulk request, and the processes are sampled
+ * concurrently, with at most <code>parallelism</code> processes being sampled
+ * at any one time. The latest sample of each process is retained, so that
+ * reading it requires no round trip to the process.
+ * 
+ * Names registered as patterns are resolved once per connection to a
+ * process, and again whenever an MBean they matched disappears or they match
+ * nothing. Processes which are not active are not sampled.
+ * 
+ * @author hhildebrand
+ * 
+ */
+public interface MBeanSampler {
+
+    /**
+     * Add the process to the processes sampled
+     * 
+     * @param process
+     */
+    void add(JavaProcess process);
+
+    /**
+     * @return the name of the local JMX connection the processes are sampled
+     *         through
+     */
+    String getConnectionName();
+
+    /**
+     * @return the maximum number of processes sampled concurrently
+     */
+    int getParallelism();
+
+    /**
+     * @return the processes sampled
+     */
+    List<JavaProcess> getProcesses();
+
+    /**
+     * @param process
+     * @return the latest sample of the process, or null if the process has
+     *         not been sampled successfully
+     */
+    MBeanSample getSample(JavaProcess process);
+
+    /**
+     * @return the latest samples of the processes which have been sampled
+     *         successfully
+     */
+    Map<JavaProcess, MBeanSample> getSamples();
+
+    /**
+     * @return true if the processes are being sampled periodically
+     */
+    boolean isStarted();
+
+    /**
+     * Register the attributes to sample from the MBean, replacing any
+     * attributes previously registered for the name
+     * 
+     * @param name
+     *            - the name of the MBean, or a pattern matching the MBeans
+     * @param attributes
+     *            - the names of the attributes to sample
+     */
+    void register(ObjectName name, String... attributes);
+
+    /**
+     * Remove the process from the processes sampled
+     * 
+     * @param process
+     * @return true if the process was sampled
+     */
+    boolean remove(JavaProcess process);
+
+    /**
+     * Sample all the active processes now, waiting for the samples to be
+     * collected
+     * 
+     * @return the failures of the processes which could not be sampled
+     */
+    Map<JavaProcess, Throwable> sample();
+
+    /**
+     * Sample all the active processes periodically, until stopped. A process
+     * is not sampled again while its previous sample is being collected.
+     * 
+     * @param period
+     *            - the delay between the samples
+     * @param unit
+     *            - the unit of the period
+     */
+    void start(long period, TimeUnit unit);
+
+    /**
+     * Stop sampling the processes periodically
+     */
+    void stop();
+
+    /**
+     * Unregister the attributes sampled from the MBean
+     * 
+     * @param name
+     *            - the name, or pattern, registered
+     * @return true if the name was registered
+     */
+    boolean unregister(ObjectName name);
+}
@@ -19,9 +19,11 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.Serializable;
+import java.nio.channels.WritableByteChannel;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 import org.apache.commons.io.input.Tailer;
 import org.apache.commons.io.input.TailerListener;
@@ -52,6 +54,18 @@ public interface ManagedProcess extends Serializable {
      */
     ManagedProcess clone();
 
+    /**
+     * Flush and close the STD IN stream of the process, which then reads the
+     * end of its input. The input of the process is also closed when it exits,
+     * or the VM managing it exits.
+     * 
+     * @throws IOException
+     * @exception IllegalThreadStateException
+     *                if the subprocess represented by this
+     *                <code>ManagedProcess</code> object has not yet started.
+     */
+    void closeStdIn() throws IOException;
+
     /**
      * Configure the receiver from the process' configuration.
      * 
@@ -72,6 +86,11 @@ public interface ManagedProcess extends Serializable {
     @Override
     boolean equals(Object other);
 
+    /**
+     * @return how the StdOut and StdErr streams of the process are captured
+     */
+    CaptureMode getCaptureMode();
+
     /**
      * @return the List representing the command which the proces executes
      */
@@ -98,16 +117,30 @@ public interface ManagedProcess extends Serializable {
      */
     Integer getPid();
 
+    /**
+     * @return the policy governing the rotation of the captured StdOut and
+     *         StdErr streams
+     */
+    RotationPolicy getRotationPolicy();
+
     /**
      * @return the InputStream of the process' STD ERR stream (i.e. file handle
      *         2) The stream obtains data piped from the error output stream of
-     *         the process.
+     *         the process, starting with the oldest rotated segment retained.
      * @exception IllegalThreadStateException
      *                if the subprocess represented by this
      *                <code>ManagedProcess</code> object has not yet started.
      */
     InputStream getStdErr();
 
+    /**
+     * @return the statistics of the STDERR stream since the process was last
+     *         started, maintained incrementally as the output is captured.
+     *         The bytes and lines written are counted only if the output of
+     *         the process is metered
+     */
+    OutputStatistics getStdErrStatistics();
+
     /**
      * Retrieve the tail of the Stderr stream on demand.
      *
@@ -116,28 +149,43 @@ public interface ManagedProcess extends Serializable {
      *            stream. Max = 4000
      * @return numLines worth of output from the tail of the StdErr stream.
      * @throws IOException
+     * @throws IllegalArgumentException
+     *             if numLines is negative or greater than the maximum
      */
     String getStdErrTail(int numLines) throws IOException;
 
     /**
      * @return the OutputStream of the process' STD IN stream Output to the
-     *         stream is piped into the standard input stream of the process
+     *         stream is piped into the standard input stream of the process.
+     *         The stream is buffered, thread safe and shared by all callers
+     *         for the life of the process, so must be flushed; closing it only
+     *         flushes it. Writes block while the process is not consuming its
+     *         input.
      * @exception IllegalThreadStateException
      *                if the subprocess represented by this
-     *                <code>ManagedProcess</code> object has not yet started.
+     *                <code>ManagedProcess</code> object has not yet started,
+     *                or has exited.
      */
     OutputStream getStdIn();
 
     /**
      * @return the InputStream of the process' STD OUT stream (i.e. file handle
      *         1) The stream obtains data piped from the output stream of the
-     *         process.
+     *         process, starting with the oldest rotated segment retained.
      * @exception IllegalThreadStateException
      *                if the subprocess represented by this
      *                <code>ManagedProcess</code> object has not yet started.
      */
     InputStream getStdOut();
 
+    /**
+     * @return the statistics of the STDOUT stream since the process was last
+     *         started, maintained incrementally as the output is captured.
+     *         The bytes and lines written are counted only if the output of
+     *         the process is metered
+     */
+    OutputStatistics getStdOutStatistics();
+
     /**
      * Retrieve the tail of the Stdout stream on demand.
      *
@@ -146,9 +194,23 @@ public interface ManagedProcess extends Serializable {
      *            stream. Max = 4000
      * @return numLines worth of output from the tail of the StdOut stream.
      * @throws IOException
+     * @throws IllegalArgumentException
+     *             if numLines is negative or greater than the maximum
      */
     String getStdOutTail(int numLines) throws IOException;
 
+    /**
+     * @return the policy governing how the process is stopped
+     */
+    StopPolicy getStopPolicy();
+
+    /**
+     * @return the number of lines of the tails of the StdOut and StdErr
+     *         streams buffered in memory, or 0 if the tails are read from the
+     *         capture files on demand
+     */
+    int getTailBufferLines();
+
     @Override
     int hashCode();
 
@@ -157,6 +219,12 @@ public interface ManagedProcess extends Serializable {
      */
     boolean isActive();
 
+    /**
+     * @return true if the bytes and lines written to the StdOut and StdErr
+     *         streams are counted
+     */
+    boolean isOutputMetered();
+
     /**
      * @return true if the other ManagedProcess is identically configured as the
      *         receiver.
@@ -164,7 +232,18 @@ public interface ManagedProcess extends Serializable {
     boolean isSameConfiguration(ManagedProcess other);
 
     /**
-     * Restart the receiver.
+     * Answer a future which is completed when the process terminates. No
+     * thread is blocked while waiting for the process to exit.
+     * 
+     * @return the future completed with the exit value of the process, or
+     *         completed exceptionally with an
+     *         {@link IllegalThreadStateException} if the process has not been
+     *         started
+     */
+    CompletableFuture<Integer> onExit();
+
+    /**
+     * Restart the receiver, stopping it according to its {@link StopPolicy}.
      * 
      * @throws IOException
      *             if there is an error in starting up
@@ -186,6 +265,14 @@ public interface ManagedProcess extends Serializable {
      */
     void restart(int waitForSeconds) throws IOException;
 
+    /**
+     * Set how the StdOut and StdErr streams of the process are captured. Takes
+     * effect when the process is next started.
+     * 
+     * @param captureMode
+     */
+    void setCaptureMode(CaptureMode captureMode);
+
     void setCommand(List<String> commands);
 
     void setCommand(String[] commands);
@@ -196,6 +283,42 @@ public interface ManagedProcess extends Serializable {
 
     void setEnvironment(Map<String, String> environment);
 
+    /**
+     * Set whether the bytes and lines written to the StdOut and StdErr streams
+     * are counted, as reported by their statistics. Metering a stream captured
+     * to file reads all of its output, so is off by default. Takes effect when
+     * the process is next started.
+     * 
+     * @param metered
+     */
+    void setOutputMetered(boolean metered);
+
+    /**
+     * Set the policy governing the rotation of the captured StdOut and StdErr
+     * streams. Takes effect when the process is next started.
+     * 
+     * @param rotationPolicy
+     */
+    void setRotationPolicy(RotationPolicy rotationPolicy);
+
+    /**
+     * Set the policy governing how the process is stopped
+     * 
+     * @param stopPolicy
+     */
+    void setStopPolicy(StopPolicy stopPolicy);
+
+    /**
+     * Set the number of lines of the tails of the StdOut and StdErr streams to
+     * buffer in memory, fed incrementally as the process writes them. Requests
+     * for no more than this number of lines are then served without reading
+     * the capture files. Takes effect when the process is next started.
+     * 
+     * @param lines
+     *            - the number of lines, 0 to disable buffering. Max = 4000
+     */
+    void setTailBufferLines(int lines);
+
     /**
      * Start the process
      * 
@@ -204,6 +327,16 @@ public interface ManagedProcess extends Serializable {
      */
     void start() throws IOException;
 
+    /**
+     * Start the process asynchronously, on a bounded executor shared by all
+     * processes, so that starting many processes queues them rather than
+     * dedicating a thread to each
+     * 
+     * @return the future completed when the process has started, or completed
+     *         exceptionally with the IOException raised during startup
+     */
+    CompletableFuture<Void> startAsync();
+
     /**
      * Stop the process
      * 
@@ -222,22 +355,105 @@ public interface ManagedProcess extends Serializable {
      */
     void stop(int waitForSeconds) throws CannotStopProcessException;
 
+    /**
+     * Stop the process asynchronously, on the bounded executor shared by all
+     * processes
+     * 
+     * @param waitForSeconds
+     *            - seconds to wait for the process to stop before terminating
+     *            it forcibly
+     * @return the future completed when the process has stopped, or completed
+     *         exceptionally with a {@link CannotStopProcessException} if the
+     *         process cannot be stopped
+     */
+    CompletableFuture<Void> stopAsync(int waitForSeconds);
+
+    /**
+     * Subscribe to the events decoded from the STDERR stream, from its
+     * beginning. Each line is decoded as it is captured, by the tailer of the
+     * stream, so the stream is parsed incrementally rather than re-read. The
+     * decoder and the listener are called in order on a small pool of threads
+     * shared by the listeners of all processes, so should not block for long.
+     * 
+     * @param decoder
+     *            - the decoder of the lines, such as a {@link LogFormat}
+     * @param listener
+     * @return the tailer, which is stopped to end the subscription
+     */
+    Tailer tailStdErr(LineDecoder decoder, LogEventListener listener);
+
+    /**
+     * Add a listener to tail the STDERR stream from its beginning. The stream
+     * is tailed by the engine shared by all processes, rather than by a thread
+     * of its own. The listener is notified in order on a small pool of threads
+     * shared by the listeners of all processes, so should not block for long;
+     * a slow listener holds up only its own tailer. When the stream is captured by a pipe, the listener is fed from
+     * the pipe as it is drained.
+     * 
+     * @param listener
+     * @return the tailer, which is stopped to end the tailing
+     */
     Tailer tailStdErr(TailerListener listener);
 
     /**
      * Add a listener to tail the STDERR stream
      * 
      * @param listener
+     * @param delayMillis
+     *            - the interval at which the stream is polled, if changes to
+     *            it cannot be watched
+     * @param end
+     *            - true to tail from the end of the stream
+     * @param reOpen
+     *            - ignored, as the stream is reopened for every read
+     * @param bufSize
+     *            - the size of the buffer the stream is read with
+     * @return the tailer, which is stopped to end the tailing
      */
     Tailer tailStdErr(TailerListener listener, long delayMillis, boolean end,
                       boolean reOpen, int bufSize);
 
+    /**
+     * Subscribe to the events decoded from the STDOUT stream, from its
+     * beginning. Each line is decoded as it is captured, by the tailer of the
+     * stream, so the stream is parsed incrementally rather than re-read. The
+     * decoder and the listener are called in order on a small pool of threads
+     * shared by the listeners of all processes, so should not block for long.
+     * 
+     * @param decoder
+     *            - the decoder of the lines, such as a {@link LogFormat}
+     * @param listener
+     * @return the tailer, which is stopped to end the subscription
+     */
+    Tailer tailStdOut(LineDecoder decoder, LogEventListener listener);
+
+    /**
+     * Add a listener to tail the STDOUT stream from its beginning. The stream
+     * is tailed by the engine shared by all processes, rather than by a thread
+     * of its own. The listener is notified in order on a small pool of threads
+     * shared by the listeners of all processes, so should not block for long;
+     * a slow listener holds up only its own tailer. When the stream is captured by a pipe, the listener is fed from
+     * the pipe as it is drained.
+     * 
+     * @param listener
+     * @return the tailer, which is stopped to end the tailing
+     */
     Tailer tailStdOut(TailerListener listener);
 
     /**
      * Add a listener to tail the STDOUT stream
      * 
      * @param listener
+     * @param delayMillis
+     *            - the interval at which the stream is polled, if changes to
+     *            it cannot be watched
+     * @param end
+     *            - true to tail from the end of the stream
+     * @param reOpen
+     *            - ignored, as the stream is reopened for every read
+     * @param bufSize
+     *            - the size of the buffer the stream is read with
+     * @return the tailer, which is stopped to end the tailing
      */
     Tailer tailStdOut(TailerListener listener, long delayMillis, boolean end,
                       boolean reOpen, int bufSize);
@@ -258,4 +474,70 @@ public interface ManagedProcess extends Serializable {
      *                thrown.
      */
     int waitFor() throws InterruptedException;
+
+    /**
+     * Append the tail of the StdErr stream to the output, without
+     * materializing it as a single String.
+     * 
+     * @param numLines
+     *            The number of lines to retrieve from the tail of the StdErr
+     *            stream. Max = 4000
+     * @param out
+     *            the output the lines are appended to, each terminated by a
+     *            newline
+     * @throws IOException
+     * @throws IllegalArgumentException
+     *             if numLines is negative or greater than the maximum
+     */
+    void writeStdErrTail(int numLines, Appendable out) throws IOException;
+
+    /**
+     * Write the tail of the StdErr stream to the channel. When the lines are
+     * read from the capture file, its bytes are transferred without decoding
+     * and line terminators are written as the process wrote them.
+     * 
+     * @param numLines
+     *            The number of lines to retrieve from the tail of the StdErr
+     *            stream. Max = 4000
+     * @param out
+     *            the blocking channel the lines are written to
+     * @throws IOException
+     * @throws IllegalArgumentException
+     *             if numLines is negative or greater than the maximum
+     */
+    void writeStdErrTail(int numLines, WritableByteChannel out)
+                                                               throws IOException;
+
+    /**
+     * Append the tail of the StdOut stream to the output, without
+     * materializing it as a single String.
+     * 
+     * @param numLines
+     *            The number of lines to retrieve from the tail of the StdOut
+     *            stream. Max = 4000
+     * @param out
+     *            the output the lines are appended to, each terminated by a
+     *            newline
+     * @throws IOException
+     * @throws IllegalArgumentException
+     *             if numLines is negative or greater than the maximum
+     */
+    void writeStdOutTail(int numLines, Appendable out) throws IOException;
+
+    /**
+     * Write the tail of the StdOut stream to the channel. When the lines are
+     * read from the capture file, its bytes are transferred without decoding
+     * and line terminators are written as the process wrote them.
+     * 
+     * @param numLines
+     *            The number of lines to retrieve from the tail of the StdOut
+     *            stream. Max = 4000
+     * @param out
+     *            the blocking channel the lines are written to
+     * @throws IOException
+     * @throws IllegalArgumentException
+     *             if numLines is negative or greater than the maximum
+     */
+    void writeStdOutTail(int numLines, WritableByteChannel out)
+                                                               throws IOException;
 }
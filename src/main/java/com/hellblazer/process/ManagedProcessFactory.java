@@ -37,9 +37,42 @@ public interface ManagedProcessFactory {
      */
     ManagedProcess create();
 
+    /**
+     * Create a new, empty process group, which operates on its members with the
+     * default parallelism
+     */
+    ProcessGroup createGroup();
+
+    /**
+     * Create a new, empty process group
+     * 
+     * @param parallelism
+     *            - the maximum number of members to operate on concurrently
+     */
+    ProcessGroup createGroup(int parallelism);
+
     /**
      * Create a new instance of a JavaProcess appropriate for the current
      * runtime platform
      */
     JavaProcess createJavaProcess();
+
+    /**
+     * Create a new MBean sampler, which samples its processes through the
+     * named local JMX connection with the default parallelism
+     * 
+     * @param connectionName
+     */
+    MBeanSampler createSampler(String connectionName);
+
+    /**
+     * Create a new MBean sampler
+     * 
+     * @param connectionName
+     *            - the name of the local JMX connection the processes are
+     *            sampled through
+     * @param parallelism
+     *            - the maximum number of processes to sample concurrently
+     */
+    MBeanSampler createSampler(String connectionName, int parallelism);
 }
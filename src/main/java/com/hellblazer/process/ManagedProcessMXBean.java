@@ -0,0 +1,50 @@
+/** (C) Copyright 2011-2014 Chiral Behaviors, All Rights Reserved
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package com.hellblazer.process;
+
+/**
+ * The management interface of a managed process, registered by the
+ * {@link ManagedProcessFactory} which created the process, so that runaway
+ * output may be monitored and alerted on.
+ * 
+ * @author hhildebrand
+ * 
+ */
+public interface ManagedProcessMXBean {
+    /**
+     * @return the id of the process
+     */
+    String getId();
+
+    /**
+     * @return the pid of the process, or null if it has not been started
+     */
+    Integer getPid();
+
+    /**
+     * @return the output statistics of the STDERR stream of the process
+     */
+    OutputStatistics getStdErrStatistics();
+
+    /**
+     * @return the output statistics of the STDOUT stream of the process
+     */
+    OutputStatistics getStdOutStatistics();
+
+    /**
+     * @return true if the process is active
+     */
+    boolean isActive();
+}
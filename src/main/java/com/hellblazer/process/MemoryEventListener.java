@@ -0,0 +1,48 @@
+/** (C) Copyright 2011-2014 Chiral Behaviors, All Rights Reserved
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package com.hellblazer.process;
+
+import java.lang.management.MemoryNotificationInfo;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+/**
+ * A subscriber to the garbage collection and memory threshold notifications
+ * of a Java process. Listeners are notified on the thread delivering the
+ * notifications of the JMX connection, so must not block.
+ * 
+ * @author hhildebrand
+ * 
+ */
+public interface MemoryEventListener {
+    /**
+     * A garbage collection has completed in the process
+     * 
+     * @param info
+     */
+    void garbageCollected(GarbageCollectionNotificationInfo info);
+
+    /**
+     * The usage, or the usage after collection, of a memory pool of the
+     * process has exceeded its threshold. Only pools whose thresholds have
+     * been set send these notifications.
+     * 
+     * @param type
+     *            - {@link MemoryNotificationInfo#MEMORY_THRESHOLD_EXCEEDED} or
+     *            {@link MemoryNotificationInfo#MEMORY_COLLECTION_THRESHOLD_EXCEEDED}
+     * @param info
+     */
+    void thresholdExceeded(String type, MemoryNotificationInfo info);
+}
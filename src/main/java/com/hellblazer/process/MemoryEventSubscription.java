@@ -0,0 +1,83 @@
+/** (C) Copyright 2011-2014 Chiral Behaviors, All Rights Reserved
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package com.hellblazer.process;
+
+import java.util.Map;
+
+/**
+ * A subscription to the garbage collection and memory threshold
+ * notifications of a Java process, which aggregates the garbage collections
+ * into pause histograms. The subscription survives the loss of its JMX
+ * connection and the restart of the process, subscribing again once the
+ * process can be connected to. Notifications sent while the subscription is
+ * not connected are missed.
+ * 
+ * Only the collections of stop the world collectors are aggregated as pauses,
+ * as the duration of a collection of a concurrent collector is the length of
+ * its cycle rather than of a pause; the listener is notified of every
+ * collection.
+ * 
+ * The subscription does not set the thresholds of the memory pools of the
+ * process. A pool sends threshold notifications only once the process, or a
+ * JMX client, has set its usage or collection usage threshold, through
+ * {@link java.lang.management.MemoryPoolMXBean#setUsageThreshold(long)} or
+ * {@link java.lang.management.MemoryPoolMXBean#setCollectionUsageThreshold(long)}.
+ * 
+ * @author hhildebrand
+ * 
+ */
+public interface MemoryEventSubscription {
+
+    /**
+     * Cancel the subscription, removing its listeners from the process
+     */
+    void cancel();
+
+    /**
+     * @return the number of notifications the JMX connection reported lost
+     */
+    long getNotificationsLost();
+
+    /**
+     * @return the histogram of the pauses of all the stop the world garbage
+     *         collectors of the process since the subscription was made
+     */
+    PauseHistogram getPauseHistogram();
+
+    /**
+     * @return the histograms of the pauses of each stop the world garbage
+     *         collector of the process since the subscription was made, keyed
+     *         by collector name
+     */
+    Map<String, PauseHistogram> getPauseHistograms();
+
+    /**
+     * @return the number of memory threshold notifications received, which
+     *         remains zero unless thresholds are set on the memory pools of
+     *         the process
+     */
+    long getThresholdsExceeded();
+
+    /**
+     * @return true if the subscription has been cancelled
+     */
+    boolean isCancelled();
+
+    /**
+     * @return true if the listeners of the subscription are registered with
+     *         the process
+     */
+    boolean isConnected();
+}
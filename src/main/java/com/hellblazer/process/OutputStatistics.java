@@ -0,0 +1,94 @@
+/** (C) Copyright 2011-2014 Chiral Behaviors, All Rights Reserved
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package com.hellblazer.process;
+
+import java.beans.ConstructorProperties;
+import java.io.Serializable;
+
+/**
+ * A snapshot of the output statistics of a STD OUT or STD ERR stream of a
+ * managed process, as of the last update of the capture path. The counts
+ * accumulate across the rotations of the capture file since the process was
+ * last started.
+ * 
+ * @author hhildebrand
+ * 
+ */
+public class OutputStatistics implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final long        bytesWritten;
+    private final long        captureFileSize;
+    private final long        lastWriteMillis;
+    private final long        linesWritten;
+    private final long        tailerLag;
+
+    @ConstructorProperties({ "bytesWritten", "linesWritten",
+            "captureFileSize", "tailerLag", "lastWriteMillis" })
+    public OutputStatistics(long bytesWritten, long linesWritten,
+                            long captureFileSize, long tailerLag,
+                            long lastWriteMillis) {
+        this.bytesWritten = bytesWritten;
+        this.linesWritten = linesWritten;
+        this.captureFileSize = captureFileSize;
+        this.tailerLag = tailerLag;
+        this.lastWriteMillis = lastWriteMillis;
+    }
+
+    /**
+     * @return the number of bytes the process has written to the stream
+     */
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * @return the size of the current capture file of the stream
+     */
+    public long getCaptureFileSize() {
+        return captureFileSize;
+    }
+
+    /**
+     * @return the time of the last write to the stream, in milliseconds since
+     *         the epoch, or 0 if the stream has not been written
+     */
+    public long getLastWriteMillis() {
+        return lastWriteMillis;
+    }
+
+    /**
+     * @return the number of lines the process has written to the stream
+     */
+    public long getLinesWritten() {
+        return linesWritten;
+    }
+
+    /**
+     * @return the number of bytes written to the stream which the slowest of
+     *         its tailers has yet to read
+     */
+    public long getTailerLag() {
+        return tailerLag;
+    }
+
+    @Override
+    public String toString() {
+        return "OutputStatistics [bytesWritten=" + bytesWritten
+               + ", linesWritten=" + linesWritten + ", captureFileSize="
+               + captureFileSize + ", tailerLag=" + tailerLag
+               + ", lastWriteMillis=" + lastWriteMillis + "]";
+    }
+}
@@ -0,0 +1,149 @@
+/** (C) Copyright 2011-2014 Chiral Behaviors, All Rights Reserved
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package com.hellblazer.process;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * A snapshot of a histogram of garbage collection pauses, in milliseconds.
+ * The buckets are powers of two: the first bucket counts the pauses shorter
+ * than a millisecond, bucket <code>i</code> counts the pauses of at least
+ * <code>2^(i-1)</code> and less than <code>2^i</code> milliseconds, and the
+ * last bucket counts every longer pause.
+ * 
+ * @author hhildebrand
+ * 
+ */
+public class PauseHistogram implements Serializable {
+    public static final int   BUCKETS          = 16;
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * @param millis
+     *            - the duration of a pause
+     * @return the bucket counting the pause
+     */
+    public static int bucketOf(long millis) {
+        if (millis < 1) {
+            return 0;
+        }
+        return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(millis));
+    }
+
+    /**
+     * @param bucket
+     * @return the exclusive upper bound of the pauses counted by the bucket,
+     *         in milliseconds
+     */
+    public static long upperBoundOf(int bucket) {
+        return bucket == BUCKETS - 1 ? Long.MAX_VALUE : 1L << bucket;
+    }
+
+    private final long[] counts;
+    private final long   maxMillis;
+    private final long   totalMillis;
+
+    public PauseHistogram(long[] counts, long totalMillis, long maxMillis) {
+        if (counts.length != BUCKETS) {
+            throw new IllegalArgumentException("Histogram must have "
+                                               + BUCKETS + " buckets: "
+                                               + counts.length);
+        }
+        this.counts = counts.clone();
+        this.totalMillis = totalMillis;
+        this.maxMillis = maxMillis;
+    }
+
+    /**
+     * @return the number of pauses
+     */
+    public long getCount() {
+        long count = 0;
+        for (long bucket : counts) {
+            count += bucket;
+        }
+        return count;
+    }
+
+    /**
+     * @param bucket
+     * @return the number of pauses counted by the bucket
+     */
+    public long getCount(int bucket) {
+        return counts[bucket];
+    }
+
+    /**
+     * @return the number of pauses counted by each bucket
+     */
+    public long[] getCounts() {
+        return counts.clone();
+    }
+
+    /**
+     * @return the longest pause, in milliseconds
+     */
+    public long getMaxMillis() {
+        return maxMillis;
+    }
+
+    /**
+     * @return the mean pause, in milliseconds, or 0 if there have been no
+     *         pauses
+     */
+    public double getMeanMillis() {
+        long count = getCount();
+        return count == 0 ? 0 : (double) totalMillis / count;
+    }
+
+    /**
+     * @param percentile
+     *            - the percentile, between 0 and 100
+     * @return the upper bound of the bucket holding the percentile, bounded by
+     *         the longest pause, in milliseconds, or 0 if there have been no
+     *         pauses
+     */
+    public long getPercentileMillis(double percentile) {
+        long count = getCount();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(count * percentile / 100.0);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank && seen > 0) {
+                return Math.min(upperBoundOf(i), maxMillis);
+            }
+        }
+        return maxMillis;
+    }
+
+    /**
+     * @return the total of the pauses, in milliseconds
+     */
+    public long getTotalMillis() {
+        return totalMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "PauseHistogram [count=" + getCount() + ", totalMillis="
+               + totalMillis + ", maxMillis=" + maxMillis + ", counts="
+               + Arrays.toString(counts) + "]";
+    }
+}
@@ -0,0 +1,111 @@
+/** (C) Copyright 2011-2014 Chiral Behaviors, All Rights Reserved
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package com.hellblazer.process;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A group of managed processes which are started, stopped and restarted
+ * together. The lifecycle operations are applied to the members concurrently,
+ * with at most <code>parallelism</code> members being operated on at any one
+ * time.
+ * 
+ * Each operation answers the failures of the individual members, keyed by
+ * member. An empty result means the operation succeeded for every member.
+ * 
+ * @author hhildebrand
+ * 
+ */
+public interface ProcessGroup extends Iterable<ManagedProcess> {
+
+    /**
+     * Add the process to the group
+     * 
+     * @param process
+     */
+    void add(ManagedProcess process);
+
+    /**
+     * Destroy all the members of the group
+     * 
+     * @return the failures of the members which could not be destroyed
+     */
+    Map<ManagedProcess, Throwable> destroy();
+
+    /**
+     * @return the members of the group
+     */
+    List<ManagedProcess> getMembers();
+
+    /**
+     * @return the maximum number of members operated on concurrently
+     */
+    int getParallelism();
+
+    /**
+     * Remove the process from the group
+     * 
+     * @param process
+     * @return true if the process was a member of the group
+     */
+    boolean remove(ManagedProcess process);
+
+    /**
+     * Restart all the members of the group, each stopped according to its own
+     * {@link StopPolicy}
+     * 
+     * @return the failures of the members which could not be restarted
+     */
+    Map<ManagedProcess, Throwable> restart();
+
+    /**
+     * Restart all the members of the group
+     * 
+     * @param waitForSeconds
+     *            - seconds to wait for each process to stop
+     * @return the failures of the members which could not be restarted
+     */
+    Map<ManagedProcess, Throwable> restart(int waitForSeconds);
+
+    /**
+     * @return the number of members in the group
+     */
+    int size();
+
+    /**
+     * Start all the members of the group
+     * 
+     * @return the failures of the members which could not be started
+     */
+    Map<ManagedProcess, Throwable> start();
+
+    /**
+     * Stop all the members of the group, each according to its own
+     * {@link StopPolicy}
+     * 
+     * @return the failures of the members which could not be stopped
+     */
+    Map<ManagedProcess, Throwable> stop();
+
+    /**
+     * Stop all the members of the group
+     * 
+     * @param waitForSeconds
+     *            - seconds to wait for each process to stop
+     * @return the failures of the members which could not be stopped
+     */
+    Map<ManagedProcess, Throwable> stop(int waitForSeconds);
+}
@@ -0,0 +1,135 @@
+/** (C) Copyright 2011-2014 Chiral Behaviors, All Rights Reserved
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package com.hellblazer.process;
+
+import java.io.Serializable;
+
+/**
+ * The policy governing the rotation of the captured STD OUT and STD ERR
+ * streams of a managed process.
+ * 
+ * A capture file is rolled into a segment when it reaches the maximum size,
+ * or at every rotation interval, whichever comes first; either trigger may be
+ * disabled with 0. The newest segment of std.out is std.out.1, the next
+ * std.out.2 and so on, up to the number of segments retained, beyond which
+ * the oldest segment is discarded. Rolled segments are optionally gzip
+ * compressed, with the suffix .gz.
+ * 
+ * The process keeps appending to the same capture file, which is copied into
+ * the segment and then truncated. Output written in the instant between the
+ * final copy and the truncation may be lost.
+ * 
+ * @author hhildebrand
+ * 
+ */
+public class RotationPolicy implements Serializable {
+    public static final int   DEFAULT_SEGMENTS = 5;
+    private static final long serialVersionUID = 1L;
+
+    private boolean           compress         = false;
+    private long              intervalMillis   = 0;
+    private long              maxBytes         = 0;
+    private int               segments         = DEFAULT_SEGMENTS;
+
+    public RotationPolicy() {
+    }
+
+    /**
+     * Copy the policy
+     * 
+     * @param policy
+     */
+    public RotationPolicy(RotationPolicy policy) {
+        compress = policy.compress;
+        intervalMillis = policy.intervalMillis;
+        maxBytes = policy.maxBytes;
+        segments = policy.segments;
+    }
+
+    /**
+     * @return the interval at which the capture files are rotated, or 0 if
+     *         they are not rotated by time
+     */
+    public long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    /**
+     * @return the size at which a capture file is rotated, or 0 if it is not
+     *         rotated by size
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * @return the number of rolled segments retained
+     */
+    public int getSegments() {
+        return segments;
+    }
+
+    /**
+     * @return true if rolled segments are gzip compressed
+     */
+    public boolean isCompress() {
+        return compress;
+    }
+
+    /**
+     * @return true if the capture files are rotated at all
+     */
+    public boolean isEnabled() {
+        return maxBytes > 0 || intervalMillis > 0;
+    }
+
+    public void setCompress(boolean compress) {
+        this.compress = compress;
+    }
+
+    public void setIntervalMillis(long intervalMillis) {
+        if (intervalMillis < 0) {
+            throw new IllegalArgumentException(
+                                               "Rotation interval must not be negative: "
+                                                       + intervalMillis);
+        }
+        this.intervalMillis = intervalMillis;
+    }
+
+    public void setMaxBytes(long maxBytes) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException(
+                                               "Maximum size must not be negative: "
+                                                       + maxBytes);
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    public void setSegments(int segments) {
+        if (segments < 1) {
+            throw new IllegalArgumentException(
+                                               "Segments must be positive: "
+                                                       + segments);
+        }
+        this.segments = segments;
+    }
+
+    @Override
+    public String toString() {
+        return "RotationPolicy [maxBytes=" + maxBytes + ", interval="
+               + intervalMillis + "ms, segments=" + segments + ", compress="
+               + compress + "]";
+    }
+}
@@ -0,0 +1,203 @@
+/** (C) Copyright 2011-2014 Chiral Behaviors, All Rights Reserved
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package com.hellblazer.process;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The policy governing how a managed process is stopped.
+ * 
+ * The signals of the policy are sent in order, the first immediately and the
+ * remainder at equal intervals across the grace period. If the process has not
+ * exited by the end of the grace period, it is terminated with SIGKILL -
+ * optionally along with all of its descendants - and given the kill wait
+ * period to die before the stop is considered to have failed.
+ * 
+ * Stopping is driven by exit notifications. The liveness of the process is
+ * also checked as a safety net, with the interval between checks starting at
+ * the initial check interval and growing by the backoff multiplier up to the
+ * maximum check interval.
+ * 
+ * The signals are numbered as by POSIX; the signals commonly used to stop a
+ * process are defined here.
+ * 
+ * @author hhildebrand
+ * 
+ */
+public class StopPolicy implements Serializable {
+    public static final double DEFAULT_BACKOFF_MULTIPLIER   = 2.0;
+    public static final long   DEFAULT_GRACE_PERIOD_MILLIS  = 10 * 1000;
+    public static final long   DEFAULT_INITIAL_CHECK_MILLIS = 5;
+    public static final long   DEFAULT_KILL_WAIT_MILLIS     = 1000;
+    public static final long   DEFAULT_MAX_CHECK_MILLIS     = 500;
+    public static final int    SIGINT                       = 2;
+    public static final int    SIGKILL                      = 9;
+    public static final int    SIGQUIT                      = 3;
+    public static final int    SIGTERM                      = 15;
+    private static final long  serialVersionUID             = 1L;
+
+    private double             backoffMultiplier            = DEFAULT_BACKOFF_MULTIPLIER;
+    private long               gracePeriodMillis            = DEFAULT_GRACE_PERIOD_MILLIS;
+    private long               initialCheckMillis           = DEFAULT_INITIAL_CHECK_MILLIS;
+    private boolean            killProcessTree              = false;
+    private long               killWaitMillis               = DEFAULT_KILL_WAIT_MILLIS;
+    private long               maxCheckMillis               = DEFAULT_MAX_CHECK_MILLIS;
+    private List<Integer>      signals                      = new ArrayList<Integer>(
+                                                                                     Arrays.asList(SIGTERM));
+
+    public StopPolicy() {
+    }
+
+    /**
+     * Copy the policy
+     * 
+     * @param policy
+     */
+    public StopPolicy(StopPolicy policy) {
+        backoffMultiplier = policy.backoffMultiplier;
+        gracePeriodMillis = policy.gracePeriodMillis;
+        initialCheckMillis = policy.initialCheckMillis;
+        killProcessTree = policy.killProcessTree;
+        killWaitMillis = policy.killWaitMillis;
+        maxCheckMillis = policy.maxCheckMillis;
+        signals = new ArrayList<Integer>(policy.signals);
+    }
+
+    public double getBackoffMultiplier() {
+        return backoffMultiplier;
+    }
+
+    public long getGracePeriodMillis() {
+        return gracePeriodMillis;
+    }
+
+    public long getInitialCheckMillis() {
+        return initialCheckMillis;
+    }
+
+    public long getKillWaitMillis() {
+        return killWaitMillis;
+    }
+
+    public long getMaxCheckMillis() {
+        return maxCheckMillis;
+    }
+
+    /**
+     * @return the signals sent to the process during the grace period, in
+     *         order
+     */
+    public List<Integer> getSignals() {
+        return new ArrayList<Integer>(signals);
+    }
+
+    /**
+     * @return true if the descendants of the process are also terminated when
+     *         the stop is escalated to SIGKILL
+     */
+    public boolean isKillProcessTree() {
+        return killProcessTree;
+    }
+
+    /**
+     * Answer the interval to wait before the next liveness check
+     * 
+     * @param interval
+     *            - the previous interval
+     * @return the next interval
+     */
+    public long nextCheckMillis(long interval) {
+        return Math.min(maxCheckMillis,
+                        Math.max(interval + 1,
+                                 (long) (interval * backoffMultiplier)));
+    }
+
+    public void setBackoffMultiplier(double backoffMultiplier) {
+        if (backoffMultiplier < 1.0) {
+            throw new IllegalArgumentException(
+                                               "Backoff multiplier must be at least 1: "
+                                                       + backoffMultiplier);
+        }
+        this.backoffMultiplier = backoffMultiplier;
+    }
+
+    public void setGracePeriodMillis(long gracePeriodMillis) {
+        if (gracePeriodMillis < 0) {
+            throw new IllegalArgumentException(
+                                               "Grace period must not be negative: "
+                                                       + gracePeriodMillis);
+        }
+        this.gracePeriodMillis = gracePeriodMillis;
+    }
+
+    public void setInitialCheckMillis(long initialCheckMillis) {
+        if (initialCheckMillis < 1) {
+            throw new IllegalArgumentException(
+                                               "Initial check interval must be positive: "
+                                                       + initialCheckMillis);
+        }
+        this.initialCheckMillis = initialCheckMillis;
+    }
+
+    public void setKillProcessTree(boolean killProcessTree) {
+        this.killProcessTree = killProcessTree;
+    }
+
+    public void setKillWaitMillis(long killWaitMillis) {
+        if (killWaitMillis < 0) {
+            throw new IllegalArgumentException(
+                                               "Kill wait period must not be negative: "
+                                                       + killWaitMillis);
+        }
+        this.killWaitMillis = killWaitMillis;
+    }
+
+    public void setMaxCheckMillis(long maxCheckMillis) {
+        if (maxCheckMillis < 1) {
+            throw new IllegalArgumentException(
+                                               "Maximum check interval must be positive: "
+                                                       + maxCheckMillis);
+        }
+        this.maxCheckMillis = maxCheckMillis;
+    }
+
+    /**
+     * Set the signals sent to the process during the grace period. For
+     * example, SIGQUIT followed by SIGTERM obtains a thread dump from a Java
+     * process before asking it to terminate.
+     * 
+     * @param signals
+     */
+    public void setSignals(List<Integer> signals) {
+        if (signals == null) {
+            signals = new ArrayList<Integer>();
+        }
+        this.signals = new ArrayList<Integer>(signals);
+    }
+
+    public void setSignals(Integer... signals) {
+        setSignals(Arrays.asList(signals));
+    }
+
+    @Override
+    public String toString() {
+        return "StopPolicy [signals=" + signals + ", grace="
+               + gracePeriodMillis + "ms, killWait=" + killWaitMillis
+               + "ms, killProcessTree=" + killProcessTree + "]";
+    }
+}
@@ -24,12 +24,29 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.io.SequenceInputStream;
+import java.io.Writer;
+import java.lang.ProcessBuilder.Redirect;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -38,7 +55,13 @@ import org.apache.commons.io.input.Tailer;
 import org.apache.commons.io.input.TailerListener;
 
 import com.hellblazer.process.CannotStopProcessException;
+import com.hellblazer.process.CaptureMode;
+import com.hellblazer.process.LineDecoder;
+import com.hellblazer.process.LogEventListener;
 import com.hellblazer.process.ManagedProcess;
+import com.hellblazer.process.OutputStatistics;
+import com.hellblazer.process.RotationPolicy;
+import com.hellblazer.process.StopPolicy;
 import com.hellblazer.utils.Utils;
 
 /**
@@ -50,7 +73,9 @@ abstract public class AbstractManagedProcess implements ManagedProcess,
     public static final String  CONTROL_DIR_PREFIX           = ".control-";
     public static final int     DEFAULT_KILL_TIMEOUT_SECONDS = 10;
     public static final int     DEFAULT_PAUSE_MILLIS         = 500;
-    public static final int     MAX_TAIL_BUFFER_LINES        = 4000;
+    public static final int     MAX_TAIL_LINES               = 4000;
+    public static final int     MAX_TAIL_BUFFER_LINES        = MAX_TAIL_LINES;
+    private static final long   ACTIVE_CHECK_MILLIS          = 100;
     private static final Logger log                          = Logger.getLogger(AbstractManagedProcess.class.getCanonicalName());
 
     private static final long   serialVersionUID             = 1L;
@@ -105,15 +130,31 @@ abstract public class AbstractManagedProcess implements ManagedProcess,
         }
     }
 
-    protected List<String>        command    = new ArrayList<String>();
-
-    protected File                controlDirectory;
-
-    protected File                directory;
-
-    protected Map<String, String> environment;
-    protected final UUID          id;
-    protected volatile boolean    terminated = false;
+    protected CaptureMode                                           captureMode    = CaptureMode.FILE;
+    protected List<String>                                          command        = new ArrayList<String>();
+
+    protected File                                                  controlDirectory;
+
+    protected File                                                  directory;
+
+    protected Map<String, String>                                   environment;
+    protected final UUID                                            id;
+    protected boolean                                               outputMetered;
+    protected RotationPolicy                                        rotationPolicy = new RotationPolicy();
+    protected StopPolicy                                            stopPolicy     = new StopPolicy();
+    protected int                                                   tailBufferLines;
+    protected volatile boolean                                      terminated     = false;
+    private transient volatile ControlDirectoryWatcher.Registration captureRegistration;
+    private transient List<Runnable>                                destroyActions;
+    private transient volatile TailBuffer                           stdErrBuffer;
+    private transient volatile PipeCapture                          stdErrCapture;
+    private transient volatile OutputMeter                          stdErrMeter;
+    private transient volatile CaptureRotator                       stdErrRotator;
+    private transient volatile StdInStream                          stdIn;
+    private transient volatile TailBuffer                           stdOutBuffer;
+    private transient volatile PipeCapture                          stdOutCapture;
+    private transient volatile OutputMeter                          stdOutMeter;
+    private transient volatile CaptureRotator                       stdOutRotator;
 
     public AbstractManagedProcess() {
         this(UUID.randomUUID());
@@ -145,8 +186,13 @@ abstract public class AbstractManagedProcess implements ManagedProcess,
                                             "cannot create instance due to access restrictions",
                                             e);
         }
+        clone.captureMode = captureMode;
         clone.command = command;
         clone.directory = directory;
+        clone.outputMetered = outputMetered;
+        clone.rotationPolicy = new RotationPolicy(rotationPolicy);
+        clone.stopPolicy = new StopPolicy(stopPolicy);
+        clone.tailBufferLines = tailBufferLines;
         if (environment != null) {
             clone.environment = new HashMap<String, String>();
             clone.environment.putAll(environment);
@@ -154,19 +200,33 @@ abstract public class AbstractManagedProcess implements ManagedProcess,
         return clone;
     }
 
+    @Override
+    public void closeStdIn() throws IOException {
+        openStdIn().closeInput();
+    }
+
     @Override
     public ManagedProcess configureFrom(ManagedProcess process) {
+        captureMode = process.getCaptureMode();
         command = process.getCommand();
         environment = process.getEnvironment();
         directory = process.getDirectory();
+        outputMetered = process.isOutputMetered();
+        rotationPolicy = new RotationPolicy(process.getRotationPolicy());
+        stopPolicy = new StopPolicy(process.getStopPolicy());
+        tailBufferLines = process.getTailBufferLines();
         return this;
     }
 
     @Override
     public synchronized void destroy() throws IOException {
         stop();
+        stopRotators();
+        stopCaptureReaders();
+        closeCaptures();
+        abortStdIn();
         remove(directory);
-
+        runDestroyActions();
     }
 
     @Override
@@ -191,6 +251,11 @@ abstract public class AbstractManagedProcess implements ManagedProcess,
         return true;
     }
 
+    @Override
+    public CaptureMode getCaptureMode() {
+        return captureMode;
+    }
+
     @Override
     public List<String> getCommand() {
         return command;
@@ -213,84 +278,80 @@ abstract public class AbstractManagedProcess implements ManagedProcess,
 
     @Override
     public InputStream getStdErr() {
+        flush(stdErrCapture);
         try {
-            return new FileInputStream(getStdErrFile());
+            return openCapture(getStdErrFile());
         } catch (FileNotFoundException e) {
             throw new IllegalThreadStateException(
                                                   "Process has not been started");
         }
     }
 
+    @Override
+    public OutputStatistics getStdErrStatistics() {
+        return statistics(getStdErrFile(), stdErrMeter, stdErrCapture);
+    }
+
     @Override
     public String getStdErrTail(int numLines) throws IOException {
-        if (!getStdErrFile().exists()) {
-            throw new IllegalThreadStateException(
-                                                  "Process has not been started or has already exited");
-        }
-        List<String> lines = new ArrayList<>();
-        try (ReversedLinesFileReader reader = new ReversedLinesFileReader(
-                                                                          getStdErrFile())) {
-            int linesRead = 0;
-            String line;
-            while (((line = reader.readLine()) != null)
-                   && (linesRead++ < numLines)) {
-                lines.add(line);
-            }
-        }
-        Collections.reverse(lines);
         StringBuilder builder = new StringBuilder();
-        for (String line : lines) {
-            builder.append(line);
-            builder.append('\n');
-        }
+        writeStdErrTail(numLines, builder);
         return builder.toString();
     }
 
     @Override
     public OutputStream getStdIn() {
+        StdInStream in;
         try {
-            return new FileOutputStream(getStdInFile(), true);
-        } catch (FileNotFoundException e) {
+            in = openStdIn();
+        } catch (IOException e) {
+            in = null;
+        }
+        if (in == null || in.isAborted()) {
             throw new IllegalThreadStateException(
                                                   "Process has not been started or has already exited");
         }
+        return in;
     }
 
     @Override
     public InputStream getStdOut() {
+        flush(stdOutCapture);
         try {
-            return new FileInputStream(getStdOutFile());
+            return openCapture(getStdOutFile());
         } catch (FileNotFoundException e) {
             throw new IllegalThreadStateException(
                                                   "Process has not been started");
         }
     }
 
+    @Override
+    public OutputStatistics getStdOutStatistics() {
+        return statistics(getStdOutFile(), stdOutMeter, stdOutCapture);
+    }
+
     @Override
     public String getStdOutTail(int numLines) throws IOException {
-        if (!getStdOutFile().exists()) {
-            throw new IllegalThreadStateException(
-                                                  "Process has not been started or has already exited");
-        }
-        List<String> lines = new ArrayList<>();
-        try (ReversedLinesFileReader reader = new ReversedLinesFileReader(
-                                                                          getStdOutFile())) {
-            int linesRead = 0;
-            String line;
-            while (((line = reader.readLine()) != null)
-                   && (linesRead++ < numLines)) {
-                lines.add(line);
-            }
-        }
-        Collections.reverse(lines);
         StringBuilder builder = new StringBuilder();
-        for (String line : lines) {
-            builder.append(line);
-            builder.append('\n');
-        }
+        writeStdOutTail(numLines, builder);
         return builder.toString();
     }
 
+    @Override
+    public RotationPolicy getRotationPolicy() {
+        return rotationPolicy;
+    }
+
+    @Override
+    public StopPolicy getStopPolicy() {
+        return stopPolicy;
+    }
+
+    @Override
+    public int getTailBufferLines() {
+        return tailBufferLines;
+    }
+
     @Override
     public int hashCode() {
         final int prime = 31;
@@ -299,6 +360,11 @@ abstract public class AbstractManagedProcess implements ManagedProcess,
         return result;
     }
 
+    @Override
+    public boolean isOutputMetered() {
+        return outputMetered;
+    }
+
     @Override
     public boolean isSameConfiguration(ManagedProcess other) {
         if (command == null) {
@@ -325,17 +391,60 @@ abstract public class AbstractManagedProcess implements ManagedProcess,
         return true;
     }
 
+    /**
+     * Default implementation which periodically checks the liveness of the
+     * process on the shared scheduler.
+     */
+    @Override
+    public CompletableFuture<Integer> onExit() {
+        final CompletableFuture<Integer> exited = new CompletableFuture<>();
+        if (getPid() == null) {
+            exited.completeExceptionally(new IllegalThreadStateException(
+                                                                         "Process has not been started"));
+            return exited;
+        }
+        Runnable checkExit = new Runnable() {
+            @Override
+            public void run() {
+                if (!isActive()) {
+                    exited.complete(getExitValue());
+                }
+            }
+        };
+        final ScheduledFuture<?> check = ProcessScheduler.get().scheduleWithFixedDelay(checkExit,
+                                                                                       0,
+                                                                                       ACTIVE_CHECK_MILLIS,
+                                                                                       TimeUnit.MILLISECONDS);
+        exited.whenComplete(new BiConsumer<Integer, Throwable>() {
+            @Override
+            public void accept(Integer exitValue, Throwable error) {
+                check.cancel(false);
+            }
+        });
+        return exited;
+    }
+
     @Override
     public synchronized void restart() throws IOException {
-        restart(DEFAULT_KILL_TIMEOUT_SECONDS);
+        stop();
+        start();
     }
 
     @Override
     public synchronized void restart(int waitForSeconds) throws IOException {
-        stop();
+        stop(waitForSeconds);
         start();
     }
 
+    @Override
+    public void setCaptureMode(CaptureMode captureMode) {
+        if (captureMode == null) {
+            throw new IllegalArgumentException(
+                                               "Capture mode must not be null");
+        }
+        this.captureMode = captureMode;
+    }
+
     @Override
     public void setCommand(List<String> command) {
         if (command == null) {
@@ -377,10 +486,43 @@ abstract public class AbstractManagedProcess implements ManagedProcess,
         this.environment = environment;
     }
 
+    @Override
+    public void setOutputMetered(boolean metered) {
+        outputMetered = metered;
+    }
+
+    @Override
+    public void setRotationPolicy(RotationPolicy rotationPolicy) {
+        if (rotationPolicy == null) {
+            throw new IllegalArgumentException(
+                                               "Rotation policy must not be null");
+        }
+        this.rotationPolicy = rotationPolicy;
+    }
+
+    @Override
+    public void setStopPolicy(StopPolicy stopPolicy) {
+        if (stopPolicy == null) {
+            throw new IllegalArgumentException("Stop policy must not be null");
+        }
+        this.stopPolicy = stopPolicy;
+    }
+
+    @Override
+    public void setTailBufferLines(int lines) {
+        if (lines < 0 || lines > MAX_TAIL_BUFFER_LINES) {
+            throw new IllegalArgumentException(
+                                               "Tail buffer lines must be 0 - "
+                                                       + MAX_TAIL_BUFFER_LINES
+                                                       + ": " + lines);
+        }
+        tailBufferLines = lines;
+    }
+
     @Override
     public synchronized void start() throws IOException {
 
-        if (isActive()) {
+        if (isRunning()) {
             return;
         }
         terminated = false;
@@ -397,10 +539,16 @@ abstract public class AbstractManagedProcess implements ManagedProcess,
 
         initializeDirectory(new File(directory, CONTROL_DIR_PREFIX + id));
 
-        // Create initial STD IN file
-        File stdInFile = getStdInFile();
-        FileOutputStream stdIn = new FileOutputStream(stdInFile);
-        stdIn.close();
+        // Create the initial STD IN, OUT and ERR files, so that they exist as
+        // soon as the process has been started
+        for (File file : new File[] { getStdInFile(), getStdOutFile(),
+                getStdErrFile() }) {
+            FileOutputStream stream = new FileOutputStream(file);
+            stream.close();
+        }
+        abortStdIn();
+        startCaptureReaders();
+        startRotators();
 
         if (log.isLoggable(Level.FINE)) {
             log.fine("[" + id + "] executing: " + command + " dir: "
@@ -408,27 +556,59 @@ abstract public class AbstractManagedProcess implements ManagedProcess,
         }
 
         execute();
+        releaseOnExit();
+    }
 
-        // On Windows platforms, the stdout and stderr files might not be
-        // established yet, so poll
-        int counter = 0;
-        while (!getStdErrFile().exists() || !getStdOutFile().exists()) {
+    @Override
+    public CompletableFuture<Void> startAsync() {
+        final CompletableFuture<Void> started = new CompletableFuture<>();
+        ProcessScheduler.getBlocking().execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    start();
+                    started.complete(null);
+                } catch (Throwable e) {
+                    started.completeExceptionally(e);
+                }
+            }
+        });
+        return started;
+    }
 
-            try {
-                Thread.sleep(10);
+    @Override
+    public synchronized void stop() throws CannotStopProcessException {
+        stop((int) TimeUnit.MILLISECONDS.toSeconds(stopPolicy.getGracePeriodMillis()
+                                                   + 999));
+    }
 
-                if (counter++ > 150) {
-                    throw new IOException("Process did not start up correctly");
+    /**
+     * Default implementation which performs the blocking stop on the shared
+     * blocking executor, rather than on the scheduler.
+     */
+    @Override
+    public CompletableFuture<Void> stopAsync(final int waitForSeconds) {
+        final CompletableFuture<Void> stopped = new CompletableFuture<>();
+        ProcessScheduler.getBlocking().execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    stop(waitForSeconds);
+                    stopped.complete(null);
+                } catch (Throwable e) {
+                    stopped.completeExceptionally(e);
                 }
-            } catch (InterruptedException e) {
-                return;
             }
-        }
+        });
+        return stopped;
     }
 
+    /* (non-Javadoc)
+     * @see com.hellblazer.process.ManagedProcess#tailStdErr(com.hellblazer.process.LineDecoder, com.hellblazer.process.LogEventListener)
+     */
     @Override
-    public synchronized void stop() throws CannotStopProcessException {
-        stop(DEFAULT_KILL_TIMEOUT_SECONDS);
+    public Tailer tailStdErr(LineDecoder decoder, LogEventListener listener) {
+        return tailStdErr(new LogEventTailerListener(decoder, listener));
     }
 
     /* (non-Javadoc)
@@ -436,7 +616,8 @@ abstract public class AbstractManagedProcess implements ManagedProcess,
      */
     @Override
     public Tailer tailStdErr(TailerListener listener) {
-        return Tailer.create(getStdErrFile(), listener);
+        return tailStdErr(listener, TailEngine.DEFAULT_DELAY_MILLIS, false,
+                          true, TailEngine.DEFAULT_BUFFER_SIZE);
     }
 
     /* (non-Javadoc)
@@ -445,8 +626,20 @@ abstract public class AbstractManagedProcess implements ManagedProcess,
     @Override
     public Tailer tailStdErr(TailerListener listener, long delayMillis,
                              boolean end, boolean reOpen, int bufSize) {
-        return Tailer.create(getStdErrFile(), listener, delayMillis, end,
-                             reOpen, bufSize);
+        PipeCapture capture = stdErrCapture;
+        if (capture != null) {
+            return capture.tail(listener, delayMillis, end, bufSize);
+        }
+        return TailEngine.getDefault().tail(getStdErrFile(), listener,
+                                            delayMillis, end, bufSize);
+    }
+
+    /* (non-Javadoc)
+     * @see com.hellblazer.process.ManagedProcess#tailStdOut(com.hellblazer.process.LineDecoder, com.hellblazer.process.LogEventListener)
+     */
+    @Override
+    public Tailer tailStdOut(LineDecoder decoder, LogEventListener listener) {
+        return tailStdOut(new LogEventTailerListener(decoder, listener));
     }
 
     /* (non-Javadoc)
@@ -454,7 +647,8 @@ abstract public class AbstractManagedProcess implements ManagedProcess,
      */
     @Override
     public Tailer tailStdOut(TailerListener listener) {
-        return Tailer.create(getStdOutFile(), listener);
+        return tailStdOut(listener, TailEngine.DEFAULT_DELAY_MILLIS, false,
+                          true, TailEngine.DEFAULT_BUFFER_SIZE);
     }
 
     /* (non-Javadoc)
@@ -463,8 +657,40 @@ abstract public class AbstractManagedProcess implements ManagedProcess,
     @Override
     public Tailer tailStdOut(TailerListener listener, long delayMillis,
                              boolean end, boolean reOpen, int bufSize) {
-        return Tailer.create(getStdOutFile(), listener, delayMillis, end,
-                             reOpen, bufSize);
+        PipeCapture capture = stdOutCapture;
+        if (capture != null) {
+            return capture.tail(listener, delayMillis, end, bufSize);
+        }
+        return TailEngine.getDefault().tail(getStdOutFile(), listener,
+                                            delayMillis, end, bufSize);
+    }
+
+    @Override
+    public void writeStdErrTail(int numLines, Appendable out)
+                                                             throws IOException {
+        writeTail(getStdErrFile(), stdErrBuffer, stdErrCapture, numLines,
+                  out);
+    }
+
+    @Override
+    public void writeStdErrTail(int numLines, WritableByteChannel out)
+                                                                      throws IOException {
+        writeTail(getStdErrFile(), stdErrBuffer, stdErrCapture, numLines,
+                  out);
+    }
+
+    @Override
+    public void writeStdOutTail(int numLines, Appendable out)
+                                                             throws IOException {
+        writeTail(getStdOutFile(), stdOutBuffer, stdOutCapture, numLines,
+                  out);
+    }
+
+    @Override
+    public void writeStdOutTail(int numLines, WritableByteChannel out)
+                                                                      throws IOException {
+        writeTail(getStdOutFile(), stdOutBuffer, stdOutCapture, numLines,
+                  out);
     }
 
     @Override
@@ -481,6 +707,24 @@ abstract public class AbstractManagedProcess implements ManagedProcess,
         return buf.toString();
     }
 
+    /**
+     * Capture the StdOut and StdErr streams of the process from the pipes of
+     * the launcher, drained by the shared {@link PipeDrainer}
+     * 
+     * @param launcher
+     *            - the process whose output pipes are those of the receiver
+     */
+    protected void capturePipes(Process launcher) {
+        closeCaptures();
+        PipeCapture out = new PipeCapture(getStdOutFile(), stdOutMeter);
+        PipeCapture err = new PipeCapture(getStdErrFile(), stdErrMeter);
+        stdOutCapture = out;
+        stdErrCapture = err;
+        PipeDrainer drainer = PipeDrainer.getDefault();
+        drainer.drain(launcher, launcher.getInputStream(), out);
+        drainer.drain(launcher, launcher.getErrorStream(), err);
+    }
+
     /**
      * Execute the command of the receiver process. Control will not return
      * until the command list execution has finished.
@@ -495,10 +739,22 @@ abstract public class AbstractManagedProcess implements ManagedProcess,
         primitiveExecute(command);
     }
 
+    protected File getControlDirectory() {
+        return new File(directory, getControlDirectoryFileName());
+    }
+
     protected String getControlDirectoryFileName() {
         return CONTROL_DIR_PREFIX + id;
     }
 
+    protected File getLaunchLogFile() {
+        return new File(directory, getLaunchLogFileName());
+    }
+
+    protected String getLaunchLogFileName() {
+        return inControlDirectory("launch.log");
+    }
+
     protected File getStdErrFile() {
         return new File(directory, getStdErrFileName());
     }
@@ -527,10 +783,80 @@ abstract public class AbstractManagedProcess implements ManagedProcess,
         return getControlDirectoryFileName() + File.separatorChar + fileName;
     }
 
+    /**
+     * @return a process builder for the commands, which executes in the home
+     *         directory and environment of the receiver
+     */
+    protected ProcessBuilder newProcessBuilder(List<String> commands) {
+        ProcessBuilder builder = new ProcessBuilder();
+        builder.directory(directory);
+        if (environment != null) {
+            builder.environment().putAll(environment);
+        }
+        builder.command(commands);
+        return builder;
+    }
+
+    /**
+     * @return true if the process is running, as far as the lifecycle
+     *         operations are concerned
+     */
+    protected boolean isRunning() {
+        return isActive();
+    }
+
+    /**
+     * Log the output captured during the launch of the process
+     */
+    protected void logLaunchOutput() {
+        if (!log.isLoggable(Level.FINE)) {
+            return;
+        }
+        File launchLog = getLaunchLogFile();
+        if (launchLog.length() == 0) {
+            return;
+        }
+        try (BufferedReader reader = new BufferedReader(
+                                                        new InputStreamReader(
+                                                                              new FileInputStream(
+                                                                                                  launchLog)))) {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                log.fine("[" + id + "] " + line);
+            }
+        } catch (IOException e) {
+            log.log(Level.FINE, "Failed reading launch output", e);
+        }
+    }
+
+    /**
+     * Open the STD IN stream of the process, if it is not already open. The
+     * stream is opened by the launch of the process, so that the process is
+     * not blocked opening its input, and otherwise on demand.
+     * 
+     * @return the STD IN stream of the process
+     * @throws IOException
+     *             if the input of the process does not exist
+     */
+    protected synchronized StdInStream openStdIn() throws IOException {
+        StdInStream in = stdIn;
+        if (in == null) {
+            File file = getStdInFile();
+            if (!file.exists()) {
+                throw new FileNotFoundException(file.getPath());
+            }
+            in = new StdInStream(file);
+            stdIn = in;
+        }
+        return in;
+    }
+
     /**
      * The actual execution process. Control will not return until the command
      * list execution has finished.
      * 
+     * The output of the command is captured in the launch log of the control
+     * directory, rather than drained by a dedicated reader thread.
+     * 
      * @param commands
      *            - the command list to execute
      * 
@@ -538,61 +864,525 @@ abstract public class AbstractManagedProcess implements ManagedProcess,
      *             - if anything goes wrong during the execution.
      */
     protected void primitiveExecute(List<String> commands) throws IOException {
-        ProcessBuilder builder = new ProcessBuilder();
-        builder.directory(directory);
-        if (environment != null) {
-            builder.environment().putAll(environment);
-        }
-        builder.command(commands);
+        ProcessBuilder builder = newProcessBuilder(commands);
         builder.redirectErrorStream(true); // combine OUT and ERR into one
         // stream
+        builder.redirectOutput(Redirect.appendTo(getLaunchLogFile()));
         Process p = builder.start();
-        final BufferedReader shellReader = new BufferedReader(
-                                                              new InputStreamReader(
-                                                                                    p.getInputStream()));
-        Runnable reader = new Runnable() {
+        p.getOutputStream().close();
+        try {
+            p.waitFor();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } finally {
+            p.destroy();
+        }
+        logLaunchOutput();
+    }
+
+    /**
+     * Run the action once the process has been destroyed
+     * 
+     * @param action
+     */
+    synchronized void onDestroy(Runnable action) {
+        if (destroyActions == null) {
+            destroyActions = new ArrayList<Runnable>();
+        }
+        destroyActions.add(action);
+    }
+
+    private void abortStdIn() {
+        StdInStream in = stdIn;
+        if (in != null) {
+            in.abort();
+            stdIn = null;
+        }
+    }
+
+    private static void addLine(ArrayDeque<String> lines, String line,
+                                int numLines) {
+        if (lines.size() == numLines) {
+            lines.removeFirst();
+        }
+        lines.addLast(line);
+    }
+
+    private void closeCaptures() {
+        for (PipeCapture capture : new PipeCapture[] { stdOutCapture,
+                stdErrCapture }) {
+            if (capture != null) {
+                capture.closed();
+            }
+        }
+        stdOutCapture = null;
+        stdErrCapture = null;
+    }
+
+    private static boolean endsWithLineTerminator(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            if (raf.length() == 0) {
+                return true;
+            }
+            raf.seek(raf.length() - 1);
+            int last = raf.read();
+            return last == '\n' || last == '\r';
+        }
+    }
+
+    /**
+     * Bring the capture file up to date with the output of its pipe
+     */
+    private static void flush(PipeCapture capture) {
+        if (capture != null) {
+            PipeDrainer.getDefault().drainAvailable(capture);
+            capture.flush();
+        }
+    }
+
+    private boolean isBuffered(TailBuffer buffer, int numLines) {
+        if (buffer == null || numLines < 0
+            || numLines > buffer.getCapacity()) {
+            return false;
+        }
+        if (captureRegistration == null) {
+            // not fed by the watcher, so bring it up to date on demand
+            updateTailBuffer(buffer);
+        }
+        return true;
+    }
+
+    private static int lineCount(CharSequence lines) {
+        int count = 0;
+        for (int i = 0; i < lines.length(); i++) {
+            if (lines.charAt(i) == '\n') {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static Writer newWriter(WritableByteChannel out, Charset charset) {
+        return Channels.newWriter(out,
+                                  charset.newEncoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE),
+                                  -1);
+    }
+
+    /**
+     * @return the stream of the capture file, preceded by its rotated segments
+     */
+    private static InputStream openCapture(File file)
+                                                     throws FileNotFoundException {
+        InputStream current = new FileInputStream(file);
+        List<File> segments = CaptureRotator.segments(file);
+        if (segments.isEmpty()) {
+            return current;
+        }
+        List<InputStream> streams = new ArrayList<>();
+        for (int i = segments.size() - 1; i >= 0; i--) {
+            try {
+                streams.add(CaptureRotator.open(segments.get(i)));
+            } catch (IOException e) {
+                log.log(Level.FINE, "Unable to open " + segments.get(i), e);
+            }
+        }
+        streams.add(current);
+        return new SequenceInputStream(Collections.enumeration(streams));
+    }
+
+    /**
+     * Append the tail of the compressed segment
+     * 
+     * @return true if the segment ends with a line terminator
+     */
+    private static boolean readCompressedTail(File segment, int numLines,
+                                              Appendable out)
+                                                             throws IOException {
+        ArrayDeque<String> lines = new ArrayDeque<>();
+        StringBuilder line = new StringBuilder();
+        boolean afterCr = false;
+        try (Reader reader = new InputStreamReader(CaptureRotator.open(segment))) {
+            char[] buffer = new char[8192];
+            for (int read = reader.read(buffer); read > 0; read = reader.read(buffer)) {
+                for (int i = 0; i < read; i++) {
+                    char c = buffer[i];
+                    if (c == '\n' && afterCr) {
+                        afterCr = false;
+                        continue;
+                    }
+                    afterCr = c == '\r';
+                    if (c == '\n' || c == '\r') {
+                        addLine(lines, line.toString(), numLines);
+                        line.setLength(0);
+                    } else {
+                        line.append(c);
+                    }
+                }
+            }
+        }
+        boolean terminated = line.length() == 0;
+        if (!terminated) {
+            addLine(lines, line.toString(), numLines);
+        }
+        for (String tail : lines) {
+            out.append(tail);
+            out.append('\n');
+        }
+        return terminated;
+    }
+
+    private static void readFileTail(File file, int numLines, Appendable out)
+                                                                             throws IOException {
+        Charset charset = Charset.defaultCharset();
+        if (ReverseLineScanner.supports(charset)) {
+            ReverseLineScanner.tail(file, numLines, charset, out);
+            return;
+        }
+        List<String> lines = new ArrayList<>();
+        try (ReversedLinesFileReader reader = new ReversedLinesFileReader(file)) {
+            int linesRead = 0;
+            String line;
+            while (((line = reader.readLine()) != null)
+                   && (linesRead++ < numLines)) {
+                lines.add(line);
+            }
+        }
+        Collections.reverse(lines);
+        for (String line : lines) {
+            out.append(line);
+            out.append('\n');
+        }
+    }
+
+    /**
+     * Append the tail of the capture file, continuing into its rotated
+     * segments if the file itself holds fewer lines. A rotation may split a
+     * line, which is then joined across the boundary of the segments.
+     */
+    private static void readTail(File file, int numLines, Appendable out)
+                                                                         throws IOException {
+        List<File> segments = CaptureRotator.segments(file);
+        if (segments.isEmpty()) {
+            readFileTail(file, numLines, out);
+            return;
+        }
+        // read past the lines wanted, to know if the first may be partial
+        StringBuilder tail = new StringBuilder();
+        readFileTail(file, numLines + 2, tail);
+        int lines = lineCount(tail);
+        boolean entire = lines < numLines + 2;
+        for (int i = 0; i < segments.size() && (lines < numLines || entire); i++) {
+            int wanted = Math.max(0, numLines - lines) + 2;
+            File segment = segments.get(i);
+            StringBuilder older = new StringBuilder();
+            boolean terminated;
+            if (segment.getName().endsWith(CaptureRotator.COMPRESSED_SUFFIX)) {
+                terminated = readCompressedTail(segment, wanted, older);
+            } else {
+                readFileTail(segment, wanted, older);
+                terminated = endsWithLineTerminator(segment);
+            }
+            int olderLines = lineCount(older);
+            entire = olderLines < wanted;
+            if (!terminated && olderLines > 0 && tail.length() > 0) {
+                older.setLength(older.length() - 1); // join the split line
+                olderLines--;
+            }
+            tail.insert(0, older);
+            lines += olderLines;
+        }
+        int start = 0;
+        for (int excess = lines - numLines; excess > 0; excess--) {
+            start = tail.indexOf("\n", start) + 1;
+        }
+        out.append(tail, start, tail.length());
+    }
+
+    /**
+     * Once the process exits, stop rotating its capture files and cancel the
+     * watch of the control directory which feeds the meters and tail buffers,
+     * so that a process which is stopped without being destroyed does not
+     * hold on to either. The meters and tail buffers are then brought up to
+     * date on demand.
+     */
+    private void releaseOnExit() {
+        final ControlDirectoryWatcher.Registration registration = captureRegistration;
+        final CaptureRotator[] rotators = { stdOutRotator, stdErrRotator };
+        if (registration == null && rotators[0] == null
+            && rotators[1] == null) {
+            return;
+        }
+        onExit().whenComplete(new BiConsumer<Integer, Throwable>() {
             @Override
-            public void run() {
-                String line;
-                try {
-                    line = shellReader.readLine();
-                } catch (IOException e) {
-                    if (!"Stream closed".equals(e.getMessage())
-                        && !e.getMessage().contains("Bad file descriptor")) {
-                        log.log(Level.SEVERE, "Failed reading process output",
-                                e);
+            public void accept(Integer exitValue, Throwable error) {
+                for (CaptureRotator rotator : rotators) {
+                    if (rotator != null) {
+                        rotator.stop();
+                    }
+                }
+                if (registration != null) {
+                    registration.cancel();
+                    if (captureRegistration == registration) {
+                        captureRegistration = null;
                     }
-                    return;
                 }
-                while (line != null) {
-                    if (log.isLoggable(Level.FINE) && line != null) {
-                        log.fine("[" + id + "] " + line);
+            }
+        });
+    }
+
+    private void runDestroyActions() {
+        if (destroyActions == null) {
+            return;
+        }
+        for (Runnable action : destroyActions) {
+            try {
+                action.run();
+            } catch (RuntimeException e) {
+                log.log(Level.WARNING, "Error destroying [" + id + "]", e);
+            }
+        }
+        destroyActions = null;
+    }
+
+    /**
+     * @return the readers of the capture file which follow it across its
+     *         rotations, starting with the capture writing it from a pipe
+     */
+    private List<CaptureRotator.Reader> rotationReaders(File file,
+                                                        PipeCapture capture,
+                                                        OutputMeter meter,
+                                                        TailBuffer buffer) {
+        List<CaptureRotator.Reader> readers = new ArrayList<>();
+        if (capture != null) {
+            readers.add(capture);
+        } else if (meter != null) {
+            readers.add(meter);
+        }
+        if (buffer != null) {
+            readers.add(buffer);
+        }
+        readers.addAll(TailEngine.getDefault().readersOf(file));
+        return readers;
+    }
+
+    /**
+     * Start metering the StdOut and StdErr streams and buffering their tails,
+     * as configured. When captured to file, the meters and buffers are fed on
+     * the process scheduler when the shared control directory watcher
+     * observes the capture files change, coalescing bursts of changes into a
+     * single update; the control directory is watched only if there is a
+     * meter or buffer to feed. When captured by pipe, the meters are fed by
+     * the captures, and the buffers are updated when the tail is read.
+     */
+    private void startCaptureReaders() {
+        stopCaptureReaders();
+        final OutputMeter outMeter;
+        final OutputMeter errMeter;
+        if (outputMetered) {
+            outMeter = new OutputMeter(getStdOutFile());
+            errMeter = new OutputMeter(getStdErrFile());
+        } else {
+            outMeter = null;
+            errMeter = null;
+        }
+        final TailBuffer out;
+        final TailBuffer err;
+        if (tailBufferLines == 0) {
+            out = null;
+            err = null;
+        } else {
+            out = new TailBuffer(getStdOutFile().getAbsoluteFile(),
+                                 tailBufferLines);
+            err = new TailBuffer(getStdErrFile().getAbsoluteFile(),
+                                 tailBufferLines);
+        }
+        if (captureMode != CaptureMode.PIPE
+            && (outMeter != null || out != null)) {
+            final File outFile = getStdOutFile().getAbsoluteFile();
+            final File errFile = getStdErrFile().getAbsoluteFile();
+            final AtomicBoolean pending = new AtomicBoolean();
+            final Runnable update = new Runnable() {
+                @Override
+                public void run() {
+                    pending.set(false);
+                    if (outMeter != null) {
+                        updateMeter(outMeter);
+                        updateMeter(errMeter);
                     }
-                    try {
-                        line = shellReader.readLine();
-                    } catch (IOException e) {
-                        if (!"Stream closed".equals(e.getMessage())) {
-                            log.log(Level.SEVERE,
-                                    "Failed reading process output", e);
-                        }
-                        return;
+                    if (out != null) {
+                        updateTailBuffer(out);
+                        updateTailBuffer(err);
                     }
                 }
+            };
+            ControlDirectoryWatcher.Listener listener = new ControlDirectoryWatcher.Listener() {
+                @Override
+                public void changed(File file) {
+                    boolean output = file == null || outFile.equals(file)
+                                     || errFile.equals(file);
+                    if (output && pending.compareAndSet(false, true)) {
+                        ProcessScheduler.get().execute(update);
+                    }
+                }
+            };
+            try {
+                captureRegistration = ControlDirectoryWatcher.getDefault().watch(getControlDirectory(),
+                                                                                 listener);
+            } catch (IOException | IllegalStateException e) {
+                if (log.isLoggable(Level.FINE)) {
+                    log.fine("Unable to watch control directory of [" + id
+                             + "], updating meters and tail buffers on demand: "
+                             + e);
+                }
             }
-        };
+        }
+        stdOutMeter = outMeter;
+        stdErrMeter = errMeter;
+        stdOutBuffer = out;
+        stdErrBuffer = err;
+    }
+
+    /**
+     * Start rotating the StdOut and StdErr capture files, if configured
+     */
+    private void startRotators() {
+        stopRotators();
+        if (!rotationPolicy.isEnabled()) {
+            return;
+        }
+        CaptureRotator out = new CaptureRotator(
+                                                getStdOutFile(),
+                                                rotationPolicy,
+                                                new Supplier<List<CaptureRotator.Reader>>() {
+                                                    @Override
+                                                    public List<CaptureRotator.Reader> get() {
+                                                        return rotationReaders(getStdOutFile(),
+                                                                               stdOutCapture,
+                                                                               stdOutMeter,
+                                                                               stdOutBuffer);
+                                                    }
+                                                });
+        CaptureRotator err = new CaptureRotator(
+                                                getStdErrFile(),
+                                                rotationPolicy,
+                                                new Supplier<List<CaptureRotator.Reader>>() {
+                                                    @Override
+                                                    public List<CaptureRotator.Reader> get() {
+                                                        return rotationReaders(getStdErrFile(),
+                                                                               stdErrCapture,
+                                                                               stdErrMeter,
+                                                                               stdErrBuffer);
+                                                    }
+                                                });
+        out.start();
+        err.start();
+        stdOutRotator = out;
+        stdErrRotator = err;
+    }
+
+    /**
+     * Answer the statistics of a stream. The meter of a stream captured to
+     * file is first brought up to date with the capture file.
+     */
+    private OutputStatistics statistics(File file, OutputMeter meter,
+                                        PipeCapture capture) {
+        if (meter == null) {
+            return new OutputStatistics(0, 0, file.length(),
+                                        TailEngine.getDefault().lagOf(file),
+                                        0);
+        }
+        if (capture != null) {
+            return meter.getStatistics(PipeDrainer.getDefault().backlog(capture));
+        }
+        updateMeter(meter);
+        return meter.getStatistics(TailEngine.getDefault().lagOf(file));
+    }
+
+    private void stopCaptureReaders() {
+        ControlDirectoryWatcher.Registration registration = captureRegistration;
+        if (registration != null) {
+            registration.cancel();
+            captureRegistration = null;
+        }
+        stdOutMeter = null;
+        stdErrMeter = null;
+        stdOutBuffer = null;
+        stdErrBuffer = null;
+    }
+
+    private void stopRotators() {
+        for (CaptureRotator rotator : new CaptureRotator[] { stdOutRotator,
+                stdErrRotator }) {
+            if (rotator != null) {
+                rotator.stop();
+            }
+        }
+        stdOutRotator = null;
+        stdErrRotator = null;
+    }
 
-        Thread readerThread = new Thread(reader, "Process reader for: "
-                                                 + getCommand());
-        readerThread.setDaemon(true);
-        readerThread.start();
+    private void updateMeter(OutputMeter meter) {
+        try {
+            meter.update();
+        } catch (IOException e) {
+            log.log(Level.FINE, "Failed updating " + meter, e);
+        }
+    }
 
+    private void updateTailBuffer(TailBuffer buffer) {
         try {
-            p.waitFor();
-        } catch (InterruptedException e) {
+            buffer.update();
+        } catch (IOException e) {
+            log.log(Level.FINE, "Failed updating " + buffer, e);
+        }
+    }
+
+    private static void validateTail(File file, int numLines) {
+        if (numLines < 0 || numLines > MAX_TAIL_LINES) {
+            throw new IllegalArgumentException("Number of lines must be 0 - "
+                                               + MAX_TAIL_LINES + ": "
+                                               + numLines);
+        }
+        if (!file.exists()) {
+            throw new IllegalThreadStateException(
+                                                  "Process has not been started or has already exited");
+        }
+    }
+
+    private void writeTail(File file, TailBuffer buffer, PipeCapture capture,
+                           int numLines, Appendable out) throws IOException {
+        validateTail(file, numLines);
+        flush(capture);
+        if (isBuffered(buffer, numLines)) {
+            buffer.tail(numLines, out);
+        } else {
+            readTail(file, numLines, out);
+        }
+    }
+
+    /**
+     * Write the tail to the channel, transferring the bytes of the capture
+     * file directly when its lines can be scanned without decoding
+     */
+    private void writeTail(File file, TailBuffer buffer, PipeCapture capture,
+                           int numLines, WritableByteChannel out)
+                                                                 throws IOException {
+        validateTail(file, numLines);
+        flush(capture);
+        Charset charset = Charset.defaultCharset();
+        Writer writer;
+        if (isBuffered(buffer, numLines)) {
+            writer = newWriter(out, buffer.getCharset());
+            buffer.tail(numLines, writer);
+        } else if (ReverseLineScanner.supports(charset)
+                   && CaptureRotator.segments(file).isEmpty()) {
+            ReverseLineScanner.transferTail(file, numLines, charset, out);
             return;
-        } finally {
-            readerThread.interrupt();
-            p.destroy();
+        } else {
+            writer = newWriter(out, charset);
+            readTail(file, numLines, writer);
         }
+        writer.flush();
     }
 }
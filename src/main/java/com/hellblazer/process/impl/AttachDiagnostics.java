@@ -0,0 +1,316 @@
+/** (C) Copyright 2011-2014 Chiral Behaviors, All Rights Reserved
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package com.hellblazer.process.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.management.JMException;
+import javax.management.MBeanServerConnection;
+import javax.management.ObjectName;
+import javax.management.remote.JMXConnector;
+import javax.management.remote.JMXConnectorFactory;
+import javax.management.remote.JMXServiceURL;
+
+import com.sun.tools.attach.AttachNotSupportedException;
+import com.sun.tools.attach.VirtualMachine;
+
+/**
+ * Executes the diagnostic commands of jcmd in a Java process, without forking
+ * a JVM to do so. The command is executed through the attach API of this VM,
+ * its output streamed back over the attach connection. Where the attach API
+ * does not expose diagnostic commands, as on VMs which do not export the
+ * HotSpot attach implementation, the commands are invoked on the diagnostic
+ * command MBean of the local management agent of the process, which is
+ * started through the attach API. The MBean answers the whole output of the
+ * command as a string, so that output is buffered in memory rather than
+ * streamed.
+ * 
+ * Whether the attach API exposes diagnostic commands is determined once, when
+ * this class is initialized, without attaching to any process. On Java 9 and
+ * later the HotSpot attach implementation is only exposed if its package is
+ * exported to this code, so streaming the output requires this VM be run
+ * with <code>--add-exports jdk.attach/sun.tools.attach=ALL-UNNAMED</code>.
+ * 
+ * @author hhildebrand
+ * 
+ */
+public final class AttachDiagnostics {
+
+    /**
+     * The output of a command streamed over the attach connection, which is
+     * detached once the output is closed
+     */
+    private static class AttachedOutput extends FilterInputStream {
+        private final VirtualMachine vm;
+
+        private AttachedOutput(InputStream output, VirtualMachine vm) {
+            super(output);
+            this.vm = vm;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                vm.detach();
+            }
+        }
+    }
+
+    public static final String  HEAP_HISTOGRAM     = "GC.class_histogram";
+    public static final String  THREAD_DUMP        = "Thread.print";
+
+    private static final String DIAGNOSTIC_COMMAND = "com.sun.management:type=DiagnosticCommand";
+    private static final String EXECUTE_JCMD       = "executeJCmd";
+    private static final String HOTSPOT_ATTACH     = "sun.tools.attach";
+    private static final Method executeJCmd        = executeJCmdMethod();
+
+    /**
+     * Connect to the local management agent of the process, starting the
+     * agent if it is not running
+     * 
+     * @param pid
+     * @return the connected connector
+     * @throws IOException
+     */
+    public static JMXConnector connectManagementAgent(int pid)
+                                                              throws IOException {
+        String address;
+        VirtualMachine vm = attach(pid);
+        try {
+            address = vm.startLocalManagementAgent();
+        } finally {
+            vm.detach();
+        }
+        return JMXConnectorFactory.connect(new JMXServiceURL(address));
+    }
+
+    /**
+     * Execute the diagnostic command through the attach API
+     * 
+     * @param pid
+     * @param command
+     *            - the command and its arguments, as given to jcmd
+     * @return the output of the command, which must be closed, or null if the
+     *         attach API does not expose diagnostic commands
+     * @throws IOException
+     */
+    public static InputStream execute(int pid, String command)
+                                                              throws IOException {
+        if (executeJCmd == null) {
+            return null;
+        }
+        VirtualMachine vm = attach(pid);
+        InputStream output;
+        try {
+            output = executeJCmd(vm, command);
+        } catch (IOException | RuntimeException e) {
+            vm.detach();
+            throw e;
+        }
+        if (output == null) {
+            vm.detach();
+            return null;
+        }
+        return new AttachedOutput(output, vm);
+    }
+
+    /**
+     * Execute the diagnostic command on the diagnostic command MBean
+     * 
+     * @param connection
+     *            - the connection to the process
+     * @param command
+     *            - the command and its arguments, as given to jcmd
+     * @return the output of the command, buffered in memory
+     * @throws IOException
+     */
+    public static InputStream invoke(MBeanServerConnection connection,
+                                     String command) throws IOException {
+        String[] tokens = split(command);
+        if (tokens.length == 0) {
+            throw new IllegalArgumentException("No diagnostic command given");
+        }
+        String[] arguments = Arrays.copyOfRange(tokens, 1, tokens.length);
+        Object output;
+        try {
+            output = connection.invoke(new ObjectName(DIAGNOSTIC_COMMAND),
+                                       operationOf(tokens[0]),
+                                       new Object[] { arguments },
+                                       new String[] { String[].class.getName() });
+        } catch (JMException e) {
+            throw new IOException("Unable to execute diagnostic command: "
+                                  + command, e);
+        }
+        return new ByteArrayInputStream(
+                                        String.valueOf(output).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return true if the attach API exposes diagnostic commands, so that their
+     *         output is streamed from the process
+     */
+    public static boolean isStreaming() {
+        return executeJCmd != null;
+    }
+
+    /**
+     * @param name
+     *            - the name of a diagnostic command, such as
+     *            <code>GC.class_histogram</code>
+     * @return the name of the operation of the diagnostic command MBean
+     *         executing the command, such as <code>gcClassHistogram</code>
+     */
+    public static String operationOf(String name) {
+        StringBuilder operation = new StringBuilder(name.length());
+        boolean prefix = true;
+        boolean upper = false;
+        for (char c : name.toCharArray()) {
+            if (c == '.' || c == '_') {
+                prefix = false;
+                upper = true;
+            } else if (upper) {
+                operation.append(Character.toUpperCase(c));
+                upper = false;
+            } else if (prefix) {
+                operation.append(Character.toLowerCase(c));
+            } else {
+                operation.append(c);
+            }
+        }
+        return operation.toString();
+    }
+
+    /**
+     * Split the command into its name and arguments at the whitespace outside
+     * of quotes. The quotes are kept, as the diagnostic command MBean joins
+     * the arguments with spaces for the VM to parse, as jcmd would.
+     * 
+     * @param command
+     *            - the command and its arguments, as given to jcmd
+     * @return the name of the command, followed by its arguments
+     */
+    public static String[] split(String command) {
+        List<String> tokens = new ArrayList<String>();
+        StringBuilder token = new StringBuilder();
+        char quote = 0;
+        for (char c : command.toCharArray()) {
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+                token.append(c);
+            } else if (Character.isWhitespace(c)) {
+                if (token.length() > 0) {
+                    tokens.add(token.toString());
+                    token.setLength(0);
+                }
+            } else {
+                if (c == '"' || c == '\'') {
+                    quote = c;
+                }
+                token.append(c);
+            }
+        }
+        if (token.length() > 0) {
+            tokens.add(token.toString());
+        }
+        return tokens.toArray(new String[tokens.size()]);
+    }
+
+    private static VirtualMachine attach(int pid) throws IOException {
+        try {
+            return VirtualMachine.attach(Integer.toString(pid));
+        } catch (AttachNotSupportedException e) {
+            throw new IOException("Unable to attach to process: " + pid, e);
+        }
+    }
+
+    /**
+     * Execute the command through the HotSpot attach implementation, which is
+     * not part of the attach API
+     * 
+     * @return the output of the command, or null if the virtual machine is not
+     *         attached through the HotSpot implementation
+     */
+    private static InputStream executeJCmd(VirtualMachine vm, String command)
+                                                                              throws IOException {
+        if (!executeJCmd.getDeclaringClass().isInstance(vm)) {
+            return null;
+        }
+        try {
+            return (InputStream) executeJCmd.invoke(vm, command);
+        } catch (IllegalAccessException e) {
+            return null;
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Unable to execute diagnostic command: "
+                                  + command, e.getCause());
+        }
+    }
+
+    /**
+     * Find the method of the HotSpot attach implementation which executes
+     * diagnostic commands, if it is accessible to this class. Modules are
+     * examined reflectively, as they do not exist before Java 9.
+     * 
+     * @return the method, or null if it is not accessible
+     */
+    private static Method executeJCmdMethod() {
+        Method method;
+        try {
+            method = Class.forName(HOTSPOT_ATTACH + ".HotSpotVirtualMachine").getMethod(EXECUTE_JCMD,
+                                                                                        String.class);
+        } catch (ClassNotFoundException | NoSuchMethodException
+                | LinkageError e) {
+            return null;
+        }
+        Method getModule;
+        try {
+            getModule = Class.class.getMethod("getModule");
+        } catch (NoSuchMethodException e) {
+            return method; // no modules, so the implementation is accessible
+        }
+        try {
+            Object module = getModule.invoke(method.getDeclaringClass());
+            Object self = getModule.invoke(AttachDiagnostics.class);
+            Method isExported = module.getClass().getMethod("isExported",
+                                                            String.class,
+                                                            module.getClass());
+            if ((Boolean) isExported.invoke(module, HOTSPOT_ATTACH, self)) {
+                return method;
+            }
+        } catch (NoSuchMethodException | IllegalAccessException
+                | InvocationTargetException e) {
+            // fall through
+        }
+        return null;
+    }
+
+    private AttachDiagnostics() {
+    }
+}
@@ -0,0 +1,400 @@
+/** (C) Copyright 2011-2014 Chiral Behaviors, All Rights Reserved
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package com.hellblazer.process.impl;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.hellblazer.process.RotationPolicy;
+
+/**
+ * Rotates a capture file of a process according to a {@link RotationPolicy}.
+ * The process appends to the capture file, so it is rotated by copying it
+ * into the newest segment and truncating it, after which the process'
+ * appends continue from its beginning. Rotation by size is driven by the
+ * shared control directory watcher. As copying and compressing a capture file
+ * blocks, the rotations of all capture files run one at a time on a scheduler
+ * of their own, never on the shared process scheduler.
+ * 
+ * The readers of the capture file are locked while the final bytes are copied
+ * and the file is truncated. Each consumes everything written up to the final
+ * copy, and then continues from the beginning of the file, so that readers see
+ * the output uninterrupted across the rotation. As the process is not
+ * stopped, output written between the final copy and the truncation is lost.
+ * 
+ * @author hhildebrand
+ * 
+ */
+public class CaptureRotator {
+
+    /**
+     * A reader of the capture file, which follows it across rotations
+     */
+    public interface Reader {
+        /**
+         * Consume everything written to the capture file. Called with the
+         * monitor of the reader held, just before the file is truncated
+         */
+        void drain();
+
+        /**
+         * The capture file has been truncated, and is to be read from its
+         * beginning. Called with the monitor of the reader held
+         */
+        void truncated();
+    }
+
+    public static final String              COMPRESSED_SUFFIX = ".gz";
+
+    private static final Logger             log               = Logger.getLogger(CaptureRotator.class.getCanonicalName());
+    private static ScheduledExecutorService rotation;
+    private static final long               SIZE_CHECK_MILLIS = 1000;
+
+    /**
+     * @param segment
+     * @return the stream of the contents of the segment, decompressed if
+     *         necessary
+     * @throws IOException
+     */
+    public static InputStream open(File segment) throws IOException {
+        InputStream is = new FileInputStream(segment);
+        if (!segment.getName().endsWith(COMPRESSED_SUFFIX)) {
+            return is;
+        }
+        try {
+            return new GZIPInputStream(is);
+        } catch (IOException e) {
+            is.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @param file
+     *            - the capture file
+     * @return the rolled segments of the capture file, newest first
+     */
+    public static List<File> segments(File file) {
+        final String prefix = file.getName() + ".";
+        File[] candidates = file.getAbsoluteFile().getParentFile().listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return index(prefix, name) > 0;
+            }
+        });
+        List<File> segments = new ArrayList<>();
+        if (candidates == null) {
+            return segments;
+        }
+        segments.addAll(Arrays.asList(candidates));
+        Collections.sort(segments, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                return Integer.compare(index(prefix, a.getName()),
+                                       index(prefix, b.getName()));
+            }
+        });
+        return segments;
+    }
+
+    /**
+     * @return the scheduler running the rotations of all capture files
+     */
+    private static synchronized ScheduledExecutorService getRotation() {
+        if (rotation == null) {
+            ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(
+                                                                                   1,
+                                                                                   new DaemonThreadFactory(
+                                                                                                           "Capture rotation"));
+            executor.setRemoveOnCancelPolicy(true);
+            rotation = executor;
+        }
+        return rotation;
+    }
+
+    /**
+     * @return the index of the segment named, or -1 if the name is not that of
+     *         a segment
+     */
+    private static int index(String prefix, String name) {
+        if (!name.startsWith(prefix)) {
+            return -1;
+        }
+        String index = name.substring(prefix.length());
+        if (index.endsWith(COMPRESSED_SUFFIX)) {
+            index = index.substring(0, index.length()
+                                       - COMPRESSED_SUFFIX.length());
+        }
+        if (index.isEmpty() || index.length() > 9) {
+            return -1;
+        }
+        for (int i = 0; i < index.length(); i++) {
+            if (!Character.isDigit(index.charAt(i))) {
+                return -1;
+            }
+        }
+        return Integer.parseInt(index);
+    }
+
+    /**
+     * @return the existing segment of the capture file, or null
+     */
+    private static File segment(File file, int index) {
+        File segment = new File(file.getPath() + "." + index);
+        if (segment.exists()) {
+            return segment;
+        }
+        segment = new File(segment.getPath() + COMPRESSED_SUFFIX);
+        return segment.exists() ? segment : null;
+    }
+
+    private final File                           file;
+    private ScheduledFuture<?>                   interval;
+    private final AtomicBoolean                  pending  = new AtomicBoolean();
+    private final RotationPolicy                 policy;
+    private final Supplier<List<Reader>>         readers;
+    private ControlDirectoryWatcher.Registration registration;
+    private final Object                         rotating = new Object();
+    private ScheduledFuture<?>                   sizeCheck;
+
+    /**
+     * @param file
+     *            - the capture file
+     * @param policy
+     *            - the policy governing the rotation
+     * @param readers
+     *            - the supplier of the current readers of the capture file
+     */
+    public CaptureRotator(File file, RotationPolicy policy,
+                          Supplier<List<Reader>> readers) {
+        this.file = file.getAbsoluteFile();
+        this.policy = policy;
+        this.readers = readers;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Roll the capture file into the newest segment, if it is not empty
+     * 
+     * @throws IOException
+     */
+    public void rotate() throws IOException {
+        synchronized (rotating) {
+            if (file.length() == 0) {
+                return;
+            }
+            String suffix = policy.isCompress() ? COMPRESSED_SUFFIX : "";
+            File rolling = new File(file.getPath() + ".rolling" + suffix);
+            try (RandomAccessFile capture = new RandomAccessFile(file, "rw");
+                    FileOutputStream fos = new FileOutputStream(rolling);
+                    OutputStream out = policy.isCompress() ? new GZIPOutputStream(
+                                                                                  fos)
+                                                          : fos) {
+                FileChannel channel = capture.getChannel();
+                WritableByteChannel segment = policy.isCompress() ? Channels.newChannel(out)
+                                                                 : fos.getChannel();
+                long copied = transfer(channel, 0, segment);
+                truncate(readers.get(), 0, channel, copied, segment);
+            }
+            shift();
+            File target = new File(file.getPath() + ".1" + suffix);
+            if (!rolling.renameTo(target)) {
+                throw new IOException("Cannot rename " + rolling + " to "
+                                      + target);
+            }
+            if (log.isLoggable(Level.FINE)) {
+                log.fine("Rotated " + file + " into " + target);
+            }
+        }
+    }
+
+    /**
+     * Start rotating the capture file. The checks and rotations run on the
+     * rotation scheduler, so that they do not hold up the shared process
+     * scheduler
+     */
+    public synchronized void start() {
+        stop();
+        final Runnable check = new Runnable() {
+            @Override
+            public void run() {
+                pending.set(false);
+                if (file.length() >= policy.getMaxBytes()) {
+                    rotateQuietly();
+                }
+            }
+        };
+        if (policy.getMaxBytes() > 0) {
+            ControlDirectoryWatcher.Listener listener = new ControlDirectoryWatcher.Listener() {
+                @Override
+                public void changed(File changed) {
+                    if ((changed == null || file.equals(changed))
+                        && pending.compareAndSet(false, true)) {
+                        getRotation().execute(check);
+                    }
+                }
+            };
+            try {
+                registration = ControlDirectoryWatcher.getDefault().watch(file.getParentFile(),
+                                                                          listener);
+            } catch (IOException | IllegalStateException e) {
+                if (log.isLoggable(Level.FINE)) {
+                    log.fine("Unable to watch " + file
+                             + ", checking its size periodically: " + e);
+                }
+                sizeCheck = getRotation().scheduleWithFixedDelay(check,
+                                                                 SIZE_CHECK_MILLIS,
+                                                                 SIZE_CHECK_MILLIS,
+                                                                 TimeUnit.MILLISECONDS);
+            }
+        }
+        if (policy.getIntervalMillis() > 0) {
+            Runnable roll = new Runnable() {
+                @Override
+                public void run() {
+                    rotateQuietly();
+                }
+            };
+            interval = getRotation().scheduleWithFixedDelay(roll,
+                                                            policy.getIntervalMillis(),
+                                                            policy.getIntervalMillis(),
+                                                            TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stop rotating the capture file, without waiting for a rotation in
+     * progress to complete
+     */
+    public synchronized void stop() {
+        if (registration != null) {
+            registration.cancel();
+            registration = null;
+        }
+        if (sizeCheck != null) {
+            sizeCheck.cancel(false);
+            sizeCheck = null;
+        }
+        if (interval != null) {
+            interval.cancel(false);
+            interval = null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "CaptureRotator [" + file + ", " + policy + "]";
+    }
+
+    private void rotateQuietly() {
+        try {
+            rotate();
+        } catch (IOException e) {
+            log.log(Level.WARNING, "Failed rotating " + file, e);
+        }
+    }
+
+    /**
+     * Move each segment to the next oldest, discarding the oldest
+     */
+    private void shift() throws IOException {
+        for (int i = policy.getSegments(); i >= 1; i--) {
+            File segment = segment(file, i);
+            if (segment == null) {
+                continue;
+            }
+            if (i == policy.getSegments()) {
+                if (!segment.delete()) {
+                    throw new IOException("Cannot delete " + segment);
+                }
+                continue;
+            }
+            String suffix = segment.getName().endsWith(COMPRESSED_SUFFIX) ? COMPRESSED_SUFFIX
+                                                                         : "";
+            File next = new File(file.getPath() + "." + (i + 1) + suffix);
+            if (!segment.renameTo(next)) {
+                throw new IOException("Cannot rename " + segment + " to "
+                                      + next);
+            }
+        }
+    }
+
+    /**
+     * @return the position of the capture file the transfer ended at
+     */
+    private long transfer(FileChannel channel, long position,
+                          WritableByteChannel segment) throws IOException {
+        long size = channel.size();
+        while (position < size) {
+            long transferred = channel.transferTo(position, size - position,
+                                                  segment);
+            if (transferred <= 0) {
+                break;
+            }
+            position += transferred;
+        }
+        return position;
+    }
+
+    /**
+     * Lock each of the readers in turn, then drain the readers, copy the
+     * remainder of the capture file and truncate it
+     */
+    private void truncate(List<Reader> readers, int index, FileChannel channel,
+                          long copied, WritableByteChannel segment)
+                                                                   throws IOException {
+        if (index == readers.size()) {
+            for (Reader reader : readers) {
+                reader.drain();
+            }
+            // keep the window in which output may be lost as small as possible
+            transfer(channel, copied, segment);
+            channel.truncate(0);
+            return;
+        }
+        Reader reader = readers.get(index);
+        synchronized (reader) {
+            truncate(readers, index + 1, channel, copied, segment);
+            reader.truncated();
+        }
+    }
+}
@@ -0,0 +1,224 @@
+/** (C) Copyright 2011-2014 Chiral Behaviors, All Rights Reserved
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package com.hellblazer.process.impl;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A single, shared watcher of process control directories. Rather than each
+ * waiting thread polling the file system for the files written by the launch
+ * script, interested parties register a listener which is notified when files
+ * in the directory are created or modified.
+ * 
+ * Listeners are notified on the watcher thread, and must not block.
+ * 
+ * @author hhildebrand
+ * 
+ */
+public class ControlDirectoryWatcher implements Runnable {
+
+    /**
+     * The listener notified of changes in a watched directory
+     */
+    public interface Listener {
+        /**
+         * The file in the watched directory has been created or modified
+         * 
+         * @param file
+         *            - the changed file, or null if events have been lost and
+         *            the listener should assume anything has changed
+         */
+        void changed(File file);
+    }
+
+    /**
+     * The registration of a listener on a directory
+     */
+    public class Registration {
+        private final Listener       listener;
+        private final DirectoryWatch watch;
+
+        private Registration(DirectoryWatch watch, Listener listener) {
+            this.watch = watch;
+            this.listener = listener;
+        }
+
+        /**
+         * Cancel the registration of the listener
+         */
+        public void cancel() {
+            ControlDirectoryWatcher.this.cancel(this);
+        }
+    }
+
+    private class DirectoryWatch {
+        private final File               directory;
+        private final WatchKey           key;
+        private final List<Registration> registrations = new CopyOnWriteArrayList<>();
+
+        private DirectoryWatch(File directory, WatchKey key) {
+            this.directory = directory;
+            this.key = key;
+        }
+
+        private void dispatch(File file) {
+            for (Registration registration : registrations) {
+                try {
+                    registration.listener.changed(file);
+                } catch (Throwable e) {
+                    log.log(Level.WARNING, "Error notifying listener of "
+                                           + directory, e);
+                }
+            }
+        }
+    }
+
+    private static ControlDirectoryWatcher defaultWatcher;
+    private static final Logger            log = Logger.getLogger(ControlDirectoryWatcher.class.getCanonicalName());
+
+    /**
+     * @return the watcher shared by all processes
+     */
+    public static synchronized ControlDirectoryWatcher getDefault() {
+        if (defaultWatcher == null) {
+            try {
+                defaultWatcher = new ControlDirectoryWatcher(
+                                                             FileSystems.getDefault().newWatchService());
+            } catch (IOException e) {
+                throw new IllegalStateException(
+                                                "Unable to create control directory watch service",
+                                                e);
+            }
+            Thread watcherThread = new Thread(defaultWatcher,
+                                              "Control directory watcher");
+            watcherThread.setDaemon(true);
+            watcherThread.start();
+        }
+        return defaultWatcher;
+    }
+
+    private final Map<WatchKey, DirectoryWatch> keys    = new HashMap<>();
+    private final Map<Path, DirectoryWatch>     watches = new HashMap<>();
+    private final WatchService                  watchService;
+
+    public ControlDirectoryWatcher(WatchService watchService) {
+        this.watchService = watchService;
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            DirectoryWatch watch;
+            synchronized (this) {
+                watch = keys.get(key);
+            }
+            if (watch == null) {
+                key.pollEvents();
+                key.reset();
+                continue;
+            }
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == OVERFLOW) {
+                    watch.dispatch(null);
+                } else {
+                    watch.dispatch(new File(watch.directory,
+                                            event.context().toString()));
+                }
+            }
+            if (!key.reset()) {
+                // the directory has been removed
+                synchronized (this) {
+                    remove(watch);
+                }
+                watch.dispatch(null);
+            }
+        }
+    }
+
+    /**
+     * Watch the directory for the creation and modification of files
+     * 
+     * @param directory
+     *            - the directory to watch
+     * @param listener
+     *            - the listener to notify of changes
+     * @return the registration of the listener
+     * @throws IOException
+     *             - if the directory cannot be watched
+     */
+    public synchronized Registration watch(File directory, Listener listener)
+                                                                              throws IOException {
+        Path path = directory.getAbsoluteFile().toPath();
+        DirectoryWatch watch = watches.get(path);
+        if (watch == null || !watch.key.isValid()) {
+            if (watch != null) {
+                remove(watch);
+            }
+            WatchKey key = path.register(watchService, ENTRY_CREATE,
+                                         ENTRY_MODIFY);
+            watch = keys.get(key);
+            if (watch == null) {
+                watch = new DirectoryWatch(directory.getAbsoluteFile(), key);
+                keys.put(key, watch);
+            }
+            watches.put(path, watch);
+        }
+        Registration registration = new Registration(watch, listener);
+        watch.registrations.add(registration);
+        return registration;
+    }
+
+    private synchronized void cancel(Registration registration) {
+        DirectoryWatch watch = registration.watch;
+        watch.registrations.remove(registration);
+        if (watch.registrations.isEmpty()) {
+            remove(watch);
+            watch.key.cancel();
+        }
+    }
+
+    private void remove(DirectoryWatch watch) {
+        if (keys.get(watch.key) == watch) {
+            keys.remove(watch.key);
+        }
+        Path path = watch.directory.toPath();
+        if (watches.get(path) == watch) {
+            watches.remove(path);
+        }
+    }
+}
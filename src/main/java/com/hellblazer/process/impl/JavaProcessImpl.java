@@ -20,11 +20,14 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.ConnectException;
 import java.net.MalformedURLException;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 import javax.management.MBeanServerConnection;
 import javax.management.remote.JMXConnector;
@@ -36,9 +39,17 @@ import org.apache.commons.io.input.Tailer;
 import org.apache.commons.io.input.TailerListener;
 
 import com.hellblazer.process.CannotStopProcessException;
+import com.hellblazer.process.CaptureMode;
 import com.hellblazer.process.JavaProcess;
+import com.hellblazer.process.LineDecoder;
+import com.hellblazer.process.LogEventListener;
 import com.hellblazer.process.ManagedProcess;
+import com.hellblazer.process.MemoryEventListener;
+import com.hellblazer.process.MemoryEventSubscription;
 import com.hellblazer.process.NoLocalJmxConnectionException;
+import com.hellblazer.process.OutputStatistics;
+import com.hellblazer.process.RotationPolicy;
+import com.hellblazer.process.StopPolicy;
 import com.sun.tools.attach.AttachNotSupportedException;
 import com.sun.tools.attach.VirtualMachine;
 
@@ -47,14 +58,17 @@ import com.sun.tools.attach.VirtualMachine;
  * 
  */ 
 public class JavaProcessImpl implements JavaProcess, Cloneable {
-    private static final long        serialVersionUID = 1L;
-    protected List<String>           arguments;
-    protected File                   jarFile;
-    protected String                 javaClass;
-    protected File                   javaExecutable;
-    protected transient JMXConnector jmxc;
-    protected ManagedProcess         process;
-    protected List<String>           vmOptions;
+    public static final String                          JMX_ADDRESS_FILE_NAME      = "jmx.properties";
+    public static final String                          MANAGEMENT_AGENT_CONNECTOR = "com.sun.management.jmxremote.localConnectorAddress";
+    private static final long                           serialVersionUID           = 1L;
+    protected List<String>                              arguments;
+    protected File                                      jarFile;
+    protected String                                    javaClass;
+    protected File                                      javaExecutable;
+    protected boolean                                   jmxAddressPublished;
+    protected ManagedProcess                            process;
+    private transient List<MemoryEventSubscriptionImpl> subscriptions;
+    protected List<String>                              vmOptions;
 
     public JavaProcessImpl(ManagedProcess process) {
         assert process != null;
@@ -132,9 +146,15 @@ public class JavaProcessImpl implements JavaProcess, Cloneable {
         }
         clone.jarFile = jarFile;
         clone.javaClass = javaClass;
+        clone.subscriptions = null;
         return clone;
     }
 
+    @Override
+    public void closeStdIn() throws IOException {
+        process.closeStdIn();
+    }
+
     @Override
     public JavaProcess configureFrom(ManagedProcess p) {
         if (!(p instanceof JavaProcess)) {
@@ -147,13 +167,22 @@ public class JavaProcessImpl implements JavaProcess, Cloneable {
         vmOptions = javaProcess.getVmOptions();
         javaClass = javaProcess.getJavaClass();
         jarFile = javaProcess.getJarFile();
+        jmxAddressPublished = javaProcess.isJmxAddressPublished();
+        process.setCaptureMode(javaProcess.getCaptureMode());
         process.setDirectory(javaProcess.getDirectory());
         process.setEnvironment(javaProcess.getEnvironment());
+        process.setOutputMetered(javaProcess.isOutputMetered());
+        process.setRotationPolicy(new RotationPolicy(
+                                                     javaProcess.getRotationPolicy()));
+        process.setStopPolicy(new StopPolicy(javaProcess.getStopPolicy()));
+        process.setTailBufferLines(javaProcess.getTailBufferLines());
         return this;
     }
 
     @Override
     public void destroy() throws CannotStopProcessException, IOException {
+        cancelSubscriptions();
+        closeJmxConnectors();
         process.destroy();
     }
 
@@ -191,6 +220,11 @@ public class JavaProcessImpl implements JavaProcess, Cloneable {
      * @return the List which represents the command to execute this Java
      *         process
      */
+    @Override
+    public CaptureMode getCaptureMode() {
+        return process.getCaptureMode();
+    }
+
     @Override
     public List<String> getCommand() {
         ArrayList<String> command = new ArrayList<String>();
@@ -252,83 +286,40 @@ public class JavaProcessImpl implements JavaProcess, Cloneable {
     }
 
     /**
+     * Answer the local JMX connector of the process. The connector is cached
+     * by the shared {@link JmxConnectorCache} under the id of the process and
+     * the name of the connector, reconnected if it has failed or the process
+     * has been restarted, and closed when the process is stopped or has been
+     * idle. The connector is shared, and must not be closed by the caller.
+     * 
      * @throws ConnectException
      */
     @Override
-    public JMXConnector getLocalJmxConnector(String connectorName) throws ConnectException,
-                                              NoLocalJmxConnectionException {
-        if (jmxc != null) {
-            return jmxc;
-        }
-
+    public JMXConnector getLocalJmxConnector(final String connectorName)
+                                                                        throws ConnectException,
+                                                                        NoLocalJmxConnectionException {
         if (!process.isActive()) {
             throw new ConnectException(
                                        "Cannot establish local JMX connection as process is not active: "
                                                + this);
         }
-
-        String address;
-        try {
-            VirtualMachine vm = VirtualMachine.attach("" + process.getPid());
-            Properties props = vm.getSystemProperties();
-            address = props.getProperty(connectorName);
-
-            if (address == null) {
-                throw new ConnectException("Unable to find address for remote JMX connection with name = " + connectorName);
-            }
-        } catch (IOException e) {
-            ConnectException cex = new ConnectException(
-                                                        "Cannot obtain local JMX connector address of: "
-                                                                + this);
-            cex.initCause(e);
-            throw cex;
-        } catch (AttachNotSupportedException e) {
-            throw new RuntimeException(e);
-        }
-
-        JMXServiceURL jmxUrl;
-        try {
-            jmxUrl = new JMXServiceURL(address);
-        } catch (MalformedURLException e) {
-            ConnectException cex = new ConnectException(
-                                                        "Invalid local JMX URL for "
-                                                                + this + " : "
-                                                                + address);
-            cex.initCause(e);
-            throw cex;
-        }
-
-        try {
-            jmxc = JMXConnectorFactory.connect(jmxUrl);
-        } catch (java.rmi.ConnectException e) {
-            if (e.getMessage().startsWith("Connection refused")) {
-                throw new NoLocalJmxConnectionException(
-                                                        "Local JMX connector address does not exist for: "
-                                                                + this);
-            }
-            ConnectException cex = new ConnectException(
-                                                        "Underlying RMI communications exception");
-            cex.initCause(e);
-            throw cex;
-        } catch (IOException e) {
-            ConnectException cex = new ConnectException(
-                                                        "Cannot establish local JMX connection to: "
-                                                                + this);
-            cex.initCause(e);
-            throw cex;
-        }
-
-        try {
-            jmxc.connect();
-        } catch (IOException e) {
-            ConnectException cex = new ConnectException(
-                                                        "Cannot establish local JMX connection to: "
-                                                                + this);
-            cex.initCause(e);
-            throw cex;
+        Integer pid = process.getPid();
+        if (pid == null) {
+            throw new ConnectException(
+                                       "Cannot establish local JMX connection as process has no pid: "
+                                               + this);
         }
-
-        return jmxc;
+        return JmxConnectorCache.getDefault().get(getId(),
+                                                  connectorName,
+                                                  pid,
+                                                  new JmxConnectorCache.Connection() {
+                                                      @Override
+                                                      public JMXConnector connect()
+                                                                                   throws ConnectException,
+                                                                                   NoLocalJmxConnectionException {
+                                                          return connectLocalJmx(connectorName);
+                                                      }
+                                                  });
     }
 
     @Override
@@ -370,11 +361,21 @@ public class JavaProcessImpl implements JavaProcess, Cloneable {
         return process.getPid();
     }
 
+    @Override
+    public RotationPolicy getRotationPolicy() {
+        return process.getRotationPolicy();
+    }
+
     @Override
     public InputStream getStdErr() {
         return process.getStdErr();
     }
 
+    @Override
+    public OutputStatistics getStdErrStatistics() {
+        return process.getStdErrStatistics();
+    }
+
     @Override
     public String getStdErrTail(int numLines) throws IOException {
         return process.getStdErrTail(numLines);
@@ -390,11 +391,26 @@ public class JavaProcessImpl implements JavaProcess, Cloneable {
         return process.getStdOut();
     }
 
+    @Override
+    public OutputStatistics getStdOutStatistics() {
+        return process.getStdOutStatistics();
+    }
+
     @Override
     public String getStdOutTail(int numLines) throws IOException {
         return process.getStdOutTail(numLines);
     }
 
+    @Override
+    public StopPolicy getStopPolicy() {
+        return process.getStopPolicy();
+    }
+
+    @Override
+    public int getTailBufferLines() {
+        return process.getTailBufferLines();
+    }
+
     /**
      * @return the List of arguments to the Java virtual machine
      */
@@ -403,6 +419,14 @@ public class JavaProcessImpl implements JavaProcess, Cloneable {
         return new ArrayList<String>(vmOptions);
     }
 
+    /* (non-Javadoc)
+     * @see com.hellblazer.process.JavaProcess#heapHistogram()
+     */
+    @Override
+    public InputStream heapHistogram() throws IOException {
+        return jcmd(AttachDiagnostics.HEAP_HISTOGRAM);
+    }
+
     @Override
     public int hashCode() {
         final int prime = 31;
@@ -419,6 +443,60 @@ public class JavaProcessImpl implements JavaProcess, Cloneable {
         return process.isActive();
     }
 
+    /* (non-Javadoc)
+     * @see com.hellblazer.process.JavaProcess#isJmxAddressPublished()
+     */
+    @Override
+    public boolean isJmxAddressPublished() {
+        return jmxAddressPublished;
+    }
+
+    /* (non-Javadoc)
+     * @see com.hellblazer.process.JavaProcess#jcmd(java.lang.String)
+     */
+    @Override
+    public InputStream jcmd(String command) throws IOException {
+        if (!process.isActive()) {
+            throw new ConnectException(
+                                       "Cannot execute diagnostic command as process is not active: "
+                                               + this);
+        }
+        final Integer pid = process.getPid();
+        if (pid == null) {
+            throw new ConnectException(
+                                       "Cannot execute diagnostic command as process has no pid: "
+                                               + this);
+        }
+        InputStream output = AttachDiagnostics.execute(pid, command);
+        if (output != null) {
+            return output;
+        }
+        JMXConnector connector;
+        try {
+            connector = JmxConnectorCache.getDefault().get(getId(),
+                                                           MANAGEMENT_AGENT_CONNECTOR,
+                                                           pid,
+                                                           new JmxConnectorCache.Connection() {
+                                                               @Override
+                                                               public JMXConnector connect()
+                                                                                            throws ConnectException {
+                                                                   return connectManagementAgent(pid);
+                                                               }
+                                                           });
+        } catch (NoLocalJmxConnectionException e) {
+            throw new IOException(
+                                  "Cannot connect to the management agent of: "
+                                          + this, e);
+        }
+        return AttachDiagnostics.invoke(connector.getMBeanServerConnection(),
+                                        command);
+    }
+
+    @Override
+    public boolean isOutputMetered() {
+        return process.isOutputMetered();
+    }
+
     @Override
     public boolean isSameConfiguration(ManagedProcess otherProcess) {
         if (!(otherProcess instanceof JavaProcess)) {
@@ -454,6 +532,9 @@ public class JavaProcessImpl implements JavaProcess, Cloneable {
         } else if (!javaExecutable.equals(other.getJavaExecutable())) {
             return false;
         }
+        if (jmxAddressPublished != other.isJmxAddressPublished()) {
+            return false;
+        }
         if (vmOptions == null) {
             if (other.getVmOptions() != null) {
                 return false;
@@ -464,12 +545,19 @@ public class JavaProcessImpl implements JavaProcess, Cloneable {
         return true;
     }
 
+    @Override
+    public CompletableFuture<Integer> onExit() {
+        return process.onExit();
+    }
+
     /* (non-Javadoc)
      * @see com.hellblazer.process.ManagedProcess#restart()
      */
     @Override
     public void restart() throws IOException {
+        closeJmxConnectors();
         process.restart();
+        startSubscriptions();
     }
 
     /* (non-Javadoc)
@@ -477,7 +565,9 @@ public class JavaProcessImpl implements JavaProcess, Cloneable {
      */
     @Override
     public void restart(int waitForSeconds) throws IOException {
+        closeJmxConnectors();
         process.restart(waitForSeconds);
+        startSubscriptions();
     }
 
     @Override
@@ -500,6 +590,11 @@ public class JavaProcessImpl implements JavaProcess, Cloneable {
         setArguments(args);
     }
 
+    @Override
+    public void setCaptureMode(CaptureMode captureMode) {
+        process.setCaptureMode(captureMode);
+    }
+
     @Override
     public void setCommand(List<String> commands) {
         throw new UnsupportedOperationException(
@@ -527,6 +622,16 @@ public class JavaProcessImpl implements JavaProcess, Cloneable {
         process.setEnvironment(environment);
     }
 
+    @Override
+    public void setOutputMetered(boolean metered) {
+        process.setOutputMetered(metered);
+    }
+
+    @Override
+    public void setRotationPolicy(RotationPolicy rotationPolicy) {
+        process.setRotationPolicy(rotationPolicy);
+    }
+
     @Override
     public void setJarFile(File jarFile) {
         if (jarFile != null) {
@@ -566,6 +671,24 @@ public class JavaProcessImpl implements JavaProcess, Cloneable {
         setJavaExecutable(new File(javaExecutable));
     }
 
+    /* (non-Javadoc)
+     * @see com.hellblazer.process.JavaProcess#setJmxAddressPublished(boolean)
+     */
+    @Override
+    public void setJmxAddressPublished(boolean published) {
+        jmxAddressPublished = published;
+    }
+
+    @Override
+    public void setStopPolicy(StopPolicy stopPolicy) {
+        process.setStopPolicy(stopPolicy);
+    }
+
+    @Override
+    public void setTailBufferLines(int lines) {
+        process.setTailBufferLines(lines);
+    }
+
     @Override
     public void setVmOptions(List<String> vmOptions) {
         if (vmOptions == null) {
@@ -594,17 +717,23 @@ public class JavaProcessImpl implements JavaProcess, Cloneable {
      */
     @Override
     public synchronized void start() throws IOException {
-        if (javaExecutable == null) {
-            throw new IllegalStateException("Java executable must not be null");
-        }
-        if (vmOptions == null) {
-            vmOptions = new ArrayList<String>();
-        }
-        if (arguments == null) {
-            arguments = new ArrayList<String>();
-        }
-        process.setCommand(getCommand());
+        prepareCommand();
         process.start();
+        startSubscriptions();
+    }
+
+    /**
+     * Start the Java process asynchronously
+     */
+    @Override
+    public synchronized CompletableFuture<Void> startAsync() {
+        prepareCommand();
+        return process.startAsync().thenRun(new Runnable() {
+            @Override
+            public void run() {
+                startSubscriptions();
+            }
+        });
     }
 
     /**
@@ -614,15 +743,55 @@ public class JavaProcessImpl implements JavaProcess, Cloneable {
      */
     @Override
     public synchronized void stop() throws CannotStopProcessException {
+        closeJmxConnectors();
         process.stop();
     }
 
     @Override
     public synchronized void stop(int waitForSeconds)
                                                      throws CannotStopProcessException {
+        closeJmxConnectors();
         process.stop(waitForSeconds);
     }
 
+    @Override
+    public CompletableFuture<Void> stopAsync(int waitForSeconds) {
+        closeJmxConnectors();
+        return process.stopAsync(waitForSeconds);
+    }
+
+    /* (non-Javadoc)
+     * @see com.hellblazer.process.JavaProcess#subscribeMemoryEvents(java.lang.String, com.hellblazer.process.MemoryEventListener)
+     */
+    @Override
+    public synchronized MemoryEventSubscription subscribeMemoryEvents(String connectionName,
+                                                                      MemoryEventListener listener) {
+        if (subscriptions == null) {
+            subscriptions = new ArrayList<MemoryEventSubscriptionImpl>();
+        }
+        Iterator<MemoryEventSubscriptionImpl> iterator = subscriptions.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().isCancelled()) {
+                iterator.remove();
+            }
+        }
+        MemoryEventSubscriptionImpl subscription = new MemoryEventSubscriptionImpl(
+                                                                                   this,
+                                                                                   connectionName,
+                                                                                   listener);
+        subscriptions.add(subscription);
+        subscription.start();
+        return subscription;
+    }
+
+    /* (non-Javadoc)
+     * @see com.hellblazer.process.ManagedProcess#tailStdErr(com.hellblazer.process.LineDecoder, com.hellblazer.process.LogEventListener)
+     */
+    @Override
+    public Tailer tailStdErr(LineDecoder decoder, LogEventListener listener) {
+        return process.tailStdErr(decoder, listener);
+    }
+
     /* (non-Javadoc)
      * @see com.hellblazer.process.ManagedProcess#tailStdErr(org.apache.commons.io.input.TailerListener)
      */
@@ -640,6 +809,14 @@ public class JavaProcessImpl implements JavaProcess, Cloneable {
         return process.tailStdErr(listener, delayMillis, end, reOpen, bufSize);
     }
 
+    /* (non-Javadoc)
+     * @see com.hellblazer.process.ManagedProcess#tailStdOut(com.hellblazer.process.LineDecoder, com.hellblazer.process.LogEventListener)
+     */
+    @Override
+    public Tailer tailStdOut(LineDecoder decoder, LogEventListener listener) {
+        return process.tailStdOut(decoder, listener);
+    }
+
     /* (non-Javadoc)
      * @see com.hellblazer.process.ManagedProcess#tailStdOut(org.apache.commons.io.input.TailerListener)
      */
@@ -654,7 +831,15 @@ public class JavaProcessImpl implements JavaProcess, Cloneable {
     @Override
     public Tailer tailStdOut(TailerListener listener, long delayMillis,
                              boolean end, boolean reOpen, int bufSize) {
-        return tailStdOut(listener, delayMillis, end, reOpen, bufSize);
+        return process.tailStdOut(listener, delayMillis, end, reOpen, bufSize);
+    }
+
+    /* (non-Javadoc)
+     * @see com.hellblazer.process.JavaProcess#threadDump()
+     */
+    @Override
+    public InputStream threadDump() throws IOException {
+        return jcmd(AttachDiagnostics.THREAD_DUMP);
     }
 
     @Override
@@ -674,6 +859,30 @@ public class JavaProcessImpl implements JavaProcess, Cloneable {
         return process.waitFor();
     }
 
+    @Override
+    public void writeStdErrTail(int numLines, Appendable out)
+                                                             throws IOException {
+        process.writeStdErrTail(numLines, out);
+    }
+
+    @Override
+    public void writeStdErrTail(int numLines, WritableByteChannel out)
+                                                                      throws IOException {
+        process.writeStdErrTail(numLines, out);
+    }
+
+    @Override
+    public void writeStdOutTail(int numLines, Appendable out)
+                                                             throws IOException {
+        process.writeStdOutTail(numLines, out);
+    }
+
+    @Override
+    public void writeStdOutTail(int numLines, WritableByteChannel out)
+                                                                      throws IOException {
+        process.writeStdOutTail(numLines, out);
+    }
+
     /**
      * @return the List which represents the arguments to the VM invocation to
      *         run the Java program
@@ -689,4 +898,191 @@ public class JavaProcessImpl implements JavaProcess, Cloneable {
         }
         return execution;
     }
+
+    /**
+     * Establish the command of the underlying process from the receiver's
+     * configuration
+     */
+    protected void prepareCommand() {
+        if (javaExecutable == null) {
+            throw new IllegalStateException("Java executable must not be null");
+        }
+        if (vmOptions == null) {
+            vmOptions = new ArrayList<String>();
+        }
+        if (arguments == null) {
+            arguments = new ArrayList<String>();
+        }
+        List<String> command = getCommand();
+        if (jmxAddressPublished) {
+            try {
+                command.add(1, JmxAddressAgent.vmOption(getJmxAddressFile()));
+            } catch (IOException e) {
+                throw new IllegalStateException(
+                                                "Cannot write the JMX address agent",
+                                                e);
+            }
+        }
+        process.setCommand(command);
+    }
+
+    private synchronized void cancelSubscriptions() {
+        if (subscriptions == null) {
+            return;
+        }
+        for (MemoryEventSubscriptionImpl subscription : subscriptions) {
+            subscription.cancel();
+        }
+        subscriptions.clear();
+    }
+
+    private void closeJmxConnectors() {
+        JmxConnectorCache.getDefault().close(getId());
+    }
+
+    private JMXConnector connectLocalJmx(String connectorName)
+                                                               throws ConnectException,
+                                                               NoLocalJmxConnectionException {
+        String address;
+        if (jmxAddressPublished) {
+            address = getPublishedJmxAddress(connectorName);
+        } else {
+            address = getAttachedJmxAddress(connectorName);
+        }
+
+        JMXServiceURL jmxUrl;
+        try {
+            jmxUrl = new JMXServiceURL(address);
+        } catch (MalformedURLException e) {
+            ConnectException cex = new ConnectException(
+                                                        "Invalid local JMX URL for "
+                                                                + this + " : "
+                                                                + address);
+            cex.initCause(e);
+            throw cex;
+        }
+
+        JMXConnector jmxc;
+        try {
+            jmxc = JMXConnectorFactory.connect(jmxUrl);
+        } catch (java.rmi.ConnectException e) {
+            if (e.getMessage().startsWith("Connection refused")) {
+                throw new NoLocalJmxConnectionException(
+                                                        "Local JMX connector address does not exist for: "
+                                                                + this);
+            }
+            ConnectException cex = new ConnectException(
+                                                        "Underlying RMI communications exception");
+            cex.initCause(e);
+            throw cex;
+        } catch (IOException e) {
+            ConnectException cex = new ConnectException(
+                                                        "Cannot establish local JMX connection to: "
+                                                                + this);
+            cex.initCause(e);
+            throw cex;
+        }
+
+        try {
+            jmxc.connect();
+        } catch (IOException e) {
+            ConnectException cex = new ConnectException(
+                                                        "Cannot establish local JMX connection to: "
+                                                                + this);
+            cex.initCause(e);
+            throw cex;
+        }
+
+        return jmxc;
+    }
+
+    private JMXConnector connectManagementAgent(int pid)
+                                                       throws ConnectException {
+        try {
+            return AttachDiagnostics.connectManagementAgent(pid);
+        } catch (IOException e) {
+            ConnectException cex = new ConnectException(
+                                                        "Cannot connect to the management agent of: "
+                                                                + this);
+            cex.initCause(e);
+            throw cex;
+        }
+    }
+
+    /**
+     * Resolve the address of the connector by attaching to the process
+     */
+    private String getAttachedJmxAddress(String connectorName)
+                                                              throws ConnectException {
+        String address;
+        try {
+            VirtualMachine vm = VirtualMachine.attach("" + process.getPid());
+            try {
+                Properties props = vm.getSystemProperties();
+                address = props.getProperty(connectorName);
+            } finally {
+                vm.detach();
+            }
+
+            if (address == null) {
+                throw new ConnectException("Unable to find address for remote JMX connection with name = " + connectorName);
+            }
+        } catch (IOException e) {
+            ConnectException cex = new ConnectException(
+                                                        "Cannot obtain local JMX connector address of: "
+                                                                + this);
+            cex.initCause(e);
+            throw cex;
+        } catch (AttachNotSupportedException e) {
+            throw new RuntimeException(e);
+        }
+        return address;
+    }
+
+    private File getJmxAddressFile() {
+        return new File(new File(getDirectory().getAbsoluteFile(),
+                                 AbstractManagedProcess.CONTROL_DIR_PREFIX
+                                         + getId()), JMX_ADDRESS_FILE_NAME);
+    }
+
+    /**
+     * Resolve the address of the connector from the addresses published by
+     * the process
+     */
+    private String getPublishedJmxAddress(String connectorName)
+                                                               throws ConnectException {
+        Properties addresses;
+        try {
+            addresses = JmxAddressAgent.read(getJmxAddressFile());
+        } catch (IOException e) {
+            ConnectException cex = new ConnectException(
+                                                        "Cannot read the published JMX connector addresses of: "
+                                                                + this);
+            cex.initCause(e);
+            throw cex;
+        }
+        String address = addresses == null ? null
+                                           : addresses.getProperty(connectorName);
+        if (address == null) {
+            throw new ConnectException(
+                                       "JMX connection with name = "
+                                               + connectorName
+                                               + " has not been published by: "
+                                               + this);
+        }
+        return address;
+    }
+
+    /**
+     * Resume the subscriptions, which stop checking the process once it is no
+     * longer running
+     */
+    private synchronized void startSubscriptions() {
+        if (subscriptions == null) {
+            return;
+        }
+        for (MemoryEventSubscriptionImpl subscription : subscriptions) {
+            subscription.start();
+        }
+    }
 }
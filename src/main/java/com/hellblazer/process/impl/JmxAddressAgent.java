@@ -0,0 +1,214 @@
+/** (C) Copyright 2011-2014 Chiral Behaviors, All Rights Reserved
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package com.hellblazer.process.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+/**
+ * The agent publishing the addresses of the JMX connectors of a Java process
+ * into its control directory, so that they are resolved by reading a file
+ * rather than by attaching to the process.
+ * 
+ * The agent is loaded into the process with the VM option of
+ * {@link #vmOption(File)}, naming the file the addresses are published to.
+ * As the process starts, the agent replaces the system properties of the
+ * process with properties which publish every property holding a JMX service
+ * URL, whether defined on the command line or set by the process once it has
+ * bound its connector. The file is replaced atomically, and is a properties
+ * file mapping the names of the properties to the addresses.
+ * 
+ * The agent runs in the managed process, so depends on nothing beyond the
+ * JDK. Its jar is written once per VM, into a directory of its own created
+ * under the temporary directory, which only the owner of the VM can access
+ * where the file system supports it, so that no other user can substitute the
+ * jar loaded into the managed processes. The directory is removed when the VM
+ * exits.
+ * 
+ * @author hhildebrand
+ * 
+ */
+public final class JmxAddressAgent {
+
+    /**
+     * The system properties of the process, publishing the JMX connector
+     * addresses set
+     */
+    private static class PublishingProperties extends Properties {
+        private static final long serialVersionUID = 1L;
+
+        private final File        file;
+
+        private PublishingProperties(File file, Properties properties) {
+            this.file = file;
+            putAll(properties);
+        }
+
+        @Override
+        public synchronized Object put(Object key, Object value) {
+            Object previous = super.put(key, value);
+            if (isAddress(value) && !value.equals(previous)) {
+                publish(file, this);
+            }
+            return previous;
+        }
+    }
+
+    public static final String JMX_URL_PREFIX = "service:jmx:";
+
+    private static File        agentJar;
+
+    /**
+     * @return the jar of the agent, written to a new private directory if it
+     *         has not been written by the VM, or has since been removed
+     * @throws IOException
+     */
+    public static synchronized File getAgentJar() throws IOException {
+        if (agentJar != null && agentJar.isFile()) {
+            return agentJar;
+        }
+        Class<?>[] classes = { JmxAddressAgent.class,
+                PublishingProperties.class };
+        File directory = Files.createTempDirectory("process-jmx-agent").toFile();
+        directory.deleteOnExit();
+        File jar = new File(directory, "process-jmx-agent.jar");
+        jar.deleteOnExit();
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION,
+                                         "1.0");
+        manifest.getMainAttributes().putValue("Premain-Class",
+                                              JmxAddressAgent.class.getName());
+        try (JarOutputStream out = new JarOutputStream(
+                                                       new FileOutputStream(
+                                                                            jar),
+                                                       manifest)) {
+            for (Class<?> clazz : classes) {
+                out.putNextEntry(new JarEntry(resourceName(clazz)));
+                out.write(bytecode(clazz));
+                out.closeEntry();
+            }
+        }
+        agentJar = jar;
+        return jar;
+    }
+
+    /**
+     * Publish the JMX connector addresses of the process as it starts
+     * 
+     * @param file
+     *            - the file the addresses are published to
+     */
+    public static void premain(String file) {
+        PublishingProperties properties = new PublishingProperties(
+                                                                   new File(
+                                                                            file),
+                                                                   System.getProperties());
+        System.setProperties(properties);
+        publish(properties.file, properties);
+    }
+
+    /**
+     * @param file
+     *            - the file the addresses are published to
+     * @return the addresses published, or null if they have not been
+     * @throws IOException
+     */
+    public static Properties read(File file) throws IOException {
+        if (!file.exists()) {
+            return null;
+        }
+        Properties addresses = new Properties();
+        try (InputStream in = new FileInputStream(file)) {
+            addresses.load(in);
+        }
+        return addresses;
+    }
+
+    /**
+     * @param file
+     *            - the file the addresses are published to
+     * @return the VM option loading the agent
+     * @throws IOException
+     *             - if the jar of the agent cannot be written
+     */
+    public static String vmOption(File file) throws IOException {
+        return "-javaagent:" + getAgentJar().getAbsolutePath() + "="
+               + file.getAbsolutePath();
+    }
+
+    private static byte[] bytecode(Class<?> clazz) throws IOException {
+        try (InputStream in = clazz.getResourceAsStream("/"
+                                                        + resourceName(clazz))) {
+            if (in == null) {
+                throw new IOException("Cannot find the bytecode of " + clazz);
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            for (int read = in.read(buffer); read != -1; read = in.read(buffer)) {
+                bytes.write(buffer, 0, read);
+            }
+            return bytes.toByteArray();
+        }
+    }
+
+    private static boolean isAddress(Object value) {
+        return value instanceof String
+               && ((String) value).startsWith(JMX_URL_PREFIX);
+    }
+
+    /**
+     * Replace the file with the addresses held by the properties. Failures are
+     * ignored, as the agent must not disturb the process.
+     */
+    private static void publish(File file, Properties properties) {
+        Properties addresses = new Properties();
+        for (String name : properties.stringPropertyNames()) {
+            String value = properties.getProperty(name);
+            if (isAddress(value)) {
+                addresses.setProperty(name, value);
+            }
+        }
+        File tmp = new File(file.getPath() + ".tmp");
+        try {
+            try (OutputStream out = new FileOutputStream(tmp)) {
+                addresses.store(out, null);
+            }
+            Files.move(tmp.toPath(), file.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            tmp.delete();
+        }
+    }
+
+    private static String resourceName(Class<?> clazz) {
+        return clazz.getName().replace('.', '/') + ".class";
+    }
+
+    private JmxAddressAgent() {
+    }
+}
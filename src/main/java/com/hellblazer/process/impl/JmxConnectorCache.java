@@ -0,0 +1,389 @@
+/** (C) Copyright 2011-2014 Chiral Behaviors, All Rights Reserved
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package com.hellblazer.process.impl;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationListener;
+import javax.management.remote.JMXConnectionNotification;
+import javax.management.remote.JMXConnector;
+
+import com.hellblazer.process.NoLocalJmxConnectionException;
+
+/**
+ * A cache of the local JMX connectors of Java processes, keyed by the id of
+ * the process and the name of the connector, so that the attach and RMI
+ * handshake of a connection are paid once rather than on every request.
+ * 
+ * A cached connector is only handed out while it is live: it must not have
+ * reported itself failed or closed, it must be connected to the current pid
+ * of the process, so that a restarted process is reconnected to, and if it
+ * has not been verified within the verify interval, it must answer for its
+ * connection id. A connector which is not live is closed and replaced.
+ * Connectors which have not been handed out for the idle timeout are closed
+ * and evicted; the shared {@link ProcessScheduler} only triggers the sweep,
+ * which runs on the blocking executor, as closing a connector is remote I/O.
+ * 
+ * The attach and handshake of a connection are made outside the lock of the
+ * cache entry, which is only held to inspect and update the entry. Callers
+ * wanting the same connector while it is being connected wait for the
+ * connection, rather than connecting again.
+ * 
+ * The connectors are owned by the cache, and are shared by all callers, so
+ * must not be closed by them.
+ * 
+ * @author hhildebrand
+ * 
+ */
+public class JmxConnectorCache {
+
+    /**
+     * Establishes the connection to a connector of the process
+     */
+    public interface Connection {
+        /**
+         * @return the connected connector
+         * @throws ConnectException
+         * @throws NoLocalJmxConnectionException
+         */
+        JMXConnector connect() throws ConnectException,
+                              NoLocalJmxConnectionException;
+    }
+
+    private static class Entry implements NotificationListener {
+        private volatile boolean connecting;
+        private JMXConnector     connector;
+        private boolean          evicted;
+        private volatile boolean failed;
+        private volatile long    lastUsed;
+        private long             lastVerified;
+        private int              pid;
+
+        @Override
+        public void handleNotification(Notification notification,
+                                       Object handback) {
+            String type = notification.getType();
+            if (JMXConnectionNotification.FAILED.equals(type)
+                || JMXConnectionNotification.CLOSED.equals(type)) {
+                failed = true;
+            }
+        }
+
+        /**
+         * @return the connector of the entry, which is to be closed, or null
+         */
+        private JMXConnector detach() {
+            JMXConnector detached = connector;
+            if (detached == null) {
+                return null;
+            }
+            try {
+                detached.removeConnectionNotificationListener(this);
+            } catch (ListenerNotFoundException e) {
+                // ignored
+            }
+            connector = null;
+            return detached;
+        }
+
+        private boolean isLive(int currentPid, long now, long verifyMillis) {
+            if (connector == null || failed || pid != currentPid) {
+                return false;
+            }
+            if (now - lastVerified < verifyMillis) {
+                return true;
+            }
+            try {
+                connector.getConnectionId();
+            } catch (IOException e) {
+                return false;
+            }
+            lastVerified = now;
+            return true;
+        }
+
+        private void open(JMXConnector connector, int pid, long now) {
+            this.connector = connector;
+            this.pid = pid;
+            failed = false;
+            lastUsed = now;
+            lastVerified = now;
+            connector.addConnectionNotificationListener(this, null, null);
+        }
+    }
+
+    private static class Key {
+        private final String connectorName;
+        private final UUID   id;
+
+        private Key(UUID id, String connectorName) {
+            this.id = id;
+            this.connectorName = connectorName;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return id.equals(other.id)
+                   && connectorName.equals(other.connectorName);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * id.hashCode() + connectorName.hashCode();
+        }
+    }
+
+    public static final long         DEFAULT_IDLE_MILLIS   = 5 * 60 * 1000;
+    public static final long         DEFAULT_VERIFY_MILLIS = 1000;
+
+    private static JmxConnectorCache defaultCache;
+    private static final Logger      log                   = Logger.getLogger(JmxConnectorCache.class.getCanonicalName());
+
+    /**
+     * @return the cache shared by all processes
+     */
+    public static synchronized JmxConnectorCache getDefault() {
+        if (defaultCache == null) {
+            defaultCache = new JmxConnectorCache(ProcessScheduler.get(),
+                                                 DEFAULT_IDLE_MILLIS,
+                                                 DEFAULT_VERIFY_MILLIS);
+        }
+        return defaultCache;
+    }
+
+    private static void close(JMXConnector connector) {
+        if (connector == null) {
+            return;
+        }
+        try {
+            connector.close();
+        } catch (IOException e) {
+            if (log.isLoggable(Level.FINE)) {
+                log.fine("Error closing JMX connector: " + e);
+            }
+        }
+    }
+
+    private final Map<Key, Entry>          entries = new ConcurrentHashMap<>();
+    private ScheduledFuture<?>             eviction;
+    private final Executor                 executor;
+    private final long                     idleMillis;
+    private final ScheduledExecutorService scheduler;
+    private final long                     verifyMillis;
+
+    /**
+     * @param scheduler
+     *            - the scheduler triggering the eviction of idle connectors
+     * @param executor
+     *            - the executor evicting and closing idle connectors, which
+     *            may block
+     * @param idleMillis
+     *            - the time after which a connector which has not been handed
+     *            out is closed
+     * @param verifyMillis
+     *            - the time after which a connector is verified before it is
+     *            handed out again
+     */
+    public JmxConnectorCache(ScheduledExecutorService scheduler,
+                             Executor executor, long idleMillis,
+                             long verifyMillis) {
+        this.scheduler = scheduler;
+        this.executor = executor;
+        this.idleMillis = idleMillis;
+        this.verifyMillis = verifyMillis;
+    }
+
+    /**
+     * @param scheduler
+     *            - the scheduler triggering the eviction of idle connectors
+     * @param idleMillis
+     *            - the time after which a connector which has not been handed
+     *            out is closed
+     * @param verifyMillis
+     *            - the time after which a connector is verified before it is
+     *            handed out again
+     */
+    public JmxConnectorCache(ScheduledExecutorService scheduler,
+                             long idleMillis, long verifyMillis) {
+        this(scheduler, ProcessScheduler.getBlocking(), idleMillis,
+             verifyMillis);
+    }
+
+    /**
+     * Close and evict the connectors of the process
+     * 
+     * @param id
+     *            - the id of the process
+     */
+    public void close(UUID id) {
+        for (Map.Entry<Key, Entry> mapping : entries.entrySet()) {
+            if (mapping.getKey().id.equals(id)) {
+                evict(mapping.getKey(), mapping.getValue());
+            }
+        }
+    }
+
+    /**
+     * Answer the live connector of the process, connecting if there is none
+     * 
+     * @param id
+     *            - the id of the process
+     * @param connectorName
+     *            - the name of the connector
+     * @param pid
+     *            - the current pid of the process
+     * @param connection
+     *            - the connection to the connector, if there is no live one
+     * @return the connector
+     * @throws ConnectException
+     * @throws NoLocalJmxConnectionException
+     */
+    public JMXConnector get(UUID id, String connectorName, int pid,
+                            Connection connection) throws ConnectException,
+                                                  NoLocalJmxConnectionException {
+        Key key = new Key(id, connectorName);
+        while (true) {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                Entry created = new Entry();
+                entry = entries.putIfAbsent(key, created);
+                if (entry == null) {
+                    entry = created;
+                    scheduleEviction();
+                }
+            }
+            JMXConnector stale;
+            synchronized (entry) {
+                try {
+                    while (entry.connecting && !entry.evicted) {
+                        entry.wait();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new ConnectException(
+                                               "Interrupted waiting for the JMX connector: "
+                                                       + connectorName);
+                }
+                if (entry.evicted) {
+                    continue;
+                }
+                long now = System.currentTimeMillis();
+                if (entry.isLive(pid, now, verifyMillis)) {
+                    entry.lastUsed = now;
+                    return entry.connector;
+                }
+                stale = entry.detach();
+                entry.connecting = true;
+            }
+            close(stale);
+            JMXConnector connector = null;
+            boolean opened = false;
+            try {
+                connector = connection.connect();
+            } finally {
+                synchronized (entry) {
+                    entry.connecting = false;
+                    entry.notifyAll();
+                    if (connector != null && !entry.evicted) {
+                        entry.open(connector, pid, System.currentTimeMillis());
+                        opened = true;
+                    }
+                }
+            }
+            if (opened) {
+                return connector;
+            }
+            // evicted while connecting
+            close(connector);
+        }
+    }
+
+    /**
+     * @return the number of connectors cached
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    private void evict(Key key, Entry entry) {
+        JMXConnector evicted;
+        synchronized (entry) {
+            entries.remove(key, entry);
+            entry.evicted = true;
+            entry.notifyAll();
+            evicted = entry.detach();
+        }
+        close(evicted);
+    }
+
+    /**
+     * Close and evict the connectors which have been idle for the idle
+     * timeout. Entries being connected are in use, so are not evicted
+     */
+    private void evictIdle() {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<Key, Entry> mapping : entries.entrySet()) {
+            Entry entry = mapping.getValue();
+            JMXConnector evicted;
+            synchronized (entry) {
+                if (entry.connecting || now - entry.lastUsed < idleMillis) {
+                    continue;
+                }
+                entries.remove(mapping.getKey(), entry);
+                entry.evicted = true;
+                entry.notifyAll();
+                evicted = entry.detach();
+            }
+            close(evicted);
+        }
+    }
+
+    private synchronized void scheduleEviction() {
+        if (eviction != null) {
+            return;
+        }
+        long period = Math.max(1, idleMillis / 2);
+        eviction = scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        evictIdle();
+                    }
+                });
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,159 @@
+/** (C) Copyright 2011-2014 Chiral Behaviors, All Rights Reserved
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package com.hellblazer.process.impl;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Notifies the listeners of the tailed streams of all processes on a small,
+ * bounded pool of threads of their own, rather than on the threads reading
+ * the streams or on the shared {@link ProcessScheduler}, so that a slow
+ * listener cannot hold up reading the streams, or the lifecycle of the
+ * processes. The notifications of each tailer are queued in a
+ * {@link Sequence}, and run in order, never concurrently. A sequence yields
+ * its thread after a batch of notifications, so that a busy tailer does not
+ * starve the others.
+ * 
+ * @author hhildebrand
+ * 
+ */
+public class ListenerDispatcher {
+
+    /**
+     * The notifications of a single tailer, run in order
+     */
+    public class Sequence implements Runnable {
+        private final Runnable        drained;
+        private final Queue<Runnable> notifications = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger   queued        = new AtomicInteger();
+        private final AtomicBoolean   running       = new AtomicBoolean();
+
+        private Sequence(Runnable drained) {
+            this.drained = drained;
+        }
+
+        /**
+         * Discard the notifications queued
+         */
+        public void clear() {
+            while (notifications.poll() != null) {
+                queued.decrementAndGet();
+            }
+        }
+
+        /**
+         * Queue the notification, to be run after those queued before it
+         * 
+         * @param notification
+         */
+        public void dispatch(Runnable notification) {
+            notifications.add(notification);
+            queued.incrementAndGet();
+            schedule();
+        }
+
+        /**
+         * @return the number of notifications queued
+         */
+        public int queued() {
+            return queued.get();
+        }
+
+        /**
+         * Run a batch of the notifications queued
+         */
+        @Override
+        public void run() {
+            int count = 0;
+            Runnable notification;
+            while (count++ < BATCH_SIZE
+                   && (notification = notifications.poll()) != null) {
+                queued.decrementAndGet();
+                try {
+                    notification.run();
+                } catch (RuntimeException e) {
+                    log.log(Level.WARNING, "Error notifying listener", e);
+                }
+            }
+            running.set(false);
+            if (!notifications.isEmpty()) {
+                schedule();
+            } else if (drained != null) {
+                drained.run();
+            }
+        }
+
+        private void schedule() {
+            if (running.compareAndSet(false, true)) {
+                executor.execute(this);
+            }
+        }
+    }
+
+    public static final int           BATCH_SIZE = 100;
+
+    private static ListenerDispatcher defaultDispatcher;
+    private static final Logger       log        = Logger.getLogger(ListenerDispatcher.class.getCanonicalName());
+
+    /**
+     * @return the dispatcher shared by all processes
+     */
+    public static synchronized ListenerDispatcher getDefault() {
+        if (defaultDispatcher == null) {
+            int threads = Math.max(2,
+                                   Runtime.getRuntime().availableProcessors() / 2);
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                                                                 threads,
+                                                                 threads,
+                                                                 60,
+                                                                 TimeUnit.SECONDS,
+                                                                 new LinkedBlockingQueue<Runnable>(),
+                                                                 new DaemonThreadFactory(
+                                                                                         "Tail listeners"));
+            executor.allowCoreThreadTimeOut(true);
+            defaultDispatcher = new ListenerDispatcher(executor);
+        }
+        return defaultDispatcher;
+    }
+
+    private final Executor executor;
+
+    /**
+     * @param executor
+     *            - the executor running the notifications
+     */
+    public ListenerDispatcher(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * @param drained
+     *            - the action run whenever the notifications queued have all
+     *            been run, or null
+     * @return a new sequence of notifications
+     */
+    public Sequence sequence(Runnable drained) {
+        return new Sequence(drained);
+    }
+}
@@ -0,0 +1,63 @@
+/** (C) Copyright 2011-2014 Chiral Behaviors, All Rights Reserved
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package com.hellblazer.process.impl;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.input.TailerListenerAdapter;
+
+import com.hellblazer.process.LineDecoder;
+import com.hellblazer.process.LogEvent;
+import com.hellblazer.process.LogEventListener;
+
+/**
+ * A tailer listener decoding each line of the tailed output as it arrives,
+ * and publishing the events decoded to a {@link LogEventListener}
+ * 
+ * @author hhildebrand
+ * 
+ */
+public class LogEventTailerListener extends TailerListenerAdapter {
+    private static final Logger    log = Logger.getLogger(LogEventTailerListener.class.getCanonicalName());
+
+    private final LineDecoder      decoder;
+    private final LogEventListener listener;
+
+    public LogEventTailerListener(LineDecoder decoder,
+                                  LogEventListener listener) {
+        this.decoder = decoder;
+        this.listener = listener;
+    }
+
+    @Override
+    public void handle(Exception e) {
+        listener.handle(e);
+    }
+
+    @Override
+    public void handle(String line) {
+        LogEvent event;
+        try {
+            event = decoder.decode(line);
+        } catch (RuntimeException e) {
+            log.log(Level.WARNING, "Unable to decode line: " + line, e);
+            event = new LogEvent(line);
+        }
+        if (event != null) {
+            listener.handle(event);
+        }
+    }
+}
@@ -0,0 +1,369 @@
+/** (C) Copyright 2011-2014 Chiral Behaviors, All Rights Reserved
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package com.hellblazer.process.impl;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.InstanceNotFoundException;
+import javax.management.MBeanServerConnection;
+import javax.management.ObjectName;
+
+import com.hellblazer.process.JavaProcess;
+import com.hellblazer.process.MBeanSample;
+import com.hellblazer.process.MBeanSampler;
+
+/**
+ * @author hhildebrand
+ * 
+ */
+public class MBeanSamplerImpl implements MBeanSampler {
+
+    /**
+     * A process sampled, with the registered names resolved against its
+     * current connection
+     */
+    private class Target {
+        private final AtomicBoolean       inFlight           = new AtomicBoolean();
+        private final JavaProcess         process;
+        private Map<ObjectName, String[]> resolved;
+        private MBeanServerConnection     resolvedConnection;
+        private long                      resolvedGeneration = -1;
+        private volatile MBeanSample      sample;
+
+        private Target(JavaProcess process) {
+            this.process = process;
+        }
+
+        /**
+         * Collect a sample of the process, reading the attributes of each
+         * MBean with a single request
+         */
+        private synchronized void collect() throws Exception {
+            long start = System.currentTimeMillis();
+            MBeanServerConnection connection = process.getLocalMBeanServerConnection(connectionName);
+            Map<ObjectName, Map<String, Object>> values = new LinkedHashMap<ObjectName, Map<String, Object>>();
+            for (Map.Entry<ObjectName, String[]> entry : resolve(connection).entrySet()) {
+                AttributeList attributes;
+                try {
+                    attributes = connection.getAttributes(entry.getKey(),
+                                                          entry.getValue());
+                } catch (InstanceNotFoundException e) {
+                    resolved = null;
+                    continue;
+                }
+                Map<String, Object> read = new LinkedHashMap<String, Object>();
+                for (Attribute attribute : attributes.asList()) {
+                    read.put(attribute.getName(), attribute.getValue());
+                }
+                values.put(entry.getKey(), read);
+            }
+            sample = new MBeanSample(process.getId(), start,
+                                     System.currentTimeMillis() - start,
+                                     values);
+        }
+
+        /**
+         * Resolve the registered names against the connection, reusing the
+         * previous resolution while the connection and the registrations are
+         * unchanged
+         */
+        private Map<ObjectName, String[]> resolve(MBeanServerConnection connection)
+                                                                                 throws Exception {
+            long current = generation;
+            if (resolved != null && connection == resolvedConnection
+                && current == resolvedGeneration) {
+                return resolved;
+            }
+            boolean complete = true;
+            Map<ObjectName, String[]> names = new LinkedHashMap<ObjectName, String[]>();
+            for (Map.Entry<ObjectName, String[]> entry : registrations.entrySet()) {
+                if (entry.getKey().isPattern()) {
+                    List<ObjectName> matched = new ArrayList<ObjectName>(
+                                                                         connection.queryNames(entry.getKey(),
+                                                                                               null));
+                    complete &= !matched.isEmpty();
+                    for (ObjectName name : matched) {
+                        names.put(name, entry.getValue());
+                    }
+                } else {
+                    names.put(entry.getKey(), entry.getValue());
+                }
+            }
+            resolved = complete ? names : null;
+            resolvedConnection = connection;
+            resolvedGeneration = current;
+            return names;
+        }
+    }
+
+    public static final int                           DEFAULT_PARALLELISM = 8;
+    private static final Logger                       log                 = Logger.getLogger(MBeanSamplerImpl.class.getCanonicalName());
+
+    private final String                              connectionName;
+    private final ThreadPoolExecutor                  executor;
+    private volatile long                             generation;
+    private final int                                 parallelism;
+    private final ConcurrentMap<ObjectName, String[]> registrations       = new ConcurrentHashMap<ObjectName, String[]>();
+    private final ScheduledExecutorService            scheduler;
+    private ScheduledFuture<?>                        sampling;
+    private final List<Target>                        targets             = new CopyOnWriteArrayList<Target>();
+
+    /**
+     * @param connectionName
+     *            - the name of the local JMX connection the processes are
+     *            sampled through
+     */
+    public MBeanSamplerImpl(String connectionName) {
+        this(connectionName, DEFAULT_PARALLELISM);
+    }
+
+    /**
+     * @param connectionName
+     *            - the name of the local JMX connection the processes are
+     *            sampled through
+     * @param parallelism
+     *            - the maximum number of processes sampled concurrently
+     */
+    public MBeanSamplerImpl(String connectionName, int parallelism) {
+        this(connectionName, parallelism, ProcessScheduler.get());
+    }
+
+    /**
+     * @param connectionName
+     *            - the name of the local JMX connection the processes are
+     *            sampled through
+     * @param parallelism
+     *            - the maximum number of processes sampled concurrently
+     * @param scheduler
+     *            - the scheduler driving the periodic sampling
+     */
+    public MBeanSamplerImpl(String connectionName, int parallelism,
+                            ScheduledExecutorService scheduler) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException(
+                                               "Parallelism must be greater than 0: "
+                                                       + parallelism);
+        }
+        this.connectionName = connectionName;
+        this.parallelism = parallelism;
+        this.scheduler = scheduler;
+        executor = new ThreadPoolExecutor(
+                                          parallelism,
+                                          parallelism,
+                                          60,
+                                          TimeUnit.SECONDS,
+                                          new LinkedBlockingQueue<Runnable>(),
+                                          new DaemonThreadFactory(
+                                                                  "MBean sampler"));
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    @Override
+    public void add(JavaProcess process) {
+        if (process == null) {
+            throw new IllegalArgumentException("Process must not be null");
+        }
+        targets.add(new Target(process));
+    }
+
+    @Override
+    public String getConnectionName() {
+        return connectionName;
+    }
+
+    @Override
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    @Override
+    public List<JavaProcess> getProcesses() {
+        List<JavaProcess> processes = new ArrayList<JavaProcess>();
+        for (Target target : targets) {
+            processes.add(target.process);
+        }
+        return processes;
+    }
+
+    @Override
+    public MBeanSample getSample(JavaProcess process) {
+        Target target = targetOf(process);
+        return target == null ? null : target.sample;
+    }
+
+    @Override
+    public Map<JavaProcess, MBeanSample> getSamples() {
+        Map<JavaProcess, MBeanSample> samples = new LinkedHashMap<JavaProcess, MBeanSample>();
+        for (Target target : targets) {
+            MBeanSample sample = target.sample;
+            if (sample != null) {
+                samples.put(target.process, sample);
+            }
+        }
+        return samples;
+    }
+
+    @Override
+    public synchronized boolean isStarted() {
+        return sampling != null;
+    }
+
+    @Override
+    public synchronized void register(ObjectName name, String... attributes) {
+        if (name == null) {
+            throw new IllegalArgumentException("Name must not be null");
+        }
+        registrations.put(name, attributes.clone());
+        generation++;
+    }
+
+    @Override
+    public boolean remove(JavaProcess process) {
+        Target target = targetOf(process);
+        return target != null && targets.remove(target);
+    }
+
+    @Override
+    public Map<JavaProcess, Throwable> sample() {
+        List<Target> active = new ArrayList<Target>();
+        for (Target target : targets) {
+            if (target.process.isActive()) {
+                active.add(target);
+            }
+        }
+        Map<JavaProcess, Throwable> failures = new LinkedHashMap<JavaProcess, Throwable>();
+        List<Future<Void>> results = new ArrayList<Future<Void>>();
+        for (final Target target : active) {
+            results.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    target.collect();
+                    return null;
+                }
+            }));
+        }
+        for (int i = 0; i < active.size(); i++) {
+            JavaProcess process = active.get(i).process;
+            try {
+                results.get(i).get();
+            } catch (ExecutionException e) {
+                if (log.isLoggable(Level.FINE)) {
+                    log.log(Level.FINE, "Unable to sample " + process,
+                            e.getCause());
+                }
+                failures.put(process, e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                for (int j = i; j < active.size(); j++) {
+                    results.get(j).cancel(true);
+                    failures.put(active.get(j).process, e);
+                }
+                break;
+            }
+        }
+        return failures;
+    }
+
+    @Override
+    public synchronized void start(long period, TimeUnit unit) {
+        if (sampling != null) {
+            sampling.cancel(false);
+        }
+        sampling = scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                sampleActive();
+            }
+        }, 0, period, unit);
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (sampling != null) {
+            sampling.cancel(false);
+            sampling = null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "MBeanSampler [connectionName=" + connectionName
+               + ", processes=" + targets.size() + ", parallelism="
+               + parallelism + "]";
+    }
+
+    @Override
+    public synchronized boolean unregister(ObjectName name) {
+        boolean registered = registrations.remove(name) != null;
+        generation++;
+        return registered;
+    }
+
+    /**
+     * Hand the active processes whose previous sample has been collected to
+     * the pool, without waiting for their samples
+     */
+    private void sampleActive() {
+        for (final Target target : targets) {
+            if (!target.process.isActive()
+                || !target.inFlight.compareAndSet(false, true)) {
+                continue;
+            }
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        target.collect();
+                    } catch (Exception e) {
+                        if (log.isLoggable(Level.FINE)) {
+                            log.log(Level.FINE, "Unable to sample "
+                                                + target.process, e);
+                        }
+                    } finally {
+                        target.inFlight.set(false);
+                    }
+                }
+            });
+        }
+    }
+
+    private Target targetOf(JavaProcess process) {
+        for (Target target : targets) {
+            if (target.process == process) {
+                return target;
+            }
+        }
+        return null;
+    }
+}
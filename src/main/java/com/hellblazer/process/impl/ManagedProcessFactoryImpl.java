@@ -15,20 +15,55 @@
 package com.hellblazer.process.impl;
 
 import java.io.File;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.UUID;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
 
 import com.hellblazer.process.JavaProcess;
+import com.hellblazer.process.MBeanSampler;
 import com.hellblazer.process.ManagedProcess;
 import com.hellblazer.process.ManagedProcessFactory;
+import com.hellblazer.process.ProcessGroup;
 
 /**
+ * The factory of managed processes. If the factory is given an MBean server,
+ * each process created is published as a
+ * {@link com.hellblazer.process.ManagedProcessMXBean}, registered under the
+ * name {@link #getObjectName(UUID)} with the server, and unregistered once the
+ * process has been destroyed or collected, or the factory is shut down.
+ * 
  * @author Hal Hildebrand
  * 
  */
 public class ManagedProcessFactoryImpl implements ManagedProcessFactory {
+    public static final String      MBEAN_DOMAIN       = "com.hellblazer.process";
     protected static String         operatingSystem    = System.getProperty("os.name").toLowerCase();
     protected static final String[] supportedPlatforms = { "mac", "linux",
             "unix", "solaris"                         };
+    private static final Logger     log                = Logger.getLogger(ManagedProcessFactoryImpl.class.getCanonicalName());
+
+    /**
+     * @param id
+     * @return the name the bean of the process is registered under
+     */
+    public static ObjectName getObjectName(UUID id) {
+        try {
+            return new ObjectName(MBEAN_DOMAIN + ":type=ManagedProcess,id="
+                                  + id);
+        } catch (MalformedObjectNameException e) {
+            throw new IllegalArgumentException("Invalid process id: " + id, e);
+        }
+    }
 
     public static boolean isPlatformSupported() {
         for (String platform : supportedPlatforms) {
@@ -39,6 +74,26 @@ public class ManagedProcessFactoryImpl implements ManagedProcessFactory {
         return false;
     }
 
+    private final ReferenceQueue<ManagedProcess>                            collected  = new ReferenceQueue<>();
+    private final MBeanServer                                               mbeanServer;
+    private final Map<ObjectName, ManagedProcessMXBeanImpl.ProcessReference> registered = new HashMap<>();
+
+    /**
+     * The processes created are not registered with an MBean server
+     */
+    public ManagedProcessFactoryImpl() {
+        this(null);
+    }
+
+    /**
+     * @param mbeanServer
+     *            - the server the processes created are registered with, or
+     *            null if they are not to be registered
+     */
+    public ManagedProcessFactoryImpl(MBeanServer mbeanServer) {
+        this.mbeanServer = mbeanServer;
+    }
+
     @Override
     public ManagedProcess acquireFrom(File homeDirectory) {
         UUID id = AbstractManagedProcess.getIdFrom(homeDirectory);
@@ -49,12 +104,29 @@ public class ManagedProcessFactoryImpl implements ManagedProcessFactory {
         }
         AbstractManagedProcess process = create(id);
         process.acquireFromHome(homeDirectory);
+        register(process);
         return process;
     }
 
     @Override
     public ManagedProcess create() {
-        return create(UUID.randomUUID());
+        return register(create(UUID.randomUUID()));
+    }
+
+    /* (non-Javadoc)
+     * @see com.hellblazer.process.ManagedProcessFactory#createGroup()
+     */
+    @Override
+    public ProcessGroup createGroup() {
+        return new ProcessGroupImpl();
+    }
+
+    /* (non-Javadoc)
+     * @see com.hellblazer.process.ManagedProcessFactory#createGroup(int)
+     */
+    @Override
+    public ProcessGroup createGroup(int parallelism) {
+        return new ProcessGroupImpl(parallelism);
     }
 
     /* (non-Javadoc)
@@ -65,6 +137,40 @@ public class ManagedProcessFactoryImpl implements ManagedProcessFactory {
         return new JavaProcessImpl(create());
     }
 
+    /* (non-Javadoc)
+     * @see com.hellblazer.process.ManagedProcessFactory#createSampler(java.lang.String)
+     */
+    @Override
+    public MBeanSampler createSampler(String connectionName) {
+        return new MBeanSamplerImpl(connectionName);
+    }
+
+    /* (non-Javadoc)
+     * @see com.hellblazer.process.ManagedProcessFactory#createSampler(java.lang.String, int)
+     */
+    @Override
+    public MBeanSampler createSampler(String connectionName, int parallelism) {
+        return new MBeanSamplerImpl(connectionName, parallelism);
+    }
+
+    /**
+     * @return the server the processes created are registered with, or null
+     */
+    public MBeanServer getMBeanServer() {
+        return mbeanServer;
+    }
+
+    /**
+     * Unregister the beans of all the processes created which remain
+     * registered. The processes created afterwards continue to be registered
+     */
+    public synchronized void shutdown() {
+        for (ObjectName name : new ArrayList<ObjectName>(registered.keySet())) {
+            unregister(name);
+        }
+        registered.clear();
+    }
+
     protected AbstractManagedProcess create(UUID id) {
         if (operatingSystem.contains("mac")) {
             return new UnixProcess(id);
@@ -80,4 +186,57 @@ public class ManagedProcessFactoryImpl implements ManagedProcessFactory {
         }
     }
 
+    /**
+     * Register the bean of the process, replacing the bean of any process
+     * previously created with the same id, and unregister the beans of the
+     * processes which have been collected
+     */
+    private synchronized AbstractManagedProcess register(AbstractManagedProcess process) {
+        if (mbeanServer == null) {
+            return process;
+        }
+        Reference<? extends ManagedProcess> collectedReference;
+        while ((collectedReference = collected.poll()) != null) {
+            unregister((ManagedProcessMXBeanImpl.ProcessReference) collectedReference);
+        }
+        ObjectName name = getObjectName(process.getId());
+        unregister(name);
+        ManagedProcessMXBeanImpl bean = new ManagedProcessMXBeanImpl(process,
+                                                                     name,
+                                                                     collected);
+        final ManagedProcessMXBeanImpl.ProcessReference reference = bean.getProcessReference();
+        try {
+            mbeanServer.registerMBean(bean, name);
+            registered.put(name, reference);
+        } catch (JMException e) {
+            log.log(Level.WARNING, "Unable to register " + name, e);
+            return process;
+        }
+        process.onDestroy(new Runnable() {
+            @Override
+            public void run() {
+                unregister(reference);
+            }
+        });
+        return process;
+    }
+
+    /**
+     * Unregister the bean of the process, unless it has since been replaced
+     */
+    private synchronized void unregister(ManagedProcessMXBeanImpl.ProcessReference reference) {
+        if (registered.remove(reference.getName(), reference)) {
+            unregister(reference.getName());
+        }
+    }
+
+    private void unregister(ObjectName name) {
+        try {
+            if (mbeanServer.isRegistered(name)) {
+                mbeanServer.unregisterMBean(name);
+            }
+        } catch (JMException e) {
+            log.log(Level.FINE, "Unable to unregister " + name, e);
+        }
+    }
 }
@@ -0,0 +1,114 @@
+/** (C) Copyright 2011-2014 Chiral Behaviors, All Rights Reserved
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package com.hellblazer.process.impl;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+
+import javax.management.ObjectName;
+
+import com.hellblazer.process.ManagedProcess;
+import com.hellblazer.process.ManagedProcessMXBean;
+import com.hellblazer.process.OutputStatistics;
+
+/**
+ * The management bean of a managed process. The bean only weakly references
+ * its process, so that registering it does not prevent the process from
+ * being collected; the factory unregisters the beans of collected processes.
+ * 
+ * @author hhildebrand
+ * 
+ */
+public class ManagedProcessMXBeanImpl implements ManagedProcessMXBean {
+
+    /**
+     * The reference to the process, enqueued once the process is collected
+     */
+    public static class ProcessReference extends WeakReference<ManagedProcess> {
+        private final ObjectName name;
+
+        private ProcessReference(ManagedProcess process, ObjectName name,
+                                 ReferenceQueue<ManagedProcess> queue) {
+            super(process, queue);
+            this.name = name;
+        }
+
+        /**
+         * @return the name the bean of the process is registered under
+         */
+        public ObjectName getName() {
+            return name;
+        }
+    }
+
+    private final String           id;
+    private final ProcessReference process;
+
+    /**
+     * @param process
+     * @param name
+     *            - the name the bean is registered under
+     * @param queue
+     *            - the queue the reference to the process is enqueued on,
+     *            once the process is collected
+     */
+    public ManagedProcessMXBeanImpl(ManagedProcess process, ObjectName name,
+                                    ReferenceQueue<ManagedProcess> queue) {
+        id = process.getId().toString();
+        this.process = new ProcessReference(process, name, queue);
+    }
+
+    @Override
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public Integer getPid() {
+        return process().getPid();
+    }
+
+    /**
+     * @return the weak reference of the bean to its process
+     */
+    public ProcessReference getProcessReference() {
+        return process;
+    }
+
+    @Override
+    public OutputStatistics getStdErrStatistics() {
+        return process().getStdErrStatistics();
+    }
+
+    @Override
+    public OutputStatistics getStdOutStatistics() {
+        return process().getStdOutStatistics();
+    }
+
+    @Override
+    public boolean isActive() {
+        ManagedProcess managed = process.get();
+        return managed != null && managed.isActive();
+    }
+
+    private ManagedProcess process() {
+        ManagedProcess managed = process.get();
+        if (managed == null) {
+            throw new IllegalStateException("Process [" + id
+                                            + "] has been collected");
+        }
+        return managed;
+    }
+}
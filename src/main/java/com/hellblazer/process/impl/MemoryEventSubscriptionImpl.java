@@ -0,0 +1,410 @@
+/** (C) Copyright 2011-2014 Chiral Behaviors, All Rights Reserved
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package com.hellblazer.process.impl;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.InstanceNotFoundException;
+import javax.management.ListenerNotFoundException;
+import javax.management.MBeanServerConnection;
+import javax.management.MalformedObjectNameException;
+import javax.management.Notification;
+import javax.management.NotificationListener;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.remote.JMXConnectionNotification;
+import javax.management.remote.JMXConnector;
+
+import com.hellblazer.process.JavaProcess;
+import com.hellblazer.process.MemoryEventListener;
+import com.hellblazer.process.MemoryEventSubscription;
+import com.hellblazer.process.PauseHistogram;
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+/**
+ * The subscription of a Java process to its garbage collection and memory
+ * threshold notifications. The subscription checks the connector of the
+ * process periodically, which keeps the cached connector from being evicted
+ * as idle, and immediately when the connector reports itself failed or
+ * closed. Whenever the process answers a different connector, the listeners
+ * are registered again through it. While the process cannot be connected to,
+ * the checks are retried with an increasing delay. Once the process is no
+ * longer running the checks stop, until {@link #start()} is called as the
+ * process is started again.
+ * 
+ * Only the collections of the stop the world collectors are recorded as
+ * pauses: the duration of a collection of a concurrent collector, such as
+ * ConcurrentMarkSweep, ZGC Cycles or Shenandoah Cycles, is the length of its
+ * cycle, most of which runs alongside the application.
+ * 
+ * The checks connect to the process, so run on a thread of their own rather
+ * than on the shared {@link ProcessScheduler}.
+ * 
+ * @author hhildebrand
+ * 
+ */
+public class MemoryEventSubscriptionImpl implements MemoryEventSubscription,
+        NotificationListener {
+
+    /**
+     * Listens to the connector the listeners are registered through
+     */
+    private class ConnectionListener implements NotificationListener {
+        @Override
+        public void handleNotification(Notification notification,
+                                       Object handback) {
+            connectionNotification(notification);
+        }
+    }
+
+    /**
+     * The pauses of a garbage collector
+     */
+    private static class Pauses {
+        private final long[] counts = new long[PauseHistogram.BUCKETS];
+        private long         maxMillis;
+        private long         totalMillis;
+
+        private void record(long millis) {
+            counts[PauseHistogram.bucketOf(millis)]++;
+            totalMillis += millis;
+            maxMillis = Math.max(maxMillis, millis);
+        }
+
+        private PauseHistogram snapshot() {
+            return new PauseHistogram(counts, totalMillis, maxMillis);
+        }
+    }
+
+    public static final long                CHECK_MILLIS     = 5000;
+    public static final ObjectName          GC_PATTERN;
+    public static final ObjectName          MEMORY;
+    public static final long                MIN_RETRY_MILLIS = 100;
+
+    private static final Logger             log              = Logger.getLogger(MemoryEventSubscriptionImpl.class.getCanonicalName());
+    private static ScheduledExecutorService subscriptionScheduler;
+
+    static {
+        try {
+            GC_PATTERN = new ObjectName(
+                                        ManagementFactory.GARBAGE_COLLECTOR_MXBEAN_DOMAIN_TYPE
+                                                + ",*");
+            MEMORY = new ObjectName(ManagementFactory.MEMORY_MXBEAN_NAME);
+        } catch (MalformedObjectNameException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return the scheduler checking the subscriptions of all processes
+     */
+    public static synchronized ScheduledExecutorService getSubscriptionScheduler() {
+        if (subscriptionScheduler == null) {
+            ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(
+                                                                                   1,
+                                                                                   new DaemonThreadFactory(
+                                                                                                           "Memory event subscriptions"));
+            executor.setRemoveOnCancelPolicy(true);
+            subscriptionScheduler = executor;
+        }
+        return subscriptionScheduler;
+    }
+
+    /**
+     * @param collector
+     *            - the name of a garbage collector
+     * @return true if the collections of the collector stop the world for
+     *         their whole duration
+     */
+    private static boolean isPause(String collector) {
+        return !collector.contains("Concurrent")
+               && !collector.contains("Cycles");
+    }
+
+    private final Pauses                   all                = new Pauses();
+    private boolean                        cancelled;
+    private MBeanServerConnection          connection;
+    private final ConnectionListener       connectionListener = new ConnectionListener();
+    private final String                   connectionName;
+    private JMXConnector                   connector;
+    private ScheduledFuture<?>             futureCheck;
+    private final MemoryEventListener      listener;
+    private final List<ObjectName>         listening          = new ArrayList<ObjectName>();
+    private final AtomicLong               lost               = new AtomicLong();
+    private final Map<String, Pauses>      pauses             = new HashMap<String, Pauses>();
+    private final JavaProcess              process;
+    private long                           retryMillis        = MIN_RETRY_MILLIS;
+    private final ScheduledExecutorService scheduler;
+    private final AtomicLong               thresholds         = new AtomicLong();
+
+    /**
+     * @param process
+     *            - the process subscribed to
+     * @param connectionName
+     *            - the name of the local JMX connection of the process
+     * @param listener
+     *            - the listener notified of the events, or null
+     */
+    public MemoryEventSubscriptionImpl(JavaProcess process,
+                                       String connectionName,
+                                       MemoryEventListener listener) {
+        this(process, connectionName, listener, getSubscriptionScheduler());
+    }
+
+    /**
+     * @param process
+     *            - the process subscribed to
+     * @param connectionName
+     *            - the name of the local JMX connection of the process
+     * @param listener
+     *            - the listener notified of the events, or null
+     * @param scheduler
+     *            - the scheduler checking the subscription
+     */
+    public MemoryEventSubscriptionImpl(JavaProcess process,
+                                       String connectionName,
+                                       MemoryEventListener listener,
+                                       ScheduledExecutorService scheduler) {
+        this.process = process;
+        this.connectionName = connectionName;
+        this.listener = listener;
+        this.scheduler = scheduler;
+    }
+
+    @Override
+    public synchronized void cancel() {
+        if (cancelled) {
+            return;
+        }
+        cancelled = true;
+        if (futureCheck != null) {
+            futureCheck.cancel(false);
+            futureCheck = null;
+        }
+        unsubscribe();
+    }
+
+    @Override
+    public long getNotificationsLost() {
+        return lost.get();
+    }
+
+    @Override
+    public PauseHistogram getPauseHistogram() {
+        synchronized (pauses) {
+            return all.snapshot();
+        }
+    }
+
+    @Override
+    public Map<String, PauseHistogram> getPauseHistograms() {
+        Map<String, PauseHistogram> histograms = new HashMap<String, PauseHistogram>();
+        synchronized (pauses) {
+            for (Map.Entry<String, Pauses> entry : pauses.entrySet()) {
+                histograms.put(entry.getKey(), entry.getValue().snapshot());
+            }
+        }
+        return histograms;
+    }
+
+    @Override
+    public long getThresholdsExceeded() {
+        return thresholds.get();
+    }
+
+    @Override
+    public void handleNotification(Notification notification, Object handback) {
+        String type = notification.getType();
+        try {
+            if (GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(type)) {
+                GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+                if (isPause(info.getGcName())) {
+                    record(info.getGcName(), info.getGcInfo().getDuration());
+                }
+                if (listener != null) {
+                    listener.garbageCollected(info);
+                }
+            } else if (MemoryNotificationInfo.MEMORY_THRESHOLD_EXCEEDED.equals(type)
+                       || MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(type)) {
+                thresholds.incrementAndGet();
+                if (listener != null) {
+                    listener.thresholdExceeded(type,
+                                               MemoryNotificationInfo.from((CompositeData) notification.getUserData()));
+                }
+            }
+        } catch (RuntimeException e) {
+            log.log(Level.WARNING, "Error handling notification " + type
+                                   + " of " + process, e);
+        }
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    @Override
+    public synchronized boolean isConnected() {
+        return connector != null;
+    }
+
+    /**
+     * Subscribe to the process, as soon as it can be connected to. Called
+     * again whenever the process is started, as the checks stop when the
+     * process is no longer running.
+     */
+    public synchronized void start() {
+        if (!cancelled) {
+            schedule(0);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "MemoryEventSubscription [" + process + ", connectionName="
+               + connectionName + "]";
+    }
+
+    /**
+     * Check that the listeners are registered through the current connector
+     * of the process, subscribing again if they are not
+     */
+    private synchronized void check() {
+        if (cancelled) {
+            return;
+        }
+        if (!process.isActive()) {
+            unsubscribe();
+            futureCheck = null;
+            retryMillis = MIN_RETRY_MILLIS;
+            return;
+        }
+        long delay = CHECK_MILLIS;
+        try {
+            JMXConnector current = process.getLocalJmxConnector(connectionName);
+            if (current != connector) {
+                subscribe(current);
+            }
+            retryMillis = MIN_RETRY_MILLIS;
+        } catch (Exception e) {
+            if (log.isLoggable(Level.FINE)) {
+                log.fine("Unable to subscribe to " + process + ": " + e);
+            }
+            unsubscribe();
+            delay = retryMillis;
+            retryMillis = Math.min(CHECK_MILLIS, retryMillis * 2);
+        }
+        schedule(delay);
+    }
+
+    private void connectionNotification(Notification notification) {
+        String type = notification.getType();
+        if (JMXConnectionNotification.NOTIFS_LOST.equals(type)) {
+            Object dropped = notification.getUserData();
+            lost.addAndGet(dropped instanceof Long ? (Long) dropped : 1);
+        } else if (JMXConnectionNotification.FAILED.equals(type)
+                   || JMXConnectionNotification.CLOSED.equals(type)) {
+            // the connector may be closed while its cache entry is locked
+            scheduler.execute(new Runnable() {
+                @Override
+                public void run() {
+                    check();
+                }
+            });
+        }
+    }
+
+    private void record(String collector, long millis) {
+        synchronized (pauses) {
+            Pauses collected = pauses.get(collector);
+            if (collected == null) {
+                collected = new Pauses();
+                pauses.put(collector, collected);
+            }
+            collected.record(millis);
+            all.record(millis);
+        }
+    }
+
+    private void schedule(long delay) {
+        if (futureCheck != null) {
+            futureCheck.cancel(false);
+        }
+        futureCheck = scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                check();
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Register the listeners through the connector
+     */
+    private void subscribe(JMXConnector current) throws IOException,
+                                                 InstanceNotFoundException {
+        unsubscribe();
+        connector = current;
+        connection = current.getMBeanServerConnection();
+        current.addConnectionNotificationListener(connectionListener, null,
+                                                  null);
+        List<ObjectName> names = new ArrayList<ObjectName>(
+                                                           connection.queryNames(GC_PATTERN,
+                                                                                 null));
+        names.add(MEMORY);
+        for (ObjectName name : names) {
+            connection.addNotificationListener(name, this, null, null);
+            listening.add(name);
+        }
+    }
+
+    /**
+     * Remove the listeners from the connector they were registered through,
+     * if it is still open
+     */
+    private void unsubscribe() {
+        if (connector == null) {
+            return;
+        }
+        try {
+            connector.removeConnectionNotificationListener(connectionListener);
+        } catch (ListenerNotFoundException e) {
+            // ignored
+        }
+        for (ObjectName name : listening) {
+            try {
+                connection.removeNotificationListener(name, this);
+            } catch (Exception e) {
+                // the connection is closed, or the MBean is gone
+            }
+        }
+        listening.clear();
+        connection = null;
+        connector = null;
+    }
+}
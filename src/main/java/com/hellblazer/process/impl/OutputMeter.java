@@ -0,0 +1,158 @@
+/** (C) Copyright 2011-2014 Chiral Behaviors, All Rights Reserved
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package com.hellblazer.process.impl;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.hellblazer.process.OutputStatistics;
+
+/**
+ * Counts the bytes and lines written by a process to a STD OUT or STD ERR
+ * stream. The meter is fed either with the output drained from the pipe of
+ * the stream, or by reading the bytes appended to the capture file since the
+ * last update, so that the counts are maintained incrementally as the output
+ * arrives rather than by rereading the capture file.
+ * 
+ * When reading the capture file, the meter follows it across the rotations
+ * of a {@link CaptureRotator}; a file which otherwise shrinks is taken to have
+ * been truncated, and the counts continue from its beginning.
+ * 
+ * @author hhildebrand
+ * 
+ */
+public class OutputMeter implements CaptureRotator.Reader {
+    private static final Logger log              = Logger.getLogger(OutputMeter.class.getCanonicalName());
+    private static final int    READ_BUFFER_SIZE = 64 * 1024;
+
+    private long                bytes;
+    private final File          file;
+    private long                lastWriteMillis;
+    private long                lines;
+    private long                offset;
+
+    /**
+     * @param file
+     *            - the capture file of the stream
+     */
+    public OutputMeter(File file) {
+        this.file = file.getAbsoluteFile();
+    }
+
+    /**
+     * Count the bytes written to the capture file before it is rotated
+     */
+    @Override
+    public synchronized void drain() {
+        try {
+            update();
+        } catch (IOException e) {
+            // the next update counts from the beginning of the rotated file
+            log.log(Level.WARNING, "Unable to drain " + this
+                                   + " before rotation", e);
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @param tailerLag
+     *            - the number of bytes the tailers of the stream have yet to
+     *            read
+     * @return the statistics of the stream, as of the last update
+     */
+    public synchronized OutputStatistics getStatistics(long tailerLag) {
+        return new OutputStatistics(bytes, lines, file.length(), tailerLag,
+                                    lastWriteMillis);
+    }
+
+    /**
+     * Count the output drained from the pipe of the stream
+     * 
+     * @param output
+     * @param length
+     */
+    public synchronized void record(byte[] output, int length) {
+        count(output, length);
+        lastWriteMillis = System.currentTimeMillis();
+    }
+
+    @Override
+    public String toString() {
+        return "OutputMeter [" + file + "]";
+    }
+
+    /**
+     * The file has been rotated, so continue from its beginning
+     */
+    @Override
+    public synchronized void truncated() {
+        offset = 0;
+    }
+
+    /**
+     * Count the bytes appended to the capture file since the last update
+     * 
+     * @return true if the counts changed
+     * @throws IOException
+     */
+    public synchronized boolean update() throws IOException {
+        long length = file.length();
+        if (length == offset) {
+            return false;
+        }
+        if (length < offset) {
+            offset = 0; // truncated
+        }
+        FileInputStream is;
+        try {
+            is = new FileInputStream(file);
+        } catch (FileNotFoundException e) {
+            offset = 0;
+            return false;
+        }
+        try (FileChannel channel = is.getChannel()) {
+            channel.position(offset);
+            ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+            int read;
+            while ((read = channel.read(buffer)) > 0) {
+                count(buffer.array(), read);
+                offset += read;
+                buffer.clear();
+            }
+        } finally {
+            is.close();
+        }
+        lastWriteMillis = file.lastModified();
+        return true;
+    }
+
+    private void count(byte[] output, int length) {
+        for (int i = 0; i < length; i++) {
+            if (output[i] == '\n') {
+                lines++;
+            }
+        }
+        bytes += length;
+    }
+}
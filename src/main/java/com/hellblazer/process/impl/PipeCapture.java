@@ -0,0 +1,414 @@
+/** (C) Copyright 2011-2014 Chiral Behaviors, All Rights Reserved
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package com.hellblazer.process.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.input.Tailer;
+import org.apache.commons.io.input.TailerListener;
+
+/**
+ * The capture of a STD OUT or STD ERR stream of a process drained from a pipe
+ * by the {@link PipeDrainer}. The output is fanned out to the tailers
+ * subscribed to the capture as soon as it is drained, and appended to the
+ * capture file in batches: when a batch fills, when it has been pending for
+ * the flush delay, or when the file is about to be read.
+ * 
+ * The capture file is opened for append, and the capture is a reader of its
+ * {@link CaptureRotator}, so that a rotation loses nothing. The output is
+ * counted by the meter of the stream as it is drained.
+ * 
+ * Lines are split as by {@link TailBuffer}, on LF, CR LF or a lone CR, and an
+ * unterminated last line is held back until it is terminated. A tailer which
+ * starts from the beginning first replays the rolled segments and the capture
+ * file, outside the monitor of the capture, holding back the output drained
+ * meanwhile until the replay completes. As with reading the tail, a rotation
+ * during the replay may cut it short. The listeners of the tailers are
+ * notified through the shared {@link ListenerDispatcher}, rather than on the
+ * drainer thread.
+ * 
+ * @author hhildebrand
+ * 
+ */
+public class PipeCapture implements PipeDrainer.Sink, CaptureRotator.Reader {
+
+    /**
+     * A tailer fed by the capture, rather than by reading the capture file
+     */
+    private class PipeTailer extends Tailer {
+        private boolean                           afterCr;
+        private final Charset                     charset       = Charset.defaultCharset();
+        private ByteArrayOutputStream             held;
+        private final TailerListener              listener;
+        private final ListenerDispatcher.Sequence notifications = dispatcher.sequence(null);
+        private final ByteArrayOutputStream       partial       = new ByteArrayOutputStream();
+        private volatile boolean                  stopped;
+
+        private PipeTailer(TailerListener listener, long delayMillis,
+                           boolean end, int bufSize) {
+            super(file, listener, delayMillis, end, true, bufSize);
+            this.listener = listener;
+        }
+
+        /**
+         * The tailer is fed by the capture, so running it on a thread of its
+         * own does nothing
+         */
+        @Override
+        public void run() {
+            // fed by the pipe capture
+        }
+
+        @Override
+        public void stop() {
+            stopped = true;
+            super.stop();
+            notifications.clear();
+            tailers.remove(this);
+        }
+
+        /**
+         * Consume the output drained, holding it back while the tailer is
+         * replaying. Called with the monitor of the capture held
+         */
+        private void consume(byte[] bytes, int length) {
+            if (held != null) {
+                held.write(bytes, 0, length);
+            } else {
+                split(bytes, length);
+            }
+        }
+
+        private String decode(byte[] bytes, int start, int length) {
+            return new String(bytes, start, length, charset);
+        }
+
+        /**
+         * Queue the notification of the listener, which is dropped if the
+         * tailer has been stopped by the time it is run
+         */
+        private void dispatch(final Runnable notification) {
+            notifications.dispatch(new Runnable() {
+                @Override
+                public void run() {
+                    if (stopped) {
+                        return;
+                    }
+                    try {
+                        notification.run();
+                    } catch (RuntimeException e) {
+                        log.log(Level.WARNING,
+                                "Error notifying listener tailing " + file, e);
+                    }
+                }
+            });
+        }
+
+        private void handle(final IOException e) {
+            dispatch(new Runnable() {
+                @Override
+                public void run() {
+                    listener.handle(e);
+                }
+            });
+        }
+
+        /**
+         * Deliver the line, which is consumed even if the listener throws
+         */
+        private void handle(final String line) {
+            dispatch(new Runnable() {
+                @Override
+                public void run() {
+                    listener.handle(line);
+                }
+            });
+        }
+
+        /**
+         * Replay the stream, at most up to the limit if not negative
+         */
+        private void replay(InputStream is, long limit) throws IOException {
+            byte[] bytes = new byte[BATCH_SIZE];
+            long remaining = limit < 0 ? Long.MAX_VALUE : limit;
+            while (remaining > 0 && !stopped) {
+                int read = is.read(bytes, 0,
+                                   (int) Math.min(bytes.length, remaining));
+                if (read <= 0) {
+                    return;
+                }
+                split(bytes, read);
+                remaining -= read;
+            }
+        }
+
+        private void split(byte[] bytes, int length) {
+            int start = 0;
+            for (int i = 0; i < length && !stopped; i++) {
+                byte b = bytes[i];
+                if (b == '\n' && afterCr) {
+                    // the LF of a CR LF, the line of which has been handled
+                    afterCr = false;
+                    start = i + 1;
+                    continue;
+                }
+                afterCr = b == '\r';
+                if (b == '\n' || b == '\r') {
+                    String line;
+                    if (partial.size() == 0) {
+                        line = decode(bytes, start, i - start);
+                    } else {
+                        partial.write(bytes, start, i - start);
+                        line = decode(partial.toByteArray(), 0, partial.size());
+                        partial.reset();
+                    }
+                    handle(line);
+                    start = i + 1;
+                }
+            }
+            partial.write(bytes, start, length - start);
+        }
+
+        /**
+         * Subscribe to the capture, first replaying the rolled segments and
+         * the capture file if the tailer starts from the beginning
+         */
+        private void subscribe(boolean end) {
+            List<File> segments;
+            long length;
+            synchronized (PipeCapture.this) {
+                if (stopped) {
+                    return;
+                }
+                tailers.add(this);
+                if (end) {
+                    return;
+                }
+                write();
+                segments = CaptureRotator.segments(file);
+                length = file.length();
+                held = new ByteArrayOutputStream();
+            }
+            try {
+                for (int i = segments.size() - 1; i >= 0; i--) {
+                    try (InputStream is = CaptureRotator.open(segments.get(i))) {
+                        replay(is, -1);
+                    }
+                }
+                try (InputStream is = new FileInputStream(file)) {
+                    replay(is, length);
+                }
+            } catch (IOException e) {
+                handle(e);
+            } finally {
+                synchronized (PipeCapture.this) {
+                    ByteArrayOutputStream drained = held;
+                    held = null;
+                    split(drained.toByteArray(), drained.size());
+                }
+            }
+        }
+    }
+
+    public static final int                BATCH_SIZE         = 64 * 1024;
+    public static final long               FLUSH_DELAY_MILLIS = 200;
+
+    private static final Logger            log                = Logger.getLogger(PipeCapture.class.getCanonicalName());
+
+    private final byte[]                   batch              = new byte[BATCH_SIZE];
+    private int                            batched;
+    private boolean                        closed;
+    private final ListenerDispatcher       dispatcher;
+    private final File                     file;
+    private ScheduledFuture<?>             flush;
+    private final OutputMeter              meter;
+    private FileOutputStream               out;
+    private final ScheduledExecutorService scheduler;
+    private final List<PipeTailer>         tailers            = new CopyOnWriteArrayList<>();
+
+    /**
+     * @param file
+     *            - the capture file the output is appended to
+     * @param meter
+     *            - the meter counting the output, or null
+     */
+    public PipeCapture(File file, OutputMeter meter) {
+        this(file, meter, ProcessScheduler.get(),
+             ListenerDispatcher.getDefault());
+    }
+
+    /**
+     * @param file
+     *            - the capture file the output is appended to
+     * @param meter
+     *            - the meter counting the output, or null
+     * @param scheduler
+     *            - the scheduler flushing the output
+     * @param dispatcher
+     *            - the dispatcher notifying the listeners of the tailers
+     */
+    public PipeCapture(File file, OutputMeter meter,
+                       ScheduledExecutorService scheduler,
+                       ListenerDispatcher dispatcher) {
+        this.file = file.getAbsoluteFile();
+        this.meter = meter;
+        this.scheduler = scheduler;
+        this.dispatcher = dispatcher;
+    }
+
+    /**
+     * Flush the output and close the capture file. Tailers remain subscribed
+     * until they are stopped, but are fed no more output.
+     */
+    @Override
+    public synchronized void closed() {
+        if (closed) {
+            return;
+        }
+        write();
+        closed = true;
+        if (flush != null) {
+            flush.cancel(false);
+            flush = null;
+        }
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                log.log(Level.FINE, "Error closing " + file, e);
+            }
+            out = null;
+        }
+    }
+
+    @Override
+    public synchronized void consume(byte[] bytes, int length) {
+        if (meter != null) {
+            meter.record(bytes, length);
+        }
+        for (PipeTailer tailer : tailers) {
+            tailer.consume(bytes, length);
+        }
+        int offset = 0;
+        while (offset < length) {
+            int copied = Math.min(length - offset, batch.length - batched);
+            System.arraycopy(bytes, offset, batch, batched, copied);
+            batched += copied;
+            offset += copied;
+            if (batched == batch.length) {
+                write();
+            }
+        }
+        if (batched > 0 && flush == null) {
+            flush = scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    flush();
+                }
+            }, FLUSH_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Append the output batched to the capture file before it is rotated
+     */
+    @Override
+    public void drain() {
+        flush();
+    }
+
+    /**
+     * Append the output batched to the capture file
+     */
+    public synchronized void flush() {
+        if (flush != null) {
+            flush.cancel(false);
+            flush = null;
+        }
+        write();
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Tail the captured output. The tailer is subscribed on the blocking
+     * executor, as it may first replay the captured output
+     * 
+     * @param listener
+     * @param delayMillis
+     *            - unused, as the tailer is fed rather than polling
+     * @param end
+     *            - true to tail the output from now on, false to first replay
+     *            the capture file from its beginning
+     * @param bufSize
+     *            - unused, as the tailer is fed rather than reading
+     * @return the tailer, which is stopped to end the tailing
+     */
+    public Tailer tail(TailerListener listener, long delayMillis,
+                       final boolean end, int bufSize) {
+        final PipeTailer tailer = new PipeTailer(listener, delayMillis, end,
+                                                 bufSize);
+        ProcessScheduler.getBlocking().execute(new Runnable() {
+            @Override
+            public void run() {
+                tailer.subscribe(end);
+            }
+        });
+        return tailer;
+    }
+
+    @Override
+    public String toString() {
+        return "PipeCapture [" + file + "]";
+    }
+
+    /**
+     * The capture file is appended to, so continues from its beginning
+     */
+    @Override
+    public void truncated() {
+    }
+
+    private void write() {
+        if (batched == 0 || closed) {
+            batched = 0;
+            return;
+        }
+        try {
+            if (out == null) {
+                out = new FileOutputStream(file, true);
+            }
+            out.write(batch, 0, batched);
+        } catch (IOException e) {
+            log.log(Level.WARNING, "Unable to write output to " + file, e);
+        }
+        batched = 0;
+    }
+}
@@ -0,0 +1,288 @@
+/** (C) Copyright 2011-2014 Chiral Behaviors, All Rights Reserved
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package com.hellblazer.process.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A single, shared reader draining the output pipes of all processes captured
+ * by pipe. Process pipes cannot be selected, so rather than blocking a thread
+ * per pipe, one drainer thread sweeps the pipes, reading only what is
+ * available from each without blocking. While output is flowing the pipes are
+ * swept back to back; once they are idle, the sweeps back off to the maximum
+ * delay. Only the drainer thread touches the pipes, as the streams of a
+ * process block every other operation during a read; other threads ask for a
+ * sweep through {@link #drainAvailable(Sink)}.
+ * 
+ * A pipe is drained until the process writing it has exited and the pipe is
+ * empty. Output written by descendants of the process after it has exited is
+ * not drained.
+ * 
+ * @author hhildebrand
+ * 
+ */
+public class PipeDrainer {
+
+    /**
+     * The consumer of the output drained from a pipe. Sinks are called from
+     * the drainer thread, never concurrently, and must not block.
+     */
+    public interface Sink {
+        /**
+         * The pipe has been drained, and closed
+         */
+        void closed();
+
+        /**
+         * Consume the bytes drained from the pipe
+         * 
+         * @param bytes
+         * @param length
+         */
+        void consume(byte[] bytes, int length);
+    }
+
+    private class Pipe {
+        private volatile int      backlog;
+        private volatile boolean  closed;
+        private volatile long     emptySweep;
+        private final InputStream in;
+        private final Process     process;
+        private final Sink        sink;
+
+        private Pipe(Process process, InputStream in, Sink sink) {
+            this.process = process;
+            this.in = in;
+            this.sink = sink;
+        }
+
+        /**
+         * @param sweep
+         *            - the number of the sweep draining the pipe
+         * @return true if output was drained from the pipe
+         */
+        private boolean drain(long sweep) {
+            try {
+                int available = in.available();
+                backlog = available;
+                if (available > 0) {
+                    int read = in.read(buffer, 0,
+                                       Math.min(available, buffer.length));
+                    if (read > 0) {
+                        backlog = available - read;
+                        consume(read);
+                        return true;
+                    }
+                } else if (!process.isAlive()) {
+                    close();
+                } else {
+                    emptySweep = sweep;
+                }
+            } catch (IOException e) {
+                if (log.isLoggable(Level.FINE)) {
+                    log.fine("Unable to drain pipe of " + process + ": " + e);
+                }
+                close();
+            }
+            return false;
+        }
+
+        private void close() {
+            backlog = 0;
+            closed = true;
+            pipes.remove(this);
+            try {
+                in.close();
+            } catch (IOException e) {
+                // ignored
+            }
+            sink.closed();
+        }
+
+        private void consume(int read) {
+            try {
+                sink.consume(buffer, read);
+            } catch (RuntimeException e) {
+                log.log(Level.WARNING, "Error consuming pipe of " + process, e);
+            }
+        }
+
+        /**
+         * @param sweep
+         * @return true if the pipe was found empty, or closed, by the sweep or
+         *         a later one
+         */
+        private boolean isDrained(long sweep) {
+            return closed || emptySweep >= sweep;
+        }
+    }
+
+    public static final int     BUFFER_SIZE          = 64 * 1024;
+    public static final long    DRAIN_TIMEOUT_MILLIS = 1000;
+    public static final long    MAX_DELAY_MILLIS     = 50;
+    public static final long    MIN_DELAY_MILLIS     = 1;
+
+    private static PipeDrainer  defaultDrainer;
+    private static final Logger log                  = Logger.getLogger(PipeDrainer.class.getCanonicalName());
+
+    /**
+     * @return the drainer shared by all processes
+     */
+    public static synchronized PipeDrainer getDefault() {
+        if (defaultDrainer == null) {
+            defaultDrainer = new PipeDrainer(
+                                             new DaemonThreadFactory(
+                                                                     "Pipe drainer"));
+        }
+        return defaultDrainer;
+    }
+
+    private final byte[]        buffer = new byte[BUFFER_SIZE];
+    private Thread              drainer;
+    private final List<Pipe>    pipes  = new CopyOnWriteArrayList<>();
+    private boolean             requested;
+    private long                sweeps;
+    private final ThreadFactory threadFactory;
+
+    /**
+     * @param threadFactory
+     *            - the factory of the drainer thread
+     */
+    public PipeDrainer(ThreadFactory threadFactory) {
+        this.threadFactory = threadFactory;
+    }
+
+    /**
+     * @param sink
+     * @return the number of bytes waiting in the pipes of the sink, as of the
+     *         last sweep, which have yet to be drained
+     */
+    public long backlog(Sink sink) {
+        long backlog = 0;
+        for (Pipe pipe : pipes) {
+            if (pipe.sink == sink) {
+                backlog += pipe.backlog;
+            }
+        }
+        return backlog;
+    }
+
+    /**
+     * Drain the pipe into the sink, until the process has exited and the pipe
+     * is empty
+     * 
+     * @param process
+     *            - the process writing the pipe
+     * @param in
+     *            - the pipe
+     * @param sink
+     *            - the consumer of the output drained
+     */
+    public synchronized void drain(Process process, InputStream in, Sink sink) {
+        pipes.add(new Pipe(process, in, sink));
+        if (drainer == null) {
+            drainer = threadFactory.newThread(new Runnable() {
+                @Override
+                public void run() {
+                    sweepPipes();
+                }
+            });
+            drainer.start();
+        }
+        requested = true;
+        notifyAll();
+    }
+
+    /**
+     * Request a sweep, and wait until the pipes of the sink have been found
+     * empty by a sweep begun after the request, or closed, at most for the
+     * drain timeout. Once the process has exited, its pipes are closed when
+     * they have been drained to their end.
+     * 
+     * @param sink
+     */
+    public synchronized void drainAvailable(Sink sink) {
+        if (Thread.currentThread() == drainer) {
+            return;
+        }
+        long sweep = sweeps + 1;
+        requested = true;
+        notifyAll();
+        long deadline = System.currentTimeMillis() + DRAIN_TIMEOUT_MILLIS;
+        long remaining = DRAIN_TIMEOUT_MILLIS;
+        try {
+            while (remaining > 0 && !isDrained(sink, sweep)) {
+                wait(remaining);
+                remaining = deadline - System.currentTimeMillis();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private boolean isDrained(Sink sink, long sweep) {
+        for (Pipe pipe : pipes) {
+            if (pipe.sink == sink && !pipe.isDrained(sweep)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Sweep the pipes for the life of the drainer thread, waiting between the
+     * sweeps while the pipes are idle, unless a sweep is requested
+     */
+    private void sweepPipes() {
+        long delayMillis = 0;
+        try {
+            for (;;) {
+                long sweep;
+                synchronized (this) {
+                    while (pipes.isEmpty()) {
+                        wait();
+                    }
+                    sweep = ++sweeps;
+                    requested = false;
+                }
+                boolean drained = false;
+                for (Pipe pipe : pipes) {
+                    drained |= pipe.drain(sweep);
+                }
+                synchronized (this) {
+                    notifyAll();
+                    if (drained) {
+                        delayMillis = 0;
+                    } else {
+                        delayMillis = Math.min(MAX_DELAY_MILLIS,
+                                               Math.max(MIN_DELAY_MILLIS,
+                                                        delayMillis * 2));
+                        if (!requested) {
+                            wait(delayMillis);
+                        }
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            log.warning("Pipe drainer interrupted, pipes are no longer drained");
+        }
+    }
+}
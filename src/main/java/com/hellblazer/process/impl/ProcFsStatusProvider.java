@@ -0,0 +1,136 @@
+/** (C) Copyright 2011-2014 Chiral Behaviors, All Rights Reserved
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package com.hellblazer.process.impl;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A process status provider which reads the state of the process directly from
+ * the Linux <code>/proc/&lt;pid&gt;/stat</code> file, rather than forking a
+ * <code>ps</code> process.
+ * 
+ * @author hhildebrand
+ * 
+ */
+public class ProcFsStatusProvider implements ProcessStatusProvider {
+    public static final String  PROC_DIR = "/proc";
+    private static final Logger log      = Logger.getLogger(ProcFsStatusProvider.class.getCanonicalName());
+
+    /**
+     * @return true if the /proc file system is available on this host
+     */
+    public static boolean isAvailable() {
+        return new File(PROC_DIR, "self/stat").canRead();
+    }
+
+    /**
+     * Parse the contents of a /proc/&lt;pid&gt;/stat file, which is of the
+     * form: <code>pid (comm) state ppid ...</code>. The command name may
+     * contain spaces and parenthesis, so the fields following it are located
+     * from the last closing parenthesis.
+     * 
+     * @param stat
+     * @return the fields following the command name, or null if the stat line
+     *         is malformed
+     */
+    static String[] parseStat(String stat) {
+        int commEnd = stat.lastIndexOf(')');
+        if (commEnd < 0 || commEnd + 2 >= stat.length()) {
+            return null;
+        }
+        return stat.substring(commEnd + 2).trim().split(" ");
+    }
+
+    /**
+     * Scans the stat files of every process for the parent pid, as /proc does
+     * not reliably provide the children of a process
+     */
+    @Override
+    public List<Integer> getChildren(int pid) {
+        List<Integer> children = new ArrayList<Integer>();
+        String[] entries = new File(PROC_DIR).list();
+        if (entries == null) {
+            return children;
+        }
+        String parent = String.valueOf(pid);
+        for (String entry : entries) {
+            int candidate;
+            try {
+                candidate = Integer.parseInt(entry);
+            } catch (NumberFormatException e) {
+                continue; // not a process
+            }
+            String[] fields = readStat(candidate);
+            if (fields != null && fields.length > 1
+                && parent.equals(fields[1])) {
+                children.add(candidate);
+            }
+        }
+        return children;
+    }
+
+    @Override
+    public String getStatus(int pid) {
+        String[] fields = readStat(pid);
+        if (fields == null) {
+            return null;
+        }
+        if (log.isLoggable(Level.FINEST)) {
+            log.finest("pid=" + pid + " status: " + fields[0]);
+        }
+        return fields[0];
+    }
+
+    /**
+     * @param pid
+     * @return the fields of the process' stat file following the command
+     *         name, or null if the process does not exist
+     */
+    protected String[] readStat(int pid) {
+        byte[] buffer = new byte[1024];
+        int length = 0;
+        File stat = new File(PROC_DIR, String.valueOf(pid) + "/stat");
+        try (FileInputStream is = new FileInputStream(stat)) {
+            int read;
+            while (length < buffer.length
+                   && (read = is.read(buffer, length, buffer.length - length)) > 0) {
+                length += read;
+            }
+        } catch (FileNotFoundException e) {
+            return null; // process does not exist
+        } catch (IOException e) {
+            // process exited while we were reading the stat
+            if (log.isLoggable(Level.FINE)) {
+                log.fine("Unable to read status for pid=" + pid + ": " + e);
+            }
+            return null;
+        }
+        String[] fields = parseStat(new String(buffer, 0, length,
+                                               StandardCharsets.US_ASCII));
+        if (fields == null || fields.length == 0) {
+            throw new IllegalStateException("Unable to parse status for pid="
+                                            + pid);
+        }
+        return fields;
+    }
+}
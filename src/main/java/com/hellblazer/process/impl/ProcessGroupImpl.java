@@ -0,0 +1,222 @@
+/** (C) Copyright 2011-2014 Chiral Behaviors, All Rights Reserved
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package com.hellblazer.process.impl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.hellblazer.process.ManagedProcess;
+import com.hellblazer.process.ProcessGroup;
+
+/**
+ * @author hhildebrand
+ * 
+ */
+public class ProcessGroupImpl implements ProcessGroup {
+
+    /**
+     * A lifecycle operation applied to a member of the group
+     */
+    protected interface Operation {
+        void apply(ManagedProcess process) throws IOException;
+    }
+
+    public static final int            DEFAULT_PARALLELISM = 16;
+    private static final Logger        log                 = Logger.getLogger(ProcessGroupImpl.class.getCanonicalName());
+
+    private final List<ManagedProcess> members             = new CopyOnWriteArrayList<ManagedProcess>();
+    private final int                  parallelism;
+
+    public ProcessGroupImpl() {
+        this(DEFAULT_PARALLELISM);
+    }
+
+    public ProcessGroupImpl(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException(
+                                               "Parallelism must be greater than 0: "
+                                                       + parallelism);
+        }
+        this.parallelism = parallelism;
+    }
+
+    @Override
+    public void add(ManagedProcess process) {
+        if (process == null) {
+            throw new IllegalArgumentException("Process must not be null");
+        }
+        members.add(process);
+    }
+
+    @Override
+    public Map<ManagedProcess, Throwable> destroy() {
+        return perform("destroy", new Operation() {
+            @Override
+            public void apply(ManagedProcess process) throws IOException {
+                process.destroy();
+            }
+        });
+    }
+
+    @Override
+    public List<ManagedProcess> getMembers() {
+        return new ArrayList<ManagedProcess>(members);
+    }
+
+    @Override
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    @Override
+    public Iterator<ManagedProcess> iterator() {
+        return getMembers().iterator();
+    }
+
+    @Override
+    public boolean remove(ManagedProcess process) {
+        return members.remove(process);
+    }
+
+    @Override
+    public Map<ManagedProcess, Throwable> restart() {
+        return perform("restart", new Operation() {
+            @Override
+            public void apply(ManagedProcess process) throws IOException {
+                process.restart();
+            }
+        });
+    }
+
+    @Override
+    public Map<ManagedProcess, Throwable> restart(final int waitForSeconds) {
+        return perform("restart", new Operation() {
+            @Override
+            public void apply(ManagedProcess process) throws IOException {
+                process.restart(waitForSeconds);
+            }
+        });
+    }
+
+    @Override
+    public int size() {
+        return members.size();
+    }
+
+    @Override
+    public Map<ManagedProcess, Throwable> start() {
+        return perform("start", new Operation() {
+            @Override
+            public void apply(ManagedProcess process) throws IOException {
+                process.start();
+            }
+        });
+    }
+
+    @Override
+    public Map<ManagedProcess, Throwable> stop() {
+        return perform("stop", new Operation() {
+            @Override
+            public void apply(ManagedProcess process) throws IOException {
+                process.stop();
+            }
+        });
+    }
+
+    @Override
+    public Map<ManagedProcess, Throwable> stop(final int waitForSeconds) {
+        return perform("stop", new Operation() {
+            @Override
+            public void apply(ManagedProcess process) throws IOException {
+                process.stop(waitForSeconds);
+            }
+        });
+    }
+
+    @Override
+    public String toString() {
+        return "ProcessGroup [members=" + members.size() + ", parallelism="
+               + parallelism + "]";
+    }
+
+    /**
+     * Apply the operation to every member of the group, with no more than
+     * <code>parallelism</code> members operated on concurrently
+     * 
+     * @param name
+     *            - the name of the operation
+     * @param operation
+     * @return the failures of the operation, keyed by member
+     */
+    protected Map<ManagedProcess, Throwable> perform(String name,
+                                                     final Operation operation) {
+        List<ManagedProcess> targets = getMembers();
+        Map<ManagedProcess, Throwable> failures = new LinkedHashMap<ManagedProcess, Throwable>();
+        if (targets.isEmpty()) {
+            return failures;
+        }
+        int threads = Math.min(parallelism, targets.size());
+        ExecutorService executor = Executors.newFixedThreadPool(threads,
+                                                                new DaemonThreadFactory(
+                                                                                        "Process group "
+                                                                                                + name));
+        try {
+            List<Future<Void>> results = new ArrayList<Future<Void>>();
+            for (final ManagedProcess process : targets) {
+                results.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        operation.apply(process);
+                        return null;
+                    }
+                }));
+            }
+            for (int i = 0; i < targets.size(); i++) {
+                ManagedProcess process = targets.get(i);
+                try {
+                    results.get(i).get();
+                } catch (ExecutionException e) {
+                    if (log.isLoggable(Level.FINE)) {
+                        log.log(Level.FINE, "Unable to " + name + " " + process,
+                                e.getCause());
+                    }
+                    failures.put(process, e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    for (int j = i; j < targets.size(); j++) {
+                        results.get(j).cancel(true);
+                        failures.put(targets.get(j), e);
+                    }
+                    break;
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return failures;
+    }
+}
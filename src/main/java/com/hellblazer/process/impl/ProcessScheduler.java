@@ -0,0 +1,90 @@
+/** (C) Copyright 2011-2014 Chiral Behaviors, All Rights Reserved
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package com.hellblazer.process.impl;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The small, shared scheduler which drives the asynchronous lifecycle
+ * operations of all managed processes, so that no thread is dedicated to any
+ * single process. Tasks run on the scheduler must not block; the blocking
+ * lifecycle operations run asynchronously are run on the separate blocking
+ * executor instead, so that they cannot starve the scheduler.
+ * 
+ * The blocking executor is bounded, at {@link #DEFAULT_BLOCKING_THREADS}
+ * threads unless set with the {@link #BLOCKING_THREADS_PROPERTY} system
+ * property, so that starting or stopping a large fleet asynchronously queues
+ * the operations rather than creating a thread per process.
+ * 
+ * @author hhildebrand
+ * 
+ */
+public final class ProcessScheduler {
+    public static final String              BLOCKING_THREADS_PROPERTY = "com.hellblazer.process.blockingThreads";
+    public static final int                 DEFAULT_BLOCKING_THREADS  = 16;
+
+    private static ExecutorService          blocking;
+    private static ScheduledExecutorService scheduler;
+
+    /**
+     * @return the executor running the blocking lifecycle operations of all
+     *         managed processes, whose bounded threads are created as needed
+     *         and retired once idle, and which queues the operations beyond
+     *         them
+     */
+    public static synchronized ExecutorService getBlocking() {
+        if (blocking == null) {
+            int threads = Math.max(1,
+                                   Integer.getInteger(BLOCKING_THREADS_PROPERTY,
+                                                      DEFAULT_BLOCKING_THREADS));
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                                                                 threads,
+                                                                 threads,
+                                                                 60,
+                                                                 TimeUnit.SECONDS,
+                                                                 new LinkedBlockingQueue<Runnable>(),
+                                                                 new DaemonThreadFactory(
+                                                                                         "Process blocking lifecycle"));
+            executor.allowCoreThreadTimeOut(true);
+            blocking = executor;
+        }
+        return blocking;
+    }
+
+    /**
+     * @return the scheduler shared by all managed processes
+     */
+    public static synchronized ScheduledExecutorService get() {
+        if (scheduler == null) {
+            int threads = Math.max(2,
+                                   Runtime.getRuntime().availableProcessors() / 2);
+            ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(
+                                                                                   threads,
+                                                                                   new DaemonThreadFactory(
+                                                                                                           "Process lifecycle"));
+            executor.setRemoveOnCancelPolicy(true);
+            scheduler = executor;
+        }
+        return scheduler;
+    }
+
+    private ProcessScheduler() {
+    }
+}
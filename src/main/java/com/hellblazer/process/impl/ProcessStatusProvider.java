@@ -0,0 +1,46 @@
+/** (C) Copyright 2011-2014 Chiral Behaviors, All Rights Reserved
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package com.hellblazer.process.impl;
+
+import java.util.List;
+
+/**
+ * The source of host OS process state used by {@link UnixProcess} to determine
+ * liveness.
+ * 
+ * @author hhildebrand
+ * 
+ */
+public interface ProcessStatusProvider {
+
+    /**
+     * Answer the direct children of the process
+     * 
+     * @param pid
+     *            - the host OS pid of the process
+     * @return the pids of the children of the process
+     */
+    List<Integer> getChildren(int pid);
+
+    /**
+     * Answer the state of the process, in the form reported by
+     * <code>ps -o state</code> (e.g. "R", "S", "Z")
+     * 
+     * @param pid
+     *            - the host OS pid of the process
+     * @return the state of the process, or null if the process does not exist
+     */
+    String getStatus(int pid);
+}
@@ -0,0 +1,314 @@
+/** (C) Copyright 2011-2014 Chiral Behaviors, All Rights Reserved
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package com.hellblazer.process.impl;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A snapshot of the state of every process on the host, shared by all the
+ * managed processes. Supervising N processes costs a single scan of /proc, or
+ * a single fork of <code>ps</code>, per refresh rather than one per process.
+ * 
+ * The snapshot is refreshed lazily, when it is asked about and is older than
+ * the maximum age of the table, so answers are never staler than the maximum
+ * age and an idle table costs nothing.
+ * 
+ * As a process killed externally may be reported active for up to the maximum
+ * age, no table is shared by default. Sharing is enabled by setting the
+ * maximum age with the {@link #MAX_AGE_PROPERTY} system property, or by
+ * setting the default table.
+ * 
+ * @author hhildebrand
+ * 
+ */
+public class ProcessTable implements ProcessStatusProvider {
+
+    /**
+     * The state of the host's processes at a point in time
+     */
+    public static class Snapshot {
+        private final Map<Integer, Integer> parents;
+        private final Map<Integer, String>  states;
+        private final long                  takenAt;
+
+        protected Snapshot(long takenAt, Map<Integer, String> states,
+                           Map<Integer, Integer> parents) {
+            this.takenAt = takenAt;
+            this.states = states;
+            this.parents = parents;
+        }
+
+        public List<Integer> getChildren(int pid) {
+            List<Integer> children = new ArrayList<Integer>();
+            for (Map.Entry<Integer, Integer> entry : parents.entrySet()) {
+                if (entry.getValue() == pid) {
+                    children.add(entry.getKey());
+                }
+            }
+            return children;
+        }
+
+        /**
+         * @return the states of the processes in the snapshot, by pid
+         */
+        public Map<Integer, String> getStates() {
+            return Collections.unmodifiableMap(states);
+        }
+
+        public String getStatus(int pid) {
+            return states.get(pid);
+        }
+
+        /**
+         * @return the value of <code>System.nanoTime()</code> when the scan
+         *         of the snapshot began
+         */
+        public long getTakenAt() {
+            return takenAt;
+        }
+    }
+
+    public static final String  MAX_AGE_PROPERTY = "com.hellblazer.process.processTable.maxAgeMillis";
+    private static ProcessTable defaultTable     = createDefault();
+    private static final Logger log              = Logger.getLogger(ProcessTable.class.getCanonicalName());
+
+    /**
+     * @return the table shared by all managed processes, or null if
+     *         processes are to query their state individually
+     */
+    public static synchronized ProcessTable getDefault() {
+        return defaultTable;
+    }
+
+    /**
+     * Set the table shared by all managed processes
+     * 
+     * @param table
+     *            - the shared table, or null if processes are to query their
+     *            state individually
+     */
+    public static synchronized void setDefault(ProcessTable table) {
+        defaultTable = table;
+    }
+
+    /**
+     * @return the table configured by the maximum age property, or null if
+     *         the property is not set
+     */
+    private static ProcessTable createDefault() {
+        Long maxAgeMillis = Long.getLong(MAX_AGE_PROPERTY);
+        return maxAgeMillis == null ? null : new ProcessTable(maxAgeMillis);
+    }
+
+    private final long                 maxAgeNanos;
+    private final ProcFsStatusProvider procFs;
+    private volatile Snapshot          snapshot;
+
+    public ProcessTable(long maxAgeMillis) {
+        if (maxAgeMillis < 0) {
+            throw new IllegalArgumentException(
+                                               "Maximum age must not be negative: "
+                                                       + maxAgeMillis);
+        }
+        maxAgeNanos = TimeUnit.MILLISECONDS.toNanos(maxAgeMillis);
+        procFs = ProcFsStatusProvider.isAvailable() ? new ProcFsStatusProvider()
+                                                   : null;
+    }
+
+    @Override
+    public List<Integer> getChildren(int pid) {
+        return getSnapshot().getChildren(pid);
+    }
+
+    public long getMaxAgeMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(maxAgeNanos);
+    }
+
+    /**
+     * @return a snapshot no older than the maximum age of the table
+     */
+    public Snapshot getSnapshot() {
+        return getSnapshot(System.nanoTime() - maxAgeNanos);
+    }
+
+    /**
+     * @param notBefore
+     *            - the earliest <code>System.nanoTime()</code> the snapshot
+     *            may have been taken at
+     * @return a snapshot taken no earlier than notBefore, and no older than
+     *         the maximum age of the table
+     */
+    public Snapshot getSnapshot(long notBefore) {
+        Snapshot current = snapshot;
+        if (isCurrent(current, notBefore)) {
+            return current;
+        }
+        return refresh(notBefore);
+    }
+
+    @Override
+    public String getStatus(int pid) {
+        return getSnapshot().getStatus(pid);
+    }
+
+    /**
+     * Answer the state of the process from a snapshot taken no earlier than
+     * notBefore. Callers which know when the process was launched use this to
+     * avoid reporting a new process as non existent.
+     * 
+     * @param pid
+     * @param notBefore
+     *            - the earliest <code>System.nanoTime()</code> the snapshot
+     *            may have been taken at
+     * @return the state of the process, or null if the process does not exist
+     */
+    public String getStatus(int pid, long notBefore) {
+        return getSnapshot(notBefore).getStatus(pid);
+    }
+
+    /**
+     * Discard the current snapshot, forcing the next query to scan the host's
+     * processes
+     */
+    public void invalidate() {
+        snapshot = null;
+    }
+
+    @Override
+    public String toString() {
+        return "ProcessTable [maxAge=" + getMaxAgeMillis() + "ms, source="
+               + (procFs == null ? "ps" : ProcFsStatusProvider.PROC_DIR) + "]";
+    }
+
+    private boolean isCurrent(Snapshot current, long notBefore) {
+        if (current == null) {
+            return false;
+        }
+        long now = System.nanoTime();
+        return current.takenAt - notBefore >= 0
+               && now - current.takenAt <= maxAgeNanos;
+    }
+
+    private synchronized Snapshot refresh(long notBefore) {
+        Snapshot current = snapshot;
+        if (isCurrent(current, notBefore)) {
+            return current; // refreshed while we waited
+        }
+        current = procFs == null ? scanPs() : scanProcFs();
+        snapshot = current;
+        return current;
+    }
+
+    /**
+     * @return a snapshot scanned from the stat files of /proc
+     */
+    protected Snapshot scanProcFs() {
+        long takenAt = System.nanoTime();
+        Map<Integer, String> states = new HashMap<Integer, String>();
+        Map<Integer, Integer> parents = new HashMap<Integer, Integer>();
+        String[] entries = new File(ProcFsStatusProvider.PROC_DIR).list();
+        if (entries != null) {
+            for (String entry : entries) {
+                int pid;
+                try {
+                    pid = Integer.parseInt(entry);
+                } catch (NumberFormatException e) {
+                    continue; // not a process
+                }
+                String[] fields;
+                try {
+                    fields = procFs.readStat(pid);
+                } catch (IllegalStateException e) {
+                    if (log.isLoggable(Level.FINE)) {
+                        log.fine("Skipping malformed status of pid=" + pid
+                                 + ": " + e.getMessage());
+                    }
+                    continue;
+                }
+                if (fields == null) {
+                    continue; // exited during the scan
+                }
+                states.put(pid, fields[0]);
+                if (fields.length > 1) {
+                    parents.put(pid, Integer.valueOf(fields[1]));
+                }
+            }
+        }
+        if (log.isLoggable(Level.FINEST)) {
+            log.finest("scanned " + states.size() + " processes from /proc");
+        }
+        return new Snapshot(takenAt, states, parents);
+    }
+
+    /**
+     * @return a snapshot parsed from the output of a single <code>ps</code>
+     */
+    protected Snapshot scanPs() {
+        long takenAt = System.nanoTime();
+        ProcessBuilder ps = new ProcessBuilder();
+        ps.command(new String[] { "ps", "-A", "-o", "pid=", "-o", "ppid=",
+                "-o", "state=" });
+        ps.redirectErrorStream(true);
+        Process psProc;
+        try {
+            psProc = ps.start();
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to start ps -A", e);
+        }
+        Map<Integer, String> states = new HashMap<Integer, String>();
+        Map<Integer, Integer> parents = new HashMap<Integer, Integer>();
+        try (BufferedReader reader = new BufferedReader(
+                                                        new InputStreamReader(
+                                                                              psProc.getInputStream()))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.trim().split("\\s+");
+                if (fields.length != 3) {
+                    continue;
+                }
+                try {
+                    int pid = Integer.parseInt(fields[0]);
+                    parents.put(pid, Integer.valueOf(fields[1]));
+                    states.put(pid, fields[2]);
+                } catch (NumberFormatException e) {
+                    continue; // not a process entry
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to parse process table",
+                                            e);
+        }
+        try {
+            psProc.waitFor();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (log.isLoggable(Level.FINEST)) {
+            log.finest("scanned " + states.size() + " processes from ps");
+        }
+        return new Snapshot(takenAt, states, parents);
+    }
+}
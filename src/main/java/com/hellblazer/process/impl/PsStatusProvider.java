@@ -0,0 +1,186 @@
+/** (C) Copyright 2011-2014 Chiral Behaviors, All Rights Reserved
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package com.hellblazer.process.impl;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A process status provider which forks <code>ps -o state -p &lt;pid&gt;</code>
+ * to determine the state of the process. Used on platforms which do not
+ * provide a /proc file system.
+ * 
+ * @author hhildebrand
+ * 
+ */
+public class PsStatusProvider implements ProcessStatusProvider {
+    private static final Logger   log          = Logger.getLogger(PsStatusProvider.class.getCanonicalName());
+    private static final String[] VALID_STATES = new String[] { "D", "R",
+            "S", "T", "Z", "U", "I", "L", "W" };
+
+    @Override
+    public List<Integer> getChildren(int pid) {
+        ProcessBuilder ps = new ProcessBuilder();
+        ps.command(new String[] { "ps", "-A", "-o", "pid=", "-o", "ppid=" });
+        ps.redirectErrorStream(true);
+        Process psProc;
+        try {
+            psProc = ps.start();
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to start ps -A", e);
+        }
+        List<Integer> children = new ArrayList<Integer>();
+        try (BufferedReader reader = new BufferedReader(
+                                                        new InputStreamReader(
+                                                                              psProc.getInputStream()))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.trim().split("\\s+");
+                if (fields.length != 2) {
+                    continue;
+                }
+                try {
+                    if (Integer.parseInt(fields[1]) == pid) {
+                        children.add(Integer.parseInt(fields[0]));
+                    }
+                } catch (NumberFormatException e) {
+                    continue; // not a process entry
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to parse children of pid="
+                                            + pid, e);
+        }
+        try {
+            psProc.waitFor();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return children;
+    }
+
+    @Override
+    public String getStatus(int pid) {
+        ProcessBuilder ps = new ProcessBuilder();
+        ps.command(new String[] { "ps", "-o", "state", "-p",
+                String.valueOf(pid) });
+        ps.redirectErrorStream(true);
+
+        if (log.isLoggable(Level.FINE)) {
+            log.fine("requesting process status: " + ps.command());
+        }
+        Process psProc;
+        try {
+            psProc = ps.start();
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to start ps -o state -p "
+                                            + pid, e);
+        }
+
+        BufferedReader reader = new BufferedReader(
+                                                   new InputStreamReader(
+                                                                         psProc.getInputStream()));
+
+        int status;
+        try {
+            status = psProc.waitFor();
+        } catch (InterruptedException e) {
+            return "";
+        }
+
+        String line;
+        try {
+            line = reader.readLine();
+            while (line != null && invalidStatus(line)) {
+                line = reader.readLine();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to parse status for pid="
+                                            + pid, e);
+        }
+
+        if (status == 1) {
+            return null; // process does not exist
+        }
+
+        if (status != 0) {
+            log.severe("Retrieval of status for pid=" + pid
+                       + " failed with status code " + status);
+            logStatusErrorOutput(reader, line);
+            throw new IllegalStateException("Retrieval of status for pid="
+                                            + pid + " failed with status code "
+                                            + status);
+        }
+
+        if (line == null) {
+            return null; // process does not exist
+        }
+
+        if ("STAT".equals(line)) {
+            log.fine("ignoring 'STAT' header");
+            try {
+                line = reader.readLine();
+            } catch (IOException e) {
+                throw new IllegalStateException(
+                                                "Unable to parse status for pid="
+                                                        + pid, e);
+            }
+        }
+        if (log.isLoggable(Level.FINE)) {
+            log.fine("pid=" + pid + " status: " + line);
+        }
+        return line;
+    }
+
+    private boolean invalidStatus(String line) {
+        if (line.startsWith("STAT")) {
+            return true;
+        }
+        for (String state : VALID_STATES) {
+            if (line.startsWith(state)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param reader
+     * @param line
+     */
+    private void logStatusErrorOutput(BufferedReader reader, String line) {
+        if (log.isLoggable(Level.FINE)) {
+            StringBuffer out = new StringBuffer(60);
+            String errLine = line;
+            while (errLine != null) {
+                out.append(errLine);
+                out.append("\n");
+                try {
+                    errLine = reader.readLine();
+                } catch (IOException e) {
+                    out.append("*** Unable to retrieve further output: "
+                               + e.getMessage());
+                    break;
+                }
+            }
+            log.fine("ps error output: \n" + out.toString());
+        }
+    }
+}
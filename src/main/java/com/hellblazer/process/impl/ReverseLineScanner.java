@@ -0,0 +1,343 @@
+/** (C) Copyright 2011-2014 Chiral Behaviors, All Rights Reserved
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package com.hellblazer.process.impl;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+
+/**
+ * Locates the last lines of a file by scanning backwards for line terminators
+ * directly on the bytes of the file, read a window at a time from its end.
+ * Only the final slice holding the requested lines is read and decoded, so the
+ * cost is independent of the size of the file.
+ * 
+ * The windows are read with positional reads rather than mapped, as capture
+ * files are truncated by rotation while they are scanned, and touching a
+ * mapped page beyond the end of a truncated file faults the VM. A file
+ * truncated during the scan is scanned from its beginning.
+ * 
+ * Lines are terminated by LF, CR LF or CR, as by
+ * <code>ReversedLinesFileReader</code>. Scanning bytes for terminators is only
+ * correct for charsets which encode LF and CR as the single bytes 0x0A and
+ * 0x0D and never use those bytes within another character; see
+ * {@link #supports(Charset)}.
+ * 
+ * @author hhildebrand
+ * 
+ */
+public final class ReverseLineScanner {
+    public static final int   DEFAULT_WINDOW_SIZE = 64 * 1024;
+
+    private static final byte CR                  = '\r';
+    private static final int  DECODE_BUFFER_SIZE  = 8192;
+    private static final byte LF                  = '\n';
+
+    /**
+     * @param charset
+     * @return true if the lines of files encoded in the charset may be scanned
+     */
+    public static boolean supports(Charset charset) {
+        if (!charset.canEncode()) {
+            return false;
+        }
+        return Arrays.equals(new byte[] { CR, LF, 'a' },
+                             "\r\na".getBytes(charset));
+    }
+
+    /**
+     * Answer the last lines of the file, each terminated by a newline
+     * 
+     * @param file
+     * @param numLines
+     * @param charset
+     *            - the charset of the file, which must be supported
+     * @return the tail of the file
+     * @throws IOException
+     */
+    public static String tail(File file, int numLines, Charset charset)
+                                                                       throws IOException {
+        return tail(file, numLines, charset, DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * Answer the last lines of the file, each terminated by a newline
+     * 
+     * @param file
+     * @param numLines
+     * @param charset
+     *            - the charset of the file, which must be supported
+     * @param windowSize
+     *            - the number of bytes of the file read at a time
+     * @return the tail of the file
+     * @throws IOException
+     */
+    public static String tail(File file, int numLines, Charset charset,
+                              int windowSize) throws IOException {
+        StringBuilder builder = new StringBuilder();
+        tail(file, numLines, charset, windowSize, builder);
+        return builder.toString();
+    }
+
+    /**
+     * Append the last lines of the file, each terminated by a newline, to the
+     * output. The lines are decoded a buffer at a time, so no intermediate
+     * copy of the tail is made.
+     * 
+     * @param file
+     * @param numLines
+     * @param charset
+     *            - the charset of the file, which must be supported
+     * @param out
+     *            - the output the tail is appended to
+     * @throws IOException
+     */
+    public static void tail(File file, int numLines, Charset charset,
+                            Appendable out) throws IOException {
+        tail(file, numLines, charset, DEFAULT_WINDOW_SIZE, out);
+    }
+
+    /**
+     * Append the last lines of the file, each terminated by a newline, to the
+     * output
+     * 
+     * @param file
+     * @param numLines
+     * @param charset
+     *            - the charset of the file, which must be supported
+     * @param windowSize
+     *            - the number of bytes of the file read at a time
+     * @param out
+     *            - the output the tail is appended to
+     * @throws IOException
+     */
+    public static void tail(File file, int numLines, Charset charset,
+                            int windowSize, Appendable out) throws IOException {
+        validate(charset, windowSize);
+        if (numLines <= 0) {
+            return;
+        }
+        try (FileInputStream is = new FileInputStream(file);
+                FileChannel channel = is.getChannel()) {
+            long size = channel.size();
+            if (size == 0) {
+                return;
+            }
+            long limit = contentLimit(channel, size);
+            long start = findStart(channel, limit, numLines, windowSize);
+            decode(channel, start, limit, charset, out);
+            out.append('\n');
+        }
+    }
+
+    /**
+     * Transfer the bytes of the last lines of the file to the channel, which
+     * should be blocking. The bytes are transferred as written, without
+     * decoding, so line terminators are not normalized; an unterminated last
+     * line is terminated with a newline.
+     * 
+     * @param file
+     * @param numLines
+     * @param charset
+     *            - the charset of the file, which must be supported
+     * @param out
+     *            - the channel the tail is written to
+     * @throws IOException
+     */
+    public static void transferTail(File file, int numLines, Charset charset,
+                                    WritableByteChannel out) throws IOException {
+        validate(charset, DEFAULT_WINDOW_SIZE);
+        if (numLines <= 0) {
+            return;
+        }
+        try (FileInputStream is = new FileInputStream(file);
+                FileChannel channel = is.getChannel()) {
+            long size = channel.size();
+            if (size == 0) {
+                return;
+            }
+            long limit = contentLimit(channel, size);
+            long position = findStart(channel, limit, numLines,
+                                      DEFAULT_WINDOW_SIZE);
+            while (position < size) {
+                long transferred = channel.transferTo(position,
+                                                      size - position, out);
+                if (transferred <= 0) {
+                    break; // truncated while transferring
+                }
+                position += transferred;
+            }
+            if (limit == size) {
+                ByteBuffer newline = ByteBuffer.wrap(new byte[] { LF });
+                while (newline.hasRemaining()) {
+                    out.write(newline);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the end of the content of the file, excluding the terminator of
+     *         the last line
+     */
+    private static long contentLimit(FileChannel channel, long size)
+                                                                    throws IOException {
+        long from = Math.max(0, size - 2);
+        ByteBuffer last = ByteBuffer.allocate((int) (size - from));
+        readFully(channel, last, from);
+        int n = last.position();
+        if (n > 0 && last.get(n - 1) == LF) {
+            return n > 1 && last.get(n - 2) == CR ? size - 2 : size - 1;
+        }
+        if (n > 0 && last.get(n - 1) == CR) {
+            return size - 1;
+        }
+        return size;
+    }
+
+    /**
+     * @return the offset of the first of the last numLines lines ending at
+     *         limit
+     */
+    private static long findStart(FileChannel channel, long limit,
+                                  int numLines, int windowSize)
+                                                               throws IOException {
+        int count = 0;
+        boolean afterLf = false;
+        long windowEnd = limit;
+        ByteBuffer window = ByteBuffer.allocate((int) Math.min(windowSize,
+                                                               limit));
+        while (windowEnd > 0) {
+            long windowStart = Math.max(0, windowEnd - windowSize);
+            window.clear();
+            window.limit((int) (windowEnd - windowStart));
+            readFully(channel, window, windowStart);
+            if (window.hasRemaining()) {
+                return 0; // truncated while scanning
+            }
+            for (int i = (int) (windowEnd - windowStart) - 1; i >= 0; i--) {
+                byte b = window.get(i);
+                if (b == CR && afterLf) {
+                    afterLf = false; // the CR of a CR LF already counted
+                    continue;
+                }
+                afterLf = false;
+                if (b == LF || b == CR) {
+                    if (++count == numLines) {
+                        return windowStart + i + 1;
+                    }
+                    afterLf = b == LF;
+                }
+            }
+            windowEnd = windowStart;
+        }
+        return 0;
+    }
+
+    /**
+     * Append the lines between start and limit to the output, decoded a
+     * buffer at a time with CR LF and CR terminators normalized to newlines
+     */
+    private static void decode(FileChannel channel, long start, long limit,
+                               Charset charset, Appendable out)
+                                                               throws IOException {
+        CharsetDecoder decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+        ByteBuffer bytes = ByteBuffer.allocate(DECODE_BUFFER_SIZE);
+        CharBuffer chars = CharBuffer.allocate(DECODE_BUFFER_SIZE);
+        boolean afterCr = false;
+        boolean endOfInput = false;
+        long position = start;
+        while (!endOfInput) {
+            bytes.limit(bytes.position()
+                        + (int) Math.min(bytes.remaining(), limit - position));
+            int read = channel.read(bytes, position);
+            if (read > 0) {
+                position += read;
+            }
+            endOfInput = read < 0 || position >= limit;
+            bytes.flip();
+            CoderResult result;
+            do {
+                result = decoder.decode(bytes, chars, endOfInput);
+                afterCr = drain(chars, out, afterCr);
+            } while (result.isOverflow());
+            bytes.compact();
+        }
+        while (decoder.flush(chars).isOverflow()) {
+            afterCr = drain(chars, out, afterCr);
+        }
+        drain(chars, out, afterCr);
+    }
+
+    /**
+     * Append the decoded characters to the output, normalizing line
+     * terminators, and clear the buffer
+     * 
+     * @return true if the last character drained was a CR
+     */
+    private static boolean drain(CharBuffer chars, Appendable out,
+                                 boolean afterCr) throws IOException {
+        chars.flip();
+        int from = 0;
+        for (int i = 0; i < chars.length(); i++) {
+            char c = chars.charAt(i);
+            if (c == '\r' || (c == '\n' && afterCr)) {
+                out.append(chars, from, i);
+                if (c == '\r') {
+                    out.append('\n');
+                }
+                from = i + 1;
+            }
+            afterCr = c == '\r';
+        }
+        out.append(chars, from, chars.length());
+        chars.clear();
+        return afterCr;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer,
+                                  long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                return; // truncated while reading
+            }
+        }
+    }
+
+    private static void validate(Charset charset, int windowSize) {
+        if (!supports(charset)) {
+            throw new IllegalArgumentException(
+                                               "Cannot scan lines in charset "
+                                                       + charset);
+        }
+        if (windowSize < 1) {
+            throw new IllegalArgumentException(
+                                               "Window size must be greater than 0: "
+                                                       + windowSize);
+        }
+    }
+
+    private ReverseLineScanner() {
+    }
+}
@@ -0,0 +1,157 @@
+/** (C) Copyright 2011-2014 Chiral Behaviors, All Rights Reserved
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package com.hellblazer.process.impl;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.hellblazer.process.StopPolicy;
+
+/**
+ * Delivery of signals to host OS processes. The signal numbers are those
+ * defined by {@link StopPolicy}.
+ * 
+ * SIGTERM and SIGKILL are delivered from within the VM via
+ * <code>java.lang.ProcessHandle</code> when the runtime provides it (Java 9
+ * and later), which avoids forking a <code>kill</code> process. All other
+ * signals, and all signals on earlier runtimes, are delivered by forking
+ * <code>kill</code>.
+ * 
+ * @author hhildebrand
+ * 
+ */
+public final class Signals {
+    public static final int     SIGINT  = StopPolicy.SIGINT;
+    public static final int     SIGKILL = StopPolicy.SIGKILL;
+    public static final int     SIGQUIT = StopPolicy.SIGQUIT;
+    public static final int     SIGTERM = StopPolicy.SIGTERM;
+
+    private static final Method destroy;
+    private static final Method destroyForcibly;
+    private static final Logger log     = Logger.getLogger(Signals.class.getCanonicalName());
+    private static final Method of;
+    private static final Method optionalGet;
+    private static final Method optionalIsPresent;
+
+    static {
+        Method processHandleOf = null;
+        Method processHandleDestroy = null;
+        Method processHandleDestroyForcibly = null;
+        Method isPresent = null;
+        Method get = null;
+        try {
+            Class<?> processHandle = Class.forName("java.lang.ProcessHandle");
+            processHandleOf = processHandle.getMethod("of", long.class);
+            processHandleDestroy = processHandle.getMethod("destroy");
+            processHandleDestroyForcibly = processHandle.getMethod("destroyForcibly");
+            Class<?> optional = Class.forName("java.util.Optional");
+            isPresent = optional.getMethod("isPresent");
+            get = optional.getMethod("get");
+        } catch (ClassNotFoundException | NoSuchMethodException e) {
+            processHandleOf = null;
+            if (log.isLoggable(Level.FINE)) {
+                log.fine("ProcessHandle is not available, signals will be delivered by forking kill");
+            }
+        }
+        of = processHandleOf;
+        destroy = processHandleDestroy;
+        destroyForcibly = processHandleDestroyForcibly;
+        optionalIsPresent = isPresent;
+        optionalGet = get;
+    }
+
+    /**
+     * Deliver the signal to the process by forking <code>kill</code>
+     * 
+     * @param pid
+     * @param signal
+     */
+    public static void forkKill(int pid, int signal) {
+        ProcessBuilder kill = new ProcessBuilder();
+        kill.command(new String[] { "kill", "-" + signal, String.valueOf(pid) });
+        kill.redirectErrorStream(true);
+        Process killProc;
+        try {
+            killProc = kill.start();
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to start kill -" + signal
+                                            + " " + pid, e);
+        }
+
+        try {
+            killProc.waitFor();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return true if SIGTERM and SIGKILL can be delivered without forking
+     */
+    public static boolean isInVmSignallingAvailable() {
+        return of != null;
+    }
+
+    /**
+     * Deliver the signal to the process, from within the VM if possible,
+     * otherwise by forking <code>kill</code>
+     * 
+     * @param pid
+     * @param signal
+     */
+    public static void signal(int pid, int signal) {
+        if (!signalInVm(pid, signal)) {
+            forkKill(pid, signal);
+        }
+    }
+
+    /**
+     * Deliver the signal to the process from within the VM
+     * 
+     * @param pid
+     * @param signal
+     * @return true if the signal was delivered, or the process no longer
+     *         exists. False if the signal cannot be delivered from within the
+     *         VM
+     */
+    public static boolean signalInVm(int pid, int signal) {
+        if (of == null || (signal != SIGTERM && signal != SIGKILL)) {
+            return false;
+        }
+        try {
+            Object handle = of.invoke(null, (long) pid);
+            if (!(Boolean) optionalIsPresent.invoke(handle)) {
+                return true; // process does not exist
+            }
+            Object process = optionalGet.invoke(handle);
+            if (signal == SIGKILL) {
+                return (Boolean) destroyForcibly.invoke(process);
+            }
+            return (Boolean) destroy.invoke(process);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            if (log.isLoggable(Level.FINE)) {
+                log.log(Level.FINE, "Unable to signal pid=" + pid
+                                    + " from within the VM", e);
+            }
+            return false;
+        }
+    }
+
+    private Signals() {
+    }
+}
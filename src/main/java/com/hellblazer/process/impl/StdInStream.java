@@ -0,0 +1,169 @@
+/** (C) Copyright 2011-2014 Chiral Behaviors, All Rights Reserved
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package com.hellblazer.process.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The buffered, thread safe stream feeding the standard input of a process,
+ * retained for the life of the process. The input of the process is a FIFO,
+ * which is held open for reading as well as writing, so that neither the
+ * process nor the stream blocks opening it. Writes block while the FIFO is
+ * full, so a process which does not keep up with its input pushes back on the
+ * writers. Should the FIFO not be available, the input is a regular file
+ * which is appended to.
+ * 
+ * Each write is atomic with respect to the writes of other threads. Closing
+ * the stream only flushes it, as the stream is shared by all the writers of
+ * the process; the process sees the end of its input when the input is
+ * closed.
+ * 
+ * @author hhildebrand
+ * 
+ */
+public class StdInStream extends OutputStream {
+    public static final int   DEFAULT_BUFFER_SIZE = 8192;
+
+    private volatile boolean  aborted;
+    private final ByteBuffer  buffer;
+    private final FileChannel channel;
+    private final File        file;
+
+    public StdInStream(File file) throws IOException {
+        this(file, DEFAULT_BUFFER_SIZE);
+    }
+
+    public StdInStream(File file, int bufferSize) throws IOException {
+        this.file = file;
+        if (Files.isRegularFile(file.toPath())) {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE,
+                                       StandardOpenOption.APPEND);
+        } else {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ,
+                                       StandardOpenOption.WRITE);
+        }
+        buffer = ByteBuffer.allocate(bufferSize);
+    }
+
+    /**
+     * Close the input immediately, discarding anything buffered and releasing
+     * any writer blocked on the FIFO
+     */
+    public void abort() {
+        aborted = true;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // ignored
+        }
+    }
+
+    /**
+     * Flush the stream, which remains open
+     */
+    @Override
+    public void close() throws IOException {
+        flush();
+    }
+
+    /**
+     * Flush the stream and close the input, so that the process sees its end
+     * 
+     * @throws IOException
+     */
+    public synchronized void closeInput() throws IOException {
+        if (!channel.isOpen()) {
+            return;
+        }
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } finally {
+            buffer.clear();
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return true if the input has been aborted, as the process has exited
+     */
+    public boolean isAborted() {
+        return aborted;
+    }
+
+    /**
+     * @return true if the input of the process has not been closed
+     */
+    public boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    @Override
+    public String toString() {
+        return "StdInStream [" + file + "]";
+    }
+
+    @Override
+    public synchronized void write(byte[] bytes, int offset, int length)
+                                                                        throws IOException {
+        ensureOpen();
+        if (length > buffer.remaining()) {
+            flush();
+        }
+        if (length >= buffer.capacity()) {
+            ByteBuffer direct = ByteBuffer.wrap(bytes, offset, length);
+            while (direct.hasRemaining()) {
+                channel.write(direct);
+            }
+            return;
+        }
+        buffer.put(bytes, offset, length);
+    }
+
+    @Override
+    public synchronized void write(int b) throws IOException {
+        ensureOpen();
+        if (!buffer.hasRemaining()) {
+            flush();
+        }
+        buffer.put((byte) b);
+    }
+
+    private void ensureOpen() throws IOException {
+        if (!channel.isOpen()) {
+            throw new IOException("Input of the process is closed: " + file);
+        }
+    }
+}
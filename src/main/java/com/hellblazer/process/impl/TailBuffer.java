@@ -0,0 +1,257 @@
+/** (C) Copyright 2011-2014 Chiral Behaviors, All Rights Reserved
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package com.hellblazer.process.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A bounded ring buffer of the last lines of a capture file. The buffer is fed
+ * incrementally, reading only the bytes appended to the file since the last
+ * update, so that the tail of the file is served from memory in time
+ * proportional to the number of lines requested.
+ * 
+ * Lines are split as by {@link ReverseLineScanner}: on LF, CR LF or a lone CR,
+ * with an unterminated last line reported as a line.
+ * A file which shrinks is taken to have been truncated, and is reread from the
+ * beginning.
+ * 
+ * @author hhildebrand
+ * 
+ */
+public class TailBuffer implements CaptureRotator.Reader {
+    private static final Logger         log              = Logger.getLogger(TailBuffer.class.getCanonicalName());
+    private static final int            READ_BUFFER_SIZE = 8192;
+
+    private boolean                     afterCr;
+    private final Charset               charset;
+    private int                         count;
+    private final File                  file;
+    private int                         head;
+    private final String[]              lines;
+    private long                        offset;
+    private final ByteArrayOutputStream partial          = new ByteArrayOutputStream();
+
+    public TailBuffer(File file, int capacity) {
+        this(file, capacity, Charset.defaultCharset());
+    }
+
+    public TailBuffer(File file, int capacity, Charset charset) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException(
+                                               "Capacity must be greater than 0: "
+                                                       + capacity);
+        }
+        this.file = file;
+        this.charset = charset;
+        lines = new String[capacity];
+    }
+
+    /**
+     * Consume the bytes written to the file before it is rotated
+     */
+    @Override
+    public synchronized void drain() {
+        try {
+            update();
+        } catch (IOException e) {
+            // the next update reads from the beginning of the rotated file
+            log.log(Level.WARNING, "Unable to drain " + this
+                                   + " before rotation", e);
+        }
+    }
+
+    public Charset getCharset() {
+        return charset;
+    }
+
+    public int getCapacity() {
+        return lines.length;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return the number of bytes of the file which have been consumed
+     */
+    public synchronized long getOffset() {
+        return offset;
+    }
+
+    /**
+     * Answer the last lines of the file, as of the last update, each
+     * terminated by a newline
+     * 
+     * @param numLines
+     *            - the number of lines, at most the capacity of the buffer
+     * @return the tail of the file
+     */
+    public String tail(int numLines) {
+        StringBuilder builder = new StringBuilder();
+        try {
+            tail(numLines, builder);
+        } catch (IOException e) {
+            throw new IllegalStateException("StringBuilder cannot fail", e);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Append the last lines of the file, as of the last update, each
+     * terminated by a newline, to the output
+     * 
+     * @param numLines
+     *            - the number of lines, at most the capacity of the buffer
+     * @param out
+     *            - the output the tail is appended to
+     * @throws IOException
+     *             - if the output cannot be appended to
+     */
+    public synchronized void tail(int numLines, Appendable out)
+                                                               throws IOException {
+        if (numLines < 0 || numLines > lines.length) {
+            throw new IllegalArgumentException("Number of lines must be 0 - "
+                                               + lines.length + ": "
+                                               + numLines);
+        }
+        String last = partial.size() == 0 ? null : decode(partial.toByteArray(),
+                                                          partial.size());
+        int complete = Math.min(count, last == null ? numLines : numLines - 1);
+        for (int i = count - complete; i < count && complete > 0; i++) {
+            out.append(lines[(head + i) % lines.length]);
+            out.append('\n');
+        }
+        if (last != null && numLines > 0) {
+            out.append(last);
+            out.append('\n');
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "TailBuffer [" + file + ", capacity=" + lines.length + "]";
+    }
+
+    /**
+     * The file has been rotated, so continue from its beginning, retaining the
+     * lines already buffered
+     */
+    @Override
+    public synchronized void truncated() {
+        offset = 0;
+        afterCr = false;
+    }
+
+    /**
+     * Consume the bytes appended to the file since the last update
+     * 
+     * @return true if the contents of the buffer changed
+     * @throws IOException
+     */
+    public synchronized boolean update() throws IOException {
+        long length = file.length();
+        if (length == offset) {
+            return false;
+        }
+        if (length < offset) {
+            clear(); // truncated
+        }
+        FileInputStream is;
+        try {
+            is = new FileInputStream(file);
+        } catch (FileNotFoundException e) {
+            clear();
+            return true;
+        }
+        try (FileChannel channel = is.getChannel()) {
+            channel.position(offset);
+            ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+            int read;
+            while ((read = channel.read(buffer)) > 0) {
+                consume(buffer.array(), read);
+                offset += read;
+                buffer.clear();
+            }
+        } finally {
+            is.close();
+        }
+        return true;
+    }
+
+    private void add(String line) {
+        if (count < lines.length) {
+            lines[(head + count++) % lines.length] = line;
+        } else {
+            lines[head] = line;
+            head = (head + 1) % lines.length;
+        }
+    }
+
+    private void clear() {
+        for (int i = 0; i < lines.length; i++) {
+            lines[i] = null;
+        }
+        head = 0;
+        count = 0;
+        offset = 0;
+        afterCr = false;
+        partial.reset();
+    }
+
+    private void consume(byte[] bytes, int length) {
+        int start = 0;
+        for (int i = 0; i < length; i++) {
+            byte b = bytes[i];
+            if (b == '\n' && afterCr) {
+                // the LF of a CR LF, the line of which has already been added
+                afterCr = false;
+                start = i + 1;
+                continue;
+            }
+            afterCr = b == '\r';
+            if (b == '\n' || b == '\r') {
+                String line;
+                if (partial.size() == 0) {
+                    line = decode(bytes, start, i - start);
+                } else {
+                    partial.write(bytes, start, i - start);
+                    line = decode(partial.toByteArray(), partial.size());
+                    partial.reset();
+                }
+                add(line);
+                start = i + 1;
+            }
+        }
+        partial.write(bytes, start, length - start);
+    }
+
+    private String decode(byte[] bytes, int length) {
+        return decode(bytes, 0, length);
+    }
+
+    private String decode(byte[] bytes, int start, int length) {
+        return new String(bytes, start, length, charset);
+    }
+}
@@ -0,0 +1,513 @@
+/** (C) Copyright 2011-2014 Chiral Behaviors, All Rights Reserved
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package com.hellblazer.process.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.input.Tailer;
+import org.apache.commons.io.input.TailerListener;
+
+/**
+ * A single, shared engine tailing the capture files of all processes. Rather
+ * than a commons-io <code>Tailer</code> thread per file, sleeping and polling,
+ * a subscribed file is read when the shared {@link ControlDirectoryWatcher}
+ * observes it change, draining everything appended since the last read in one
+ * batch on the shared {@link ProcessScheduler}. A file whose directory cannot
+ * be watched is polled at the delay of its tailer on the same scheduler, until
+ * the directory can be watched.
+ * 
+ * Lines are split as by {@link TailBuffer}, on LF, CR LF or a lone CR, and an
+ * unterminated last line is held back until it is terminated. The tailers of a file follow it across
+ * the rotations of a {@link CaptureRotator}; a file which otherwise shrinks is
+ * taken to have been rotated, and is reread from the beginning.
+ * 
+ * Only the reading of the files runs on the process scheduler. Listeners are
+ * notified through the shared {@link ListenerDispatcher}, in order and never
+ * concurrently for the same tailer, so that a slow listener holds up neither
+ * the scheduler nor the other tailers. Once {@link #MAX_QUEUED_LINES} lines
+ * await the listener of a tailer, the tailer stops reading until they have
+ * been delivered, except to drain the file before it is rotated. A line is
+ * delivered once, even if its listener throws.
+ * 
+ * @author hhildebrand
+ * 
+ */
+public class TailEngine {
+
+    /**
+     * The tailer of a single file, driven by the engine rather than by a
+     * thread of its own
+     */
+    private class EngineTailer extends Tailer implements
+            ControlDirectoryWatcher.Listener, CaptureRotator.Reader {
+        private boolean                              afterCr;
+        private final byte[]                         buffer;
+        private final Charset                        charset  = Charset.defaultCharset();
+        private final AtomicBoolean                  deferred = new AtomicBoolean();
+        private final boolean                        end;
+        private final TailerListener                 listener;
+        private final ListenerDispatcher.Sequence    notifications;
+        private final ByteArrayOutputStream          partial  = new ByteArrayOutputStream();
+        private final AtomicBoolean                  pending  = new AtomicBoolean();
+        private ScheduledFuture<?>                   poll;
+        private volatile long                        position = -1;
+        private ControlDirectoryWatcher.Registration registration;
+        private volatile boolean                     stopped;
+        private final Runnable                       update;
+
+        private EngineTailer(File file, TailerListener listener,
+                             long delayMillis, boolean end, int bufSize) {
+            super(file, listener, delayMillis, end, true, bufSize);
+            this.listener = listener;
+            this.end = end;
+            buffer = new byte[bufSize];
+            update = new Runnable() {
+                @Override
+                public void run() {
+                    pending.set(false);
+                    read(false);
+                }
+            };
+            notifications = dispatcher.sequence(new Runnable() {
+                @Override
+                public void run() {
+                    if (deferred.getAndSet(false)) {
+                        schedule();
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void changed(File file) {
+            if (file == null || getFile().equals(file)) {
+                schedule();
+            }
+        }
+
+        @Override
+        public void drain() {
+            read(true);
+        }
+
+        /**
+         * The tailer is driven by the engine, so running it on a thread of its
+         * own does nothing
+         */
+        @Override
+        public void run() {
+            // driven by the shared tail engine
+        }
+
+        @Override
+        public void stop() {
+            stopped = true;
+            super.stop();
+            notifications.clear();
+            synchronized (tailers) {
+                List<EngineTailer> subscribed = tailers.get(getFile());
+                if (subscribed != null && subscribed.remove(this)
+                    && subscribed.isEmpty()) {
+                    tailers.remove(getFile());
+                }
+            }
+            synchronized (this) {
+                if (registration != null) {
+                    registration.cancel();
+                    registration = null;
+                }
+                if (poll != null) {
+                    poll.cancel(false);
+                    poll = null;
+                }
+            }
+        }
+
+        /**
+         * The file has been rotated, so continue from its beginning, keeping
+         * any partial line, which the process continues in the rotated file
+         */
+        @Override
+        public synchronized void truncated() {
+            if (position >= 0) {
+                position = 0;
+            }
+            fileRotated();
+        }
+
+        private void consume(byte[] bytes, int length) {
+            int start = 0;
+            for (int i = 0; i < length && !stopped; i++) {
+                byte b = bytes[i];
+                if (b == '\n' && afterCr) {
+                    // the LF of a CR LF, the line of which has been handled
+                    afterCr = false;
+                    start = i + 1;
+                    continue;
+                }
+                afterCr = b == '\r';
+                if (b == '\n' || b == '\r') {
+                    String line;
+                    if (partial.size() == 0) {
+                        line = decode(bytes, start, i - start);
+                    } else {
+                        partial.write(bytes, start, i - start);
+                        line = decode(partial.toByteArray(), 0, partial.size());
+                        partial.reset();
+                    }
+                    handle(line);
+                    start = i + 1;
+                }
+            }
+            partial.write(bytes, start, length - start);
+        }
+
+        private String decode(byte[] bytes, int start, int length) {
+            return new String(bytes, start, length, charset);
+        }
+
+        /**
+         * Queue the notification of the listener, which is dropped if the
+         * tailer has been stopped by the time it is run
+         */
+        private void dispatch(final Runnable notification) {
+            notifications.dispatch(new Runnable() {
+                @Override
+                public void run() {
+                    if (stopped) {
+                        return;
+                    }
+                    try {
+                        notification.run();
+                    } catch (RuntimeException e) {
+                        log.log(Level.WARNING,
+                                "Error notifying listener tailing "
+                                        + getFile(), e);
+                    }
+                }
+            });
+        }
+
+        private void fileNotFound() {
+            dispatch(new Runnable() {
+                @Override
+                public void run() {
+                    listener.fileNotFound();
+                }
+            });
+        }
+
+        private void fileRotated() {
+            dispatch(new Runnable() {
+                @Override
+                public void run() {
+                    listener.fileRotated();
+                }
+            });
+        }
+
+        private void handle(final IOException e) {
+            dispatch(new Runnable() {
+                @Override
+                public void run() {
+                    listener.handle(e);
+                }
+            });
+        }
+
+        /**
+         * Deliver the line, which is consumed even if the listener throws
+         */
+        private void handle(final String line) {
+            dispatch(new Runnable() {
+                @Override
+                public void run() {
+                    listener.handle(line);
+                }
+            });
+        }
+
+        /**
+         * Poll the file, watching its directory instead as soon as it can be
+         */
+        private void poll() {
+            synchronized (this) {
+                if (poll != null && watch()) {
+                    poll.cancel(false);
+                    poll = null;
+                }
+            }
+            read(false);
+        }
+
+        /**
+         * Consume the bytes appended to the file since the last read, or as
+         * many as the listener has room for
+         * 
+         * @param all
+         *            - true to consume all the bytes, however many lines are
+         *            queued for the listener
+         */
+        private synchronized void read(boolean all) {
+            if (stopped) {
+                return;
+            }
+            File file = getFile();
+            FileInputStream is;
+            try {
+                is = new FileInputStream(file);
+            } catch (FileNotFoundException e) {
+                if (registration != null && !file.getParentFile().isDirectory()) {
+                    // the directory has been removed, so poll for its return
+                    registration.cancel();
+                    registration = null;
+                    startPolling();
+                }
+                fileNotFound();
+                return;
+            }
+            try (FileChannel channel = is.getChannel()) {
+                long size = channel.size();
+                if (position < 0) {
+                    position = end ? size : 0;
+                } else if (size < position) {
+                    position = 0;
+                    afterCr = false;
+                    partial.reset();
+                    fileRotated();
+                }
+                ByteBuffer bytes = ByteBuffer.wrap(buffer);
+                int read;
+                while (!stopped
+                       && (all || notifications.queued() < MAX_QUEUED_LINES)
+                       && (read = channel.read(bytes, position)) > 0) {
+                    consume(buffer, read);
+                    position += read;
+                    bytes.clear();
+                }
+                if (!all && notifications.queued() >= MAX_QUEUED_LINES) {
+                    // resumed once the listener has caught up
+                    deferred.set(true);
+                    if (notifications.queued() == 0
+                        && deferred.getAndSet(false)) {
+                        schedule();
+                    }
+                }
+            } catch (IOException e) {
+                handle(e);
+            } finally {
+                try {
+                    is.close();
+                } catch (IOException e) {
+                    // ignored
+                }
+            }
+        }
+
+        private void schedule() {
+            if (!stopped && pending.compareAndSet(false, true)) {
+                scheduler.execute(update);
+            }
+        }
+
+        private synchronized void start() {
+            synchronized (tailers) {
+                List<EngineTailer> subscribed = tailers.get(getFile());
+                if (subscribed == null) {
+                    subscribed = new ArrayList<>();
+                    tailers.put(getFile(), subscribed);
+                }
+                subscribed.add(this);
+            }
+            if (!watch()) {
+                startPolling();
+            }
+            schedule();
+        }
+
+        private void startPolling() {
+            poll = scheduler.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    poll();
+                }
+            }, getDelay(), getDelay(), TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * @return true if the directory of the file is watched
+         */
+        private boolean watch() {
+            if (watcher == null) {
+                return false;
+            }
+            File directory = getFile().getParentFile();
+            if (!directory.isDirectory()) {
+                return false;
+            }
+            try {
+                registration = watcher.watch(directory, this);
+                return true;
+            } catch (IOException e) {
+                if (log.isLoggable(Level.FINE)) {
+                    log.fine("Unable to watch " + directory
+                             + ", polling instead: " + e);
+                }
+                return false;
+            }
+        }
+    }
+
+    public static final int     DEFAULT_BUFFER_SIZE  = 4096;
+    public static final long    DEFAULT_DELAY_MILLIS = 1000;
+    public static final int     MAX_QUEUED_LINES     = 10000;
+
+    private static TailEngine   defaultEngine;
+    private static final Logger log                  = Logger.getLogger(TailEngine.class.getCanonicalName());
+
+    /**
+     * @return the engine shared by all processes
+     */
+    public static synchronized TailEngine getDefault() {
+        if (defaultEngine == null) {
+            ControlDirectoryWatcher watcher;
+            try {
+                watcher = ControlDirectoryWatcher.getDefault();
+            } catch (IllegalStateException e) {
+                log.log(Level.FINE, "Polling tailed files", e);
+                watcher = null;
+            }
+            defaultEngine = new TailEngine(watcher, ProcessScheduler.get(),
+                                           ListenerDispatcher.getDefault());
+        }
+        return defaultEngine;
+    }
+
+    private final ListenerDispatcher            dispatcher;
+    private final ScheduledExecutorService      scheduler;
+    private final Map<File, List<EngineTailer>> tailers = new HashMap<>();
+    private final ControlDirectoryWatcher       watcher;
+
+    /**
+     * @param watcher
+     *            - the watcher notifying the engine of changed files, or null
+     *            to poll them
+     * @param scheduler
+     *            - the scheduler reading the files
+     * @param dispatcher
+     *            - the dispatcher notifying the listeners
+     */
+    public TailEngine(ControlDirectoryWatcher watcher,
+                      ScheduledExecutorService scheduler,
+                      ListenerDispatcher dispatcher) {
+        this.watcher = watcher;
+        this.scheduler = scheduler;
+        this.dispatcher = dispatcher;
+    }
+
+    /**
+     * @param file
+     * @return the number of bytes of the file which the slowest of its
+     *         tailers has yet to read
+     */
+    public long lagOf(File file) {
+        List<EngineTailer> subscribed;
+        synchronized (tailers) {
+            subscribed = tailers.get(file.getAbsoluteFile());
+            if (subscribed == null) {
+                return 0;
+            }
+            subscribed = new ArrayList<>(subscribed);
+        }
+        long length = file.length();
+        long lag = 0;
+        for (EngineTailer tailer : subscribed) {
+            long position = tailer.position;
+            if (position < 0) {
+                position = tailer.end ? length : 0;
+            }
+            lag = Math.max(lag, length - position);
+        }
+        return lag;
+    }
+
+    /**
+     * @param file
+     * @return the tailers of the file, which follow it across rotations
+     */
+    public List<CaptureRotator.Reader> readersOf(File file) {
+        synchronized (tailers) {
+            List<EngineTailer> subscribed = tailers.get(file.getAbsoluteFile());
+            if (subscribed == null) {
+                return Collections.emptyList();
+            }
+            return new ArrayList<CaptureRotator.Reader>(subscribed);
+        }
+    }
+
+    /**
+     * Tail the file from its beginning
+     *
+     * @param file
+     * @param listener
+     * @return the tailer, which is stopped to end the tailing
+     */
+    public Tailer tail(File file, TailerListener listener) {
+        return tail(file, listener, DEFAULT_DELAY_MILLIS, false,
+                    DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Tail the file
+     *
+     * @param file
+     * @param listener
+     * @param delayMillis
+     *            - the interval at which the file is polled if its directory
+     *            cannot be watched
+     * @param end
+     *            - true to tail from the end of the file, false from its
+     *            beginning
+     * @param bufSize
+     *            - the size of the buffer the file is read with
+     * @return the tailer, which is stopped to end the tailing
+     */
+    public Tailer tail(File file, TailerListener listener, long delayMillis,
+                       boolean end, int bufSize) {
+        EngineTailer tailer = new EngineTailer(file.getAbsoluteFile(),
+                                               listener, delayMillis, end,
+                                               bufSize);
+        tailer.start();
+        return tailer;
+    }
+}
@@ -20,32 +20,175 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.lang.ProcessBuilder.Redirect;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import com.hellblazer.process.CannotStopProcessException;
+import com.hellblazer.process.CaptureMode;
+import com.hellblazer.process.StopPolicy;
 
 /**
  * @author Hal Hildebrand
  * 
  */
 public class UnixProcess extends AbstractManagedProcess {
-    private static String[]       activeStates     = new String[] { "U", "I",
-            "R", "S"                              };
-    private static final Logger   log              = Logger.getLogger(UnixProcess.class.getCanonicalName());
-    private static final long     serialVersionUID = 1L;
-    private static final String[] VALID_STATES     = new String[] { "D", "R",
-            "S", "T", "Z", "U", "I", "L", "W"     };
 
-    protected Integer             exitValue;
-    protected Integer             pid;
-    protected int                 wrapperPid;
+    /**
+     * Drives the stop of the process through its stop policy. The stopper is
+     * run when the exit value of the process is written, and at the backoff
+     * intervals of the policy as a safety net. Each run sends the signals
+     * which have come due, escalates to SIGKILL at the end of the grace period
+     * and fails the stop if the process survives the kill wait period.
+     */
+    private class Stopper implements Runnable {
+        private long                                 checkMillis;
+        private final long                           gracePeriodMillis;
+        private long                                 killDeadline = -1;
+        private int                                  nextSignal   = 0;
+        private final StopPolicy                     policy;
+        private ControlDirectoryWatcher.Registration registration;
+        private ScheduledFuture<?>                   scheduled;
+        private final List<Integer>                  signals;
+        private long                                 start;
+        private final CompletableFuture<Void>        stopped;
+
+        private Stopper(StopPolicy policy, long gracePeriodMillis,
+                        CompletableFuture<Void> stopped) {
+            this.policy = policy;
+            this.gracePeriodMillis = gracePeriodMillis;
+            this.stopped = stopped;
+            signals = policy.getSignals();
+            checkMillis = policy.getInitialCheckMillis();
+        }
+
+        @Override
+        public synchronized void run() {
+            if (stopped.isDone()) {
+                return;
+            }
+            try {
+                if (isCollected()) {
+                    ProcessTable table = getProcessTable();
+                    if (table != null) {
+                        // the shared snapshot has been outdated by the stop
+                        table.invalidate();
+                    }
+                    stopped.complete(null);
+                    return;
+                }
+                long elapsed = System.currentTimeMillis() - start;
+                long nextEvent;
+                if (killDeadline < 0) {
+                    while (nextSignal < signals.size()
+                           && elapsed >= signalTime(nextSignal)) {
+                        kill(signals.get(nextSignal++));
+                    }
+                    if (elapsed >= gracePeriodMillis) {
+                        escalate();
+                        killDeadline = elapsed + policy.getKillWaitMillis();
+                        nextEvent = killDeadline;
+                    } else if (nextSignal < signals.size()) {
+                        nextEvent = signalTime(nextSignal);
+                    } else {
+                        nextEvent = gracePeriodMillis;
+                    }
+                } else if (elapsed >= killDeadline) {
+                    stopped.completeExceptionally(new CannotStopProcessException(
+                                                                                 "Cannot stop process.  PID="
+                                                                                         + pid
+                                                                                         + " "
+                                                                                         + command));
+                    return;
+                } else {
+                    nextEvent = killDeadline;
+                }
+                long delay = Math.max(0,
+                                      Math.min(checkMillis, nextEvent - elapsed));
+                checkMillis = policy.nextCheckMillis(checkMillis);
+                if (scheduled != null) {
+                    scheduled.cancel(false);
+                }
+                scheduled = ProcessScheduler.get().schedule(this, delay,
+                                                            TimeUnit.MILLISECONDS);
+            } catch (Throwable e) {
+                stopped.completeExceptionally(e);
+            }
+        }
+
+        private synchronized void begin() {
+            start = System.currentTimeMillis();
+            final ScheduledExecutorService scheduler = ProcessScheduler.get();
+            registration = watchExitValue(new Runnable() {
+                @Override
+                public void run() {
+                    scheduler.execute(Stopper.this);
+                }
+            });
+            stopped.whenComplete(new BiConsumer<Void, Throwable>() {
+                @Override
+                public void accept(Void result, Throwable error) {
+                    finish();
+                }
+            });
+            run();
+        }
+
+        private void escalate() {
+            log.info("Cannot stop:   PID=" + pid + " " + command
+                     + " resorting to kill -9");
+            // Okay, then. Terminate with extreme prejudice
+            if (policy.isKillProcessTree()) {
+                killProcessTree(Signals.SIGKILL);
+            } else {
+                kill(Signals.SIGKILL);
+            }
+        }
+
+        private synchronized void finish() {
+            if (scheduled != null) {
+                scheduled.cancel(false);
+            }
+            if (registration != null) {
+                registration.cancel();
+            }
+        }
+
+        private long signalTime(int index) {
+            return gracePeriodMillis * index / signals.size();
+        }
+    }
+
+    private static String[]                    activeStates               = new String[] {
+            "D", "U", "I", "R", "S"                                          };
+    private static final long                  EXIT_CHECK_INTERVAL_MILLIS = 1000;
+    private static final long                  EXIT_POLL_MILLIS           = 10;
+    private static final Logger                log                        = Logger.getLogger(UnixProcess.class.getCanonicalName());
+    private static final String                PID_TAG                    = "pid ";
+    private static final long                  serialVersionUID           = 1L;
+    private static final ProcessStatusProvider statusProvider             = ProcFsStatusProvider.isAvailable() ? new ProcFsStatusProvider()
+                                                                                                              : new PsStatusProvider();
+    private static final String                WRAPPER_PID_TAG            = "wrapper ";
+
+    protected Integer                          exitValue;
+    protected long                             launchedAt;
+    protected Integer                          pid;
+    protected int                              wrapperPid;
 
     public UnixProcess() {
         super();
@@ -61,6 +204,7 @@ public class UnixProcess extends AbstractManagedProcess {
         try {
             wrapperPid = readPid(getWrapperPidFile());
             pid = readPid(getPidFile());
+            launchedAt = System.nanoTime();
         } catch (IllegalStateException e) {
             // process not started
         }
@@ -68,7 +212,8 @@ public class UnixProcess extends AbstractManagedProcess {
 
     @Override
     public Integer getExitValue() {
-        if (pid == null || terminated) {
+        // The process may be dead before the wrapper writes the exit value
+        if (pid == null || (terminated && exitValue != null)) {
             return exitValue;
         }
         File exitValueFile = getExitValueFile();
@@ -121,9 +266,25 @@ public class UnixProcess extends AbstractManagedProcess {
         return pid;
     }
 
+    /**
+     * Answered from the shared process table, when there is one, so that
+     * supervising many processes does not cost a status query per process.
+     * The answer may then be as stale as the maximum age of the table, unless
+     * the process is already known to have exited.
+     */
     @Override
     public boolean isActive() {
-        return isActive(pid);
+        ProcessTable table = getProcessTable();
+        if (table == null) {
+            return isActive(pid);
+        }
+        if (terminated || pid == null) {
+            if (log.isLoggable(Level.FINE)) {
+                log.fine("inactive for " + this);
+            }
+            return false;
+        }
+        return isActiveStatus(table.getStatus(pid, launchedAt));
     }
 
     public boolean isActive(Integer thePid) {
@@ -133,7 +294,16 @@ public class UnixProcess extends AbstractManagedProcess {
             }
             return false;
         }
-        String status = getProcessStatus(thePid);
+        return isActiveStatus(getProcessStatus(thePid));
+    }
+
+    /**
+     * @param status
+     *            - the state of the process, or null if the process does not
+     *            exist
+     * @return true if the state is one of the active states
+     */
+    protected boolean isActiveStatus(String status) {
         if (status == null) {
             if (log.isLoggable(Level.FINE)) {
                 log.fine("inactive, no status for " + this);
@@ -151,19 +321,88 @@ public class UnixProcess extends AbstractManagedProcess {
         return false;
     }
 
+    /**
+     * The returned future is completed when the shared control directory
+     * watcher observes the exit value written by the launch script, with the
+     * liveness of the wrapper process checked periodically as a safety net.
+     */
+    @Override
+    public CompletableFuture<Integer> onExit() {
+        final CompletableFuture<Integer> exited = new CompletableFuture<>();
+        if (pid == null) {
+            exited.completeExceptionally(new IllegalThreadStateException(
+                                                                         "Process has not been started"));
+            return exited;
+        }
+        if (hasExitValue()) {
+            exited.complete(getExitValue());
+            return exited;
+        }
+        final ScheduledExecutorService scheduler = ProcessScheduler.get();
+        final Runnable complete = new Runnable() {
+            @Override
+            public void run() {
+                if (hasExitValue()) {
+                    terminated = true;
+                }
+                exited.complete(getExitValue());
+            }
+        };
+        // Complete on the scheduler, rather than the watcher thread, so that
+        // dependent stages cannot stall the watcher
+        final ControlDirectoryWatcher.Registration registration = watchExitValue(new Runnable() {
+            @Override
+            public void run() {
+                scheduler.execute(complete);
+            }
+        });
+        final int thePid = wrapperPid;
+        Runnable checkExit = new Runnable() {
+            @Override
+            public void run() {
+                if (hasExitValue() || !isActive(thePid)) {
+                    complete.run();
+                }
+            }
+        };
+        long checkInterval = registration == null ? EXIT_POLL_MILLIS
+                                                 : EXIT_CHECK_INTERVAL_MILLIS;
+        final ScheduledFuture<?> check = scheduler.scheduleWithFixedDelay(checkExit,
+                                                                          checkInterval,
+                                                                          checkInterval,
+                                                                          TimeUnit.MILLISECONDS);
+        exited.whenComplete(new BiConsumer<Integer, Throwable>() {
+            @Override
+            public void accept(Integer exitValue, Throwable error) {
+                check.cancel(false);
+                if (registration != null) {
+                    registration.cancel();
+                }
+            }
+        });
+        return exited;
+    }
+
     @Override
     public synchronized void start() throws IOException {
-        if (isActive()) {
+        if (isRunning()) {
             return;
         }
         super.start();
-        wrapperPid = readPid(getWrapperPidFile());
-        pid = readPid(getPidFile());
         if (log.isLoggable(Level.FINE)) {
             log.fine("started [" + id + "] pid=" + pid);
         }
     }
 
+    /**
+     * Stop the process according to its stop policy, waiting the grace period
+     * of the policy before terminating the process with SIGKILL
+     */
+    @Override
+    public synchronized void stop() throws CannotStopProcessException {
+        awaitStop(stopAsync(stopPolicy.getGracePeriodMillis()));
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -172,90 +411,80 @@ public class UnixProcess extends AbstractManagedProcess {
     @Override
     public synchronized void stop(int waitForSeconds)
                                                      throws CannotStopProcessException {
-        if (isDead()) {
-            return;
-        }
-        if (log.isLoggable(Level.FINE)) {
-            log.fine("stopping: " + this);
-        }
-
-        // Be nice about it.
-        kill();
-
-        long target = System.currentTimeMillis() + waitForSeconds * 1000;
-        while (System.currentTimeMillis() < target && !isDead()) {
-            try {
-                Thread.sleep(100);
-            } catch (InterruptedException e) {
-                return;
-            }
-        }
-
-        if (!isDead()) {
-            log.info("Cannot kill:   PID=" + pid + " " + command
-                     + " resorting to kill -9");
-            // Okay, then. Terminate with extreme prejudice
-            kill(9);
-        }
-
-        if (!isDead()) {
-            throw new CannotStopProcessException("Cannot stop process.  PID="
-                                                 + pid + " " + command);
-        }
+        awaitStop(stopAsync(TimeUnit.SECONDS.toMillis(waitForSeconds)));
+    }
 
+    @Override
+    public CompletableFuture<Void> stopAsync(int waitForSeconds) {
+        return stopAsync(TimeUnit.SECONDS.toMillis(waitForSeconds));
     }
 
     @Override
     public int waitFor() throws InterruptedException {
-        if (terminated) {
-            return getExitValue();
+        if (terminated && exitValue != null) {
+            return exitValue;
         }
         waitFor(wrapperPid);
-        return getExitValue();
-    }
-
-    private boolean invalidStatus(String line) {
-        if (line.startsWith("STAT")) {
-            return true;
-        }
-        for (String state : VALID_STATES) {
-            if (line.startsWith(state)) {
-                return false;
-            }
+        if (hasExitValue()) {
+            terminated = true;
         }
-        return true;
+        return getExitValue();
     }
 
     /**
-     * @param reader
-     * @param line
+     * Launch the script, reading the pids of the process and its wrapper from
+     * the handshake the script writes to its standard output. Control returns
+     * as soon as both pids are known, without polling the control directory.
+     * 
+     * When captured by pipe, the script remains until the process exits, and
+     * the output of the process follows the handshake on the standard output
+     * and error of the script.
      */
-    private void logStatusErrorOutput(BufferedReader reader, String line) {
-        if (log.isLoggable(Level.FINE)) {
-            StringBuffer out = new StringBuffer(60);
-            String errLine = line;
-            while (errLine != null) {
-                out.append(errLine);
-                out.append("\n");
-                try {
-                    errLine = reader.readLine();
-                } catch (IOException e) {
-                    out.append("*** Unable to retrieve further output: "
-                               + e.getMessage());
-                    break;
-                }
-            }
-            log.fine("ps error output: \n" + out.toString());
-        }
-    }
-
     @Override
     protected void execute() throws IOException {
         writeScript();
         List<String> scriptCmnds = new ArrayList<String>();
         scriptCmnds.add("/bin/sh");
         scriptCmnds.add(getScriptFile().getAbsolutePath());
-        primitiveExecute(scriptCmnds);
+        pid = null;
+        wrapperPid = -1;
+        ProcessBuilder builder = newProcessBuilder(scriptCmnds);
+        if (captureMode == CaptureMode.FILE) {
+            builder.redirectError(Redirect.appendTo(getLaunchLogFile()));
+        }
+        Process p = builder.start();
+        boolean piped = false;
+        try {
+            try {
+                readHandshake(p.getInputStream());
+                launchedAt = System.nanoTime();
+                if (pid != null && wrapperPid >= 0) {
+                    closeStdInOnExit(openStdIn());
+                    if (captureMode == CaptureMode.PIPE) {
+                        capturePipes(p);
+                        piped = true;
+                    }
+                }
+            } finally {
+                // releases the script, which waits so that its output is not
+                // discarded by the VM before the wrapper has reported the pid
+                p.getOutputStream().close();
+            }
+            if (!piped) {
+                p.waitFor();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (!piped) {
+                p.destroy();
+            }
+        }
+        logLaunchOutput();
+        if (pid == null || wrapperPid < 0) {
+            throw new IOException("Process did not start up correctly, pid="
+                                  + pid + " wrapper pid=" + wrapperPid);
+        }
     }
 
     /**
@@ -265,6 +494,19 @@ public class UnixProcess extends AbstractManagedProcess {
         return activeStates;
     }
 
+    /**
+     * @param thePid
+     * @return the pids of all the descendants of the process
+     */
+    protected List<Integer> getDescendants(int thePid) {
+        List<Integer> descendants = new ArrayList<Integer>();
+        for (Integer child : getStatusProvider().getChildren(thePid)) {
+            descendants.add(child);
+            descendants.addAll(getDescendants(child));
+        }
+        return descendants;
+    }
+
     protected File getExitValueFile() {
         return new File(directory, getExitValueFileName());
     }
@@ -282,82 +524,21 @@ public class UnixProcess extends AbstractManagedProcess {
     }
 
     /**
-     * @return
+     * @return the state of the process, or null if the process does not exist
      */
     protected String getProcessStatus(Integer thePid) {
         if ((thePid == null) || (thePid == -1)) {
             return null;
         }
-        ProcessBuilder ps = new ProcessBuilder();
-        ps.command(new String[] { "ps", "-o", "state", "-p",
-                String.valueOf(thePid) });
-        ps.redirectErrorStream(true);
-
-        if (log.isLoggable(Level.FINE)) {
-            log.fine("requesting process status: " + ps.command());
-        }
-        Process psProc;
-        try {
-            psProc = ps.start();
-        } catch (IOException e) {
-            throw new IllegalStateException("Unable to start ps -o state -p "
-                                            + thePid, e);
-        }
-
-        BufferedReader reader = new BufferedReader(
-                                                   new InputStreamReader(
-                                                                         psProc.getInputStream()));
-
-        int status;
-        try {
-            status = psProc.waitFor();
-        } catch (InterruptedException e) {
-            return "";
-        }
-
-        String line;
-        try {
-            line = reader.readLine();
-            while (line != null && invalidStatus(line)) {
-                line = reader.readLine();
-            }
-        } catch (IOException e) {
-            throw new IllegalStateException("Unable to parse status for pid="
-                                            + thePid, e);
-        }
-
-        if (status == 1) {
-            return null; // process does not exist
-        }
-
-        if (status != 0) {
-            log.severe("Retrieval of status for pid=" + thePid
-                       + " failed with status code " + status);
-            logStatusErrorOutput(reader, line);
-            throw new IllegalStateException("Retrieval of status for pid="
-                                            + thePid
-                                            + " failed with status code "
-                                            + status);
-        }
-
-        if (line == null) {
-            return null; // process does not exist
-        }
+        return getStatusProvider().getStatus(thePid);
+    }
 
-        if ("STAT".equals(line)) {
-            log.fine("ignoring 'STAT' header");
-            try {
-                line = reader.readLine();
-            } catch (IOException e) {
-                throw new IllegalStateException(
-                                                "Unable to parse status for pid="
-                                                        + thePid, e);
-            }
-        }
-        if (log.isLoggable(Level.FINE)) {
-            log.fine("pid=" + pid + " status: " + line);
-        }
-        return line;
+    /**
+     * @return the process table shared by all processes, or null if the state
+     *         of this process is to be queried directly
+     */
+    protected ProcessTable getProcessTable() {
+        return ProcessTable.getDefault();
     }
 
     protected File getScriptFile() {
@@ -368,6 +549,14 @@ public class UnixProcess extends AbstractManagedProcess {
         return inControlDirectory("run.sh");
     }
 
+    /**
+     * @return the provider of host OS process state. Reads /proc directly when
+     *         available, rather than forking ps
+     */
+    protected ProcessStatusProvider getStatusProvider() {
+        return statusProvider;
+    }
+
     protected File getWrapperPidFile() {
         return new File(directory, getWrapperPidFileName());
     }
@@ -377,11 +566,23 @@ public class UnixProcess extends AbstractManagedProcess {
     }
 
     /**
-     * @return true if the process is well and truly dead
+     * @return true if the process is dead and its wrapper is finished with the
+     *         control directory
+     */
+    protected boolean isCollected() {
+        return isDead() && (hasExitValue() || !isActive(wrapperPid));
+    }
+
+    /**
+     * @return true if the process is well and truly dead. A zombie is dead,
+     *         merely awaiting collection by the wrapper process
      */
     protected boolean isDead() {
-        if (terminated || getProcessStatus(pid) == null) {
-            terminated = true;
+        if (!terminated) {
+            String status = getProcessStatus(pid);
+            if (status == null || status.startsWith("Z")) {
+                terminated = true;
+            }
         }
         return terminated;
     }
@@ -396,126 +597,273 @@ public class UnixProcess extends AbstractManagedProcess {
         return false;
     }
 
-    protected void kill() {
-        if (pid == null) {
-            return;
-        }
-        ProcessBuilder kill = new ProcessBuilder();
-        kill.command(new String[] { "kill", String.valueOf(pid) });
-        kill.redirectErrorStream(true);
-        Process killProc;
-        try {
-            killProc = kill.start();
-        } catch (IOException e) {
-            throw new IllegalStateException("Unable to start kill pid=" + pid,
-                                            e);
-        }
+    /**
+     * Lifecycle operations query the state of the process directly, rather
+     * than trusting the shared process table
+     */
+    @Override
+    protected boolean isRunning() {
+        return isActive(pid);
+    }
 
-        try {
-            killProc.waitFor();
-        } catch (InterruptedException e) {
-            return;
-        }
+    /**
+     * Politely request the process to terminate
+     */
+    protected void kill() {
+        kill(Signals.SIGTERM);
     }
 
+    /**
+     * Deliver the signal to the process. SIGTERM and SIGKILL are delivered
+     * from within the VM when possible, rather than forking kill.
+     * 
+     * @param signal
+     */
     protected void kill(int signal) {
         if (pid == null) {
             return;
         }
-        ProcessBuilder kill = new ProcessBuilder();
-        kill.command(new String[] { "kill", "-" + signal, String.valueOf(pid) });
-        kill.redirectErrorStream(true);
-        Process killProc;
-        try {
-            killProc = kill.start();
-        } catch (IOException e) {
-            throw new IllegalStateException("Unable to start kill -" + signal
-                                            + " -p" + pid, e);
-        }
+        Signals.signal(pid, signal);
+    }
 
-        try {
-            killProc.waitFor();
-        } catch (InterruptedException e) {
+    /**
+     * Deliver the signal to the process and all of its descendants. The
+     * descendants are collected before the process is signalled, so that
+     * children orphaned by the signal are not missed.
+     * 
+     * @param signal
+     */
+    protected void killProcessTree(int signal) {
+        if (pid == null) {
             return;
         }
+        List<Integer> descendants = getDescendants(pid);
+        Signals.signal(pid, signal);
+        for (Integer descendant : descendants) {
+            Signals.signal(descendant, signal);
+        }
     }
 
-    protected int readPid(File pidFile) {
-        for (int i = 0; i < 1000; i++) {
-            if (pidFile.exists() && pidFile.length() > 0) {
-                break;
-            }
+    /**
+     * Read the handshake written by the launch script, which is of the form:
+     * 
+     * <pre>
+     * pid {pid}
+     * wrapper {wrapper pid}
+     * </pre>
+     * 
+     * in either order. The launch script closes the handshake once both lines
+     * are written. The handshake is read without buffering and left open, as
+     * the output of a process captured by pipe follows it.
+     * 
+     * @param handshake
+     * @throws IOException
+     */
+    protected void readHandshake(InputStream handshake) throws IOException {
+        String line;
+        while ((pid == null || wrapperPid < 0)
+               && (line = readLine(handshake)) != null) {
             try {
-                Thread.sleep(10);
-            } catch (InterruptedException e) {
-                return -1;
+                if (line.startsWith(PID_TAG)) {
+                    pid = Integer.parseInt(line.substring(PID_TAG.length()).trim());
+                } else if (line.startsWith(WRAPPER_PID_TAG)) {
+                    wrapperPid = Integer.parseInt(line.substring(WRAPPER_PID_TAG.length()).trim());
+                } else if (log.isLoggable(Level.FINE)) {
+                    log.fine("[" + id + "] " + line);
+                }
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid launch handshake: " + line);
             }
         }
+        if (log.isLoggable(Level.FINE)) {
+            log.fine("handshake [" + id + "] pid=" + pid + " wrapper pid="
+                     + wrapperPid);
+        }
+    }
+
+    /**
+     * Read the pid recorded by a previous launch of the process
+     * 
+     * @param pidFile
+     * @return the pid
+     */
+    protected int readPid(File pidFile) {
         if (!pidFile.exists()) {
             throw new IllegalStateException("Required PID file is missing! <"
                                             + pidFile + ">");
         }
-        try {
-            BufferedReader pidStream = new BufferedReader(
-                                                          new InputStreamReader(
-                                                                                new FileInputStream(
-                                                                                                    pidFile)));
+        try (BufferedReader pidStream = new BufferedReader(
+                                                           new InputStreamReader(
+                                                                                 new FileInputStream(
+                                                                                                     pidFile)))) {
             String pidNum = pidStream.readLine();
             if (pidNum == null) {
-                try {
-                    pidStream.close();
-                } catch (IOException e) {
-                    log.fine(String.format("error closing stream", e));
-                }
                 throw new IllegalStateException("pid is empty <" + pidFile
                                                 + ">");
             }
-            int thePid = Integer.parseInt(pidNum);
-            pidStream.close();
-            return thePid;
+            return Integer.parseInt(pidNum.trim());
         } catch (IOException e) {
             throw new IllegalStateException("Unable to read PID file <"
                                             + pidFile + ">");
         }
     }
 
+    /**
+     * Stop the process according to its stop policy. Progress is driven by
+     * the exit notification of the process and the backoff checks of the
+     * policy, on the shared scheduler.
+     * 
+     * @param gracePeriodMillis
+     *            - the time to wait for the process to exit before it is
+     *            terminated with SIGKILL
+     * @return the future completed when the process has stopped
+     */
+    protected CompletableFuture<Void> stopAsync(long gracePeriodMillis) {
+        CompletableFuture<Void> stopped = new CompletableFuture<>();
+        if (isCollected()) {
+            stopped.complete(null);
+            return stopped;
+        }
+        if (log.isLoggable(Level.FINE)) {
+            log.fine("stopping: " + this + " with " + stopPolicy);
+        }
+        new Stopper(stopPolicy, gracePeriodMillis, stopped).begin();
+        return stopped;
+    }
+
+    /**
+     * Wait for the process to exit. Rather than polling, the waiting thread is
+     * woken by the shared control directory watcher when the exit value is
+     * written by the launch script. The liveness of the wrapper process is only
+     * checked periodically, as a safety net for when the exit value can never
+     * be written.
+     * 
+     * @param thePid
+     *            - the pid of the wrapper process which writes the exit value
+     * @throws InterruptedException
+     */
     protected void waitFor(int thePid) throws InterruptedException {
-        while (isActive(thePid)) {
-            Thread.sleep(10);
+        final CountDownLatch exited = new CountDownLatch(1);
+        ControlDirectoryWatcher.Registration registration = watchExitValue(new Runnable() {
+            @Override
+            public void run() {
+                exited.countDown();
+            }
+        });
+        long checkInterval = registration == null ? EXIT_POLL_MILLIS
+                                                 : EXIT_CHECK_INTERVAL_MILLIS;
+        try {
+            while (!hasExitValue()) {
+                if (exited.await(checkInterval, TimeUnit.MILLISECONDS)) {
+                    break;
+                }
+                if (!isActive(thePid)) {
+                    break;
+                }
+            }
+        } finally {
+            if (registration != null) {
+                registration.cancel();
+            }
         }
-        for (int i = 0; i < 10; i++) {
-            if (!getExitValueFile().exists()) {
-                Thread.sleep(10);
+    }
+
+    /**
+     * @return true if the exit value of the process has been written
+     */
+    protected boolean hasExitValue() {
+        return getExitValueFile().length() > 0;
+    }
+
+    /**
+     * Watch for the exit value of the process to be written
+     * 
+     * @param onExit
+     *            - the action to run when the exit value is available
+     * @return the registration of the watch, or null if the control directory
+     *         cannot be watched
+     */
+    protected ControlDirectoryWatcher.Registration watchExitValue(final Runnable onExit) {
+        final File exitValueFile = getExitValueFile().getAbsoluteFile();
+        ControlDirectoryWatcher.Listener listener = new ControlDirectoryWatcher.Listener() {
+            @Override
+            public void changed(File file) {
+                if ((file == null || exitValueFile.equals(file))
+                    && hasExitValue()) {
+                    onExit.run();
+                }
             }
+        };
+        ControlDirectoryWatcher.Registration registration;
+        try {
+            registration = ControlDirectoryWatcher.getDefault().watch(getControlDirectory(),
+                                                                      listener);
+        } catch (IOException | IllegalStateException e) {
+            if (log.isLoggable(Level.FINE)) {
+                log.fine("Unable to watch control directory of [" + id
+                         + "], polling: " + e);
+            }
+            return null;
         }
+        if (hasExitValue()) {
+            // exited before we could start watching
+            onExit.run();
+        }
+        return registration;
     }
 
     /**
      * Output the scripts which will actually run the process in the background,
-     * capturing outptut streams, PID and exit value.
+     * capturing outptut streams, PID and exit value. The pids of the process
+     * and its wrapper are reported to the launcher over the original standard
+     * output of the script, file descriptor 3, which is closed by everything
+     * but the reporting commands. The script then waits for the launcher to
+     * close its standard input, acknowledging the handshake.
+     * 
+     * The standard input of the process is a FIFO, which the process blocks
+     * opening until the launcher opens it once the handshake is complete. If
+     * a FIFO cannot be made, the input is a regular file.
      * 
      * Script is of the form:
      * 
-     * #!/bin/sh exec 1> .control-905eda8c-e0cf-40c7-9169-fbe16c601ae7/std.out
-     * exec 2> .control-905eda8c-e0cf-40c7-9169-fbe16c601ae7/std.err (nohup
-     * {quoted command} < {ctrl-dir}/std.in & x=$!; echo $x > {ctrl-dir}/pid;
-     * wait $x; echo $? > {ctrl-dir}/exit.value)& echo $! >
-     * {ctrl-dir}/wrapper.pid
+     * #!/bin/sh rm -f {ctrl-dir}/std.in; mkfifo {ctrl-dir}/std.in 2> /dev/null
+     * || : > {ctrl-dir}/std.in; exec 3>&1 1>> {ctrl-dir}/std.out 2>> {ctrl-dir}/std.err (nohup
+     * {quoted command} < {ctrl-dir}/std.in 3>&- & x=$!; echo $x >
+     * {ctrl-dir}/pid; echo "pid $x" >&3; exec 3>&-; wait $x; echo $? >
+     * {ctrl-dir}/exit.value) < /dev/null & echo $! > {ctrl-dir}/wrapper.pid;
+     * echo "wrapper $!" >&3; read ack
+     * 
+     * When captured by pipe, the output streams of the script are left to the
+     * process, and the pids are reported before the process is executed, so
+     * that the handshake precedes its output. The script then waits for the
+     * process, so that the VM keeps the pipes open:
+     * 
+     * #!/bin/sh {make std.in} exec 3>&1 4>&2 2>> {ctrl-dir}/launch.log (sh -c
+     * 'echo "wrapper $PPID"' >&3; sh -c 'echo "pid $$" >&3; exec 3>&- <
+     * {ctrl-dir}/std.in; exec nohup "$@"' sh {quoted command} 2>&4 4>&- &
+     * x=$!; echo $x > {ctrl-dir}/pid; exec 3>&- 4>&-; wait $x; echo $? >
+     * {ctrl-dir}/exit.value) < /dev/null & echo $! > {ctrl-dir}/wrapper.pid;
+     * read ack; wait
      * 
      */
     protected void writeScript() throws IOException {
+        if (captureMode == CaptureMode.PIPE) {
+            writePipedScript();
+            return;
+        }
         PrintWriter script = new PrintWriter(
                                              new OutputStreamWriter(
                                                                     new FileOutputStream(
                                                                                          getScriptFile())));
 
         script.println("#!/bin/sh");
+        writeStdInFifo(script);
 
-        script.append("exec 1> ");
+        // the capture files are opened for append, so that they continue from
+        // their beginning when truncated by a CaptureRotator
+        script.append("exec 3>&1 1>> ");
         script.append(getStdOutFileName());
-        script.println();
-
-        script.append("exec 2> ");
+        script.append(" 2>> ");
         script.append(getStdErrFileName());
         script.println();
 
@@ -527,17 +875,139 @@ public class UnixProcess extends AbstractManagedProcess {
         }
         script.append(" < ");
         script.append(getStdInFileName());
-        script.append(" & x=$!; echo $x > ");
+        script.append(" 3>&- & x=$!; echo $x > ");
         script.append(getPidFileName());
-        script.append("; wait $x; echo $? > ");
+        script.append("; echo \"");
+        script.append(PID_TAG);
+        script.append("$x\" >&3; exec 3>&-; wait $x; echo $? > ");
         script.append(getExitValueFileName());
-        script.println(")&");
+        script.println(") < /dev/null &");
+
+        script.append("echo $! > ");
+        script.append(getWrapperPidFileName());
+        script.append("; echo \"");
+        script.append(WRAPPER_PID_TAG);
+        script.println("$!\" >&3");
+
+        script.println("read ack");
+
+        script.flush();
+        script.close();
+    }
+
+    private void awaitStop(CompletableFuture<Void> stopped)
+                                                           throws CannotStopProcessException {
+        try {
+            stopped.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CannotStopProcessException(
+                                                 "Interrupted waiting for process to stop: "
+                                                         + this);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof CannotStopProcessException) {
+                throw (CannotStopProcessException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException("Unable to stop process", cause);
+        }
+    }
+
+    /**
+     * Close the input of the process when it exits, releasing any writers
+     * blocked on it
+     */
+    private void closeStdInOnExit(final StdInStream in) {
+        final AtomicReference<ControlDirectoryWatcher.Registration> watch = new AtomicReference<>();
+        ControlDirectoryWatcher.Registration registration = watchExitValue(new Runnable() {
+            @Override
+            public void run() {
+                in.abort();
+                ControlDirectoryWatcher.Registration registration = watch.getAndSet(null);
+                if (registration != null) {
+                    registration.cancel();
+                }
+            }
+        });
+        if (registration == null) {
+            return;
+        }
+        watch.set(registration);
+        if (in.isAborted() && watch.compareAndSet(registration, null)) {
+            registration.cancel(); // exited while watching
+        }
+    }
+
+    /**
+     * @return the next line of the stream, read a byte at a time so that
+     *         nothing beyond it is consumed, or null at the end of the stream
+     */
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int b;
+        while ((b = in.read()) >= 0 && b != '\n') {
+            line.append((char) b);
+        }
+        if (b < 0 && line.length() == 0) {
+            return null;
+        }
+        return line.toString();
+    }
+
+    private void writePipedScript() throws IOException {
+        PrintWriter script = new PrintWriter(
+                                             new OutputStreamWriter(
+                                                                    new FileOutputStream(
+                                                                                         getScriptFile())));
+
+        script.println("#!/bin/sh");
+        writeStdInFifo(script);
+
+        script.append("exec 3>&1 4>&2 2>> ");
+        script.append(getLaunchLogFileName());
+        script.println();
+
+        script.append("(sh -c 'echo \"");
+        script.append(WRAPPER_PID_TAG);
+        script.append("$PPID\"' >&3; sh -c 'echo \"");
+        script.append(PID_TAG);
+        script.append("$$\" >&3; exec 3>&- < ");
+        script.append(getStdInFileName());
+        script.append("; exec nohup \"$@\"' sh ");
+        for (String part : command) {
+            script.append('"').append(part).append('"');
+            script.append(' ');
+        }
+        script.append(" 2>&4 4>&- & x=$!; echo $x > ");
+        script.append(getPidFileName());
+        script.append("; exec 3>&- 4>&-; wait $x; echo $? > ");
+        script.append(getExitValueFileName());
+        script.println(") < /dev/null &");
 
         script.append("echo $! > ");
         script.println(getWrapperPidFileName());
 
+        script.println("read ack");
+        script.println("wait");
+
         script.flush();
         script.close();
     }
 
+    /**
+     * Replace the input of the process with a FIFO, or an empty file if a
+     * FIFO cannot be made
+     */
+    private void writeStdInFifo(PrintWriter script) {
+        script.append("rm -f ");
+        script.append(getStdInFileName());
+        script.append("; mkfifo ");
+        script.append(getStdInFileName());
+        script.append(" 2> /dev/null || : > ");
+        script.println(getStdInFileName());
+    }
+
 }
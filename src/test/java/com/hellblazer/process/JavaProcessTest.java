@@ -17,9 +17,20 @@ package com.hellblazer.process;
 import java.io.*;
 import java.net.ConnectException;
 import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.jar.Attributes;
 import java.util.jar.JarEntry;
@@ -27,13 +38,20 @@ import java.util.jar.JarOutputStream;
 import java.util.jar.Manifest;
 
 import javax.management.MBeanServerConnection;
+import javax.management.NotificationFilter;
+import javax.management.NotificationListener;
 import javax.management.ObjectName;
+import javax.management.remote.JMXConnector;
+import javax.security.auth.Subject;
 
 import org.apache.commons.io.input.Tailer;
 import org.apache.commons.io.input.TailerListener;
 import org.apache.commons.io.input.TailerListenerAdapter;
 
+import com.hellblazer.process.impl.AttachDiagnostics;
 import com.hellblazer.process.impl.JavaProcessImpl;
+import com.hellblazer.process.impl.JmxAddressAgent;
+import com.hellblazer.process.impl.JmxConnectorCache;
 import com.hellblazer.process.impl.ManagedProcessFactoryImpl;
 import com.hellblazer.utils.Condition;
 import com.hellblazer.utils.Utils;
@@ -43,6 +61,58 @@ import com.hellblazer.utils.Utils;
  * 
  */
 public class JavaProcessTest extends ProcessTest {
+    private static class StubConnector implements JMXConnector {
+        private volatile boolean closed;
+        private volatile boolean dead;
+
+        @Override
+        public void addConnectionNotificationListener(NotificationListener listener,
+                                                      NotificationFilter filter,
+                                                      Object handback) {
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+
+        @Override
+        public void connect() {
+        }
+
+        @Override
+        public void connect(Map<String, ?> env) {
+        }
+
+        @Override
+        public String getConnectionId() throws IOException {
+            if (closed || dead) {
+                throw new IOException("Connection is dead");
+            }
+            return toString();
+        }
+
+        @Override
+        public MBeanServerConnection getMBeanServerConnection() {
+            return null;
+        }
+
+        @Override
+        public MBeanServerConnection getMBeanServerConnection(Subject delegationSubject) {
+            return null;
+        }
+
+        @Override
+        public void removeConnectionNotificationListener(NotificationListener listener) {
+        }
+
+        @Override
+        public void removeConnectionNotificationListener(NotificationListener l,
+                                                         NotificationFilter f,
+                                                         Object handback) {
+        }
+    }
+
     protected static final String TEST_DIR       = "test-dirs/java-process-test";
     protected static final String TEST_JAR       = "test.jar";
     protected File                testDir;
@@ -81,6 +151,41 @@ public class JavaProcessTest extends ProcessTest {
         }
     }
 
+    public void testDiagnosticCommandSplit() throws Exception {
+        assertEquals(Arrays.asList("VM.log", "output=\"a b.log\"", "'c d'"),
+                     Arrays.asList(AttachDiagnostics.split(" VM.log output=\"a b.log\"\t'c d' ")));
+    }
+
+    public void testDiagnosticCommands() throws Exception {
+        JavaProcess process = launchJmxProcess();
+        try {
+            try (BufferedReader reader = new BufferedReader(
+                                                            new InputStreamReader(
+                                                                                  process.threadDump()))) {
+                String dump = readAll(reader);
+                assertTrue(dump, dump.contains("Full thread dump"));
+                assertTrue(dump, dump.contains("\"main\""));
+            }
+
+            try (BufferedReader reader = new BufferedReader(
+                                                            new InputStreamReader(
+                                                                                  process.heapHistogram()))) {
+                String histogram = readAll(reader);
+                assertTrue(histogram, histogram.contains("#instances"));
+            }
+
+            try (BufferedReader reader = new BufferedReader(
+                                                            new InputStreamReader(
+                                                                                  process.jcmd("VM.flags -all")))) {
+                String flags = readAll(reader);
+                assertTrue(flags, flags.contains("MaxHeapSize"));
+            }
+        } finally {
+            process.destroy();
+        }
+        assertTrue("Process not active", !process.isActive());
+    }
+
     public void testExitValue() throws Exception {
         copyTestClassFile();
         JavaProcess process = new JavaProcessImpl(processFactory.create());
@@ -118,6 +223,100 @@ public class JavaProcessTest extends ProcessTest {
         }
     }
 
+    public void testJmxConnectorCache() throws Exception {
+        final List<StubConnector> connected = new CopyOnWriteArrayList<>();
+        JmxConnectorCache.Connection connection = new JmxConnectorCache.Connection() {
+            @Override
+            public JMXConnector connect() {
+                StubConnector connector = new StubConnector();
+                connected.add(connector);
+                return connector;
+            }
+        };
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        ExecutorService callers = Executors.newCachedThreadPool();
+        JmxConnectorCache cache = new JmxConnectorCache(scheduler, callers,
+                                                        500, 0);
+        try {
+            UUID id = UUID.randomUUID();
+            JMXConnector cached = cache.get(id, "a", 1, connection);
+            assertSame("connector is cached", cached,
+                       cache.get(id, "a", 1, connection));
+            JMXConnector other = cache.get(id, "b", 1, connection);
+            assertNotSame("connectors are keyed by name", cached, other);
+
+            // the process has been restarted
+            JMXConnector restarted = cache.get(id, "a", 2, connection);
+            assertNotSame("reconnected to the new pid", cached, restarted);
+            assertTrue("stale connector closed", connected.get(0).closed);
+
+            // the connection has died
+            connected.get(2).dead = true;
+            JMXConnector reconnected = cache.get(id, "a", 2, connection);
+            assertNotSame("reconnected after failure", restarted, reconnected);
+            assertEquals(4, connected.size());
+
+            cache.close(id);
+            assertEquals("connectors of the process evicted", 0, cache.size());
+            for (StubConnector connector : connected) {
+                assertTrue("connector closed", connector.closed);
+            }
+
+            cache.get(id, "a", 2, connection);
+            long deadline = System.currentTimeMillis() + 5000;
+            while (cache.size() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+            assertEquals("idle connector evicted", 0, cache.size());
+            assertTrue("idle connector closed", connected.get(4).closed);
+
+            // connecting holds no lock evicting the connectors must wait for
+            final CountDownLatch connecting = new CountDownLatch(1);
+            final CountDownLatch release = new CountDownLatch(1);
+            final JmxConnectorCache.Connection slow = new JmxConnectorCache.Connection() {
+                @Override
+                public JMXConnector connect() throws ConnectException {
+                    connecting.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        throw new ConnectException("interrupted");
+                    }
+                    StubConnector connector = new StubConnector();
+                    connected.add(connector);
+                    return connector;
+                }
+            };
+            final JmxConnectorCache shared = cache;
+            final UUID slowId = UUID.randomUUID();
+            Callable<JMXConnector> get = new Callable<JMXConnector>() {
+                @Override
+                public JMXConnector call() throws Exception {
+                    return shared.get(slowId, "slow", 3, slow);
+                }
+            };
+            Future<JMXConnector> first = callers.submit(get);
+            assertTrue(connecting.await(5, TimeUnit.SECONDS));
+            Future<JMXConnector> second = callers.submit(get);
+            callers.submit(new Runnable() {
+                @Override
+                public void run() {
+                    shared.close(slowId);
+                }
+            }).get(5, TimeUnit.SECONDS);
+            release.countDown();
+            assertSame("waiting callers share the connection",
+                       first.get(5, TimeUnit.SECONDS),
+                       second.get(5, TimeUnit.SECONDS));
+            assertTrue("connector evicted while connecting is closed",
+                       connected.get(5).closed);
+        } finally {
+            // cancels the eviction task of the cache
+            scheduler.shutdownNow();
+            callers.shutdownNow();
+        }
+    }
+
     public void testLocalMBeanServerConnection() throws Exception {
         copyTestClassFile();
         final JavaProcess process = new JavaProcessImpl(processFactory.create());
@@ -165,6 +364,101 @@ public class JavaProcessTest extends ProcessTest {
         assertTrue("Process not active", !process.isActive());
     }
 
+    public void testMBeanSampler() throws Exception {
+        JavaProcess process = launchJmxProcess();
+        final MBeanSampler sampler = processFactory.createSampler(HelloWorld.JMX_CONNECTION_NAME);
+        ObjectName memory = new ObjectName("java.lang:type=Memory");
+        ObjectName threading = new ObjectName("java.lang:type=Threading");
+        sampler.register(memory, "HeapMemoryUsage");
+        sampler.register(threading, "ThreadCount", "PeakThreadCount");
+        sampler.register(new ObjectName("java.lang:type=GarbageCollector,*"),
+                         "CollectionCount", "CollectionTime");
+        sampler.add(process);
+
+        try {
+            Condition condition = new Condition() {
+                @Override
+                public boolean isTrue() {
+                    return sampler.sample().isEmpty();
+                }
+            };
+
+            assertTrue("MBeans sampled",
+                       Utils.waitForCondition(60 * 1000, condition));
+
+            MBeanSample sample = sampler.getSample(process);
+            assertNotNull(sample);
+            assertEquals(process.getId(), sample.getProcessId());
+            assertNotNull(sample.getAttribute(memory, "HeapMemoryUsage"));
+            assertEquals(2, sample.getAttributes(threading).size());
+            assertTrue("garbage collectors resolved",
+                       sample.getNames().size() > 2);
+            assertSame(sample, sampler.getSamples().get(process));
+
+            assertTrue(sampler.unregister(memory));
+            assertTrue(sampler.sample().isEmpty());
+            assertFalse(sampler.getSample(process).getNames().contains(memory));
+        } finally {
+            process.destroy();
+        }
+        assertTrue("Process not active", !process.isActive());
+    }
+
+    public void testMemoryEvents() throws Exception {
+        final JavaProcess process = launchJmxProcess();
+        final MemoryEventSubscription subscription = process.subscribeMemoryEvents(HelloWorld.JMX_CONNECTION_NAME,
+                                                                                   null);
+        try {
+            assertTrue("subscribed", Utils.waitForCondition(60 * 1000,
+                                                            new Condition() {
+                                                                @Override
+                                                                public boolean isTrue() {
+                                                                    return subscription.isConnected();
+                                                                }
+                                                            }));
+
+            connection = process.getLocalMBeanServerConnection(HelloWorld.JMX_CONNECTION_NAME);
+            connection.invoke(new ObjectName("java.lang:type=Memory"), "gc",
+                              null, null);
+
+            assertTrue("garbage collection notified",
+                       Utils.waitForCondition(60 * 1000, new Condition() {
+                           @Override
+                           public boolean isTrue() {
+                               return subscription.getPauseHistogram().getCount() > 0;
+                           }
+                       }));
+            assertFalse(subscription.getPauseHistograms().isEmpty());
+
+            final long collected = subscription.getPauseHistogram().getCount();
+            process.restart();
+            assertTrue("subscribed to the restarted process",
+                       Utils.waitForCondition(60 * 1000, new Condition() {
+                           @Override
+                           public boolean isTrue() {
+                               if (!subscription.isConnected()) {
+                                   return false;
+                               }
+                               try {
+                                   process.getLocalMBeanServerConnection(HelloWorld.JMX_CONNECTION_NAME).invoke(new ObjectName(
+                                                                                                                            "java.lang:type=Memory"),
+                                                                                                            "gc",
+                                                                                                            null,
+                                                                                                            null);
+                               } catch (Exception e) {
+                                   return false;
+                               }
+                               return subscription.getPauseHistogram().getCount() > collected;
+                           }
+                       }));
+        } finally {
+            process.destroy();
+        }
+        assertTrue("Process not active", !process.isActive());
+        assertTrue("subscription cancelled", subscription.isCancelled());
+        assertFalse(subscription.isConnected());
+    }
+
     public void testOnDemandInputOutputStreams() throws Exception {
         copyTestClassFile();
         JavaProcess process = new JavaProcessImpl(processFactory.create());
@@ -206,6 +500,44 @@ public class JavaProcessTest extends ProcessTest {
         }
     }
 
+    public void testPublishedJmxAddress() throws Exception {
+        final JavaProcess process = launchJmxProcess();
+        try {
+            Condition condition = new Condition() {
+                @Override
+                public boolean isTrue() {
+                    try {
+                        connection = process.getLocalMBeanServerConnection(HelloWorld.JMX_CONNECTION_NAME);
+                        return true;
+                    } catch (ConnectException e) {
+                        return false;
+                    } catch (NoLocalJmxConnectionException e) {
+                        return false;
+                    } catch (IOException e) {
+                        fail("error retrieving JMX connection: " + e);
+                        return false;
+                    }
+                }
+
+            };
+
+            assertTrue("JMX connection established from the published address",
+                       Utils.waitForCondition(60 * 1000, condition));
+
+            Set<ObjectName> names = connection.queryNames(null, null);
+            assertTrue(names.size() > 1);
+            assertSame("connector is cached",
+                       process.getLocalJmxConnector(HelloWorld.JMX_CONNECTION_NAME),
+                       process.getLocalJmxConnector(HelloWorld.JMX_CONNECTION_NAME));
+            assertEquals("agent jar is private",
+                         PosixFilePermissions.fromString("rwx------"),
+                         Files.getPosixFilePermissions(JmxAddressAgent.getAgentJar().getParentFile().toPath()));
+        } finally {
+            process.destroy();
+        }
+        assertTrue("Process not active", !process.isActive());
+    }
+
     public void testTailStdInputOutputStreams() throws Exception {
         final List<String> lines = new CopyOnWriteArrayList<>();
         TailerListener listener = new TailerListenerAdapter() {
@@ -257,6 +589,28 @@ public class JavaProcessTest extends ProcessTest {
         }
     }
 
+    /**
+     * Launch HelloWorld serving JMX, with its connector addresses published,
+     * for a minute
+     */
+    private JavaProcess launchJmxProcess() throws Exception {
+        copyTestClassFile();
+        JavaProcess process = new JavaProcessImpl(processFactory.create());
+        process.setArguments(new String[] { "-jmx", "60000" });
+        process.setJavaClass(HelloWorld.class.getCanonicalName());
+        process.setJmxAddressPublished(true);
+        boolean launched = false;
+        try {
+            launchProcess(process);
+            launched = true;
+        } finally {
+            if (!launched) {
+                process.destroy();
+            }
+        }
+        return process;
+    }
+
     private void launchProcess(JavaProcess process) throws IOException {
         process.setDirectory(testDir);
         process.setJavaExecutable(javaBin);
@@ -276,6 +630,14 @@ public class JavaProcessTest extends ProcessTest {
         }
     }
 
+    private String readAll(BufferedReader reader) throws IOException {
+        StringBuilder builder = new StringBuilder();
+        for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+            builder.append(line).append('\n');
+        }
+        return builder.toString();
+    }
+
     private void validateExpectedEchoLines(BufferedReader reader)
                                                                  throws IOException {
         String line;
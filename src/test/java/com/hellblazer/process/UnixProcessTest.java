@@ -15,15 +15,50 @@
 package com.hellblazer.process;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.net.URL;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.Tailer;
+import org.apache.commons.io.input.TailerListenerAdapter;
 
 import com.hellblazer.process.impl.AbstractManagedProcess;
+import com.hellblazer.process.impl.CaptureRotator;
 import com.hellblazer.process.impl.JavaProcessImpl;
+import com.hellblazer.process.impl.ManagedProcessFactoryImpl;
+import com.hellblazer.process.impl.ProcFsStatusProvider;
+import com.hellblazer.process.impl.ProcessStatusProvider;
+import com.hellblazer.process.impl.ProcessScheduler;
+import com.hellblazer.process.impl.ProcessTable;
+import com.hellblazer.process.impl.PsStatusProvider;
+import com.hellblazer.process.impl.ReverseLineScanner;
+import com.hellblazer.process.impl.Signals;
 import com.hellblazer.process.impl.UnixProcess;
 import com.hellblazer.utils.Utils;
 
@@ -63,6 +98,464 @@ public class UnixProcessTest extends ProcessTest {
         }
     }
 
+    public void testAsyncLifecycle() throws Exception {
+        ManagedProcess process = new UnixProcess();
+        process.setDirectory(testDir);
+        process.setCommand(new String[] { "sh", "-c", "sleep 1; exit 4" });
+        process.startAsync().get(10, TimeUnit.SECONDS);
+        assertTrue("process is active", process.isActive());
+        assertEquals("process exit value", Integer.valueOf(4),
+                     process.onExit().get(10, TimeUnit.SECONDS));
+        assertFalse("process is not active", process.isActive());
+
+        process = new UnixProcess();
+        process.setDirectory(testDir);
+        process.setCommand(new String[] { "sleep", "60" });
+        process.startAsync().get(10, TimeUnit.SECONDS);
+        CompletableFuture<Integer> exit = process.onExit();
+        assertFalse("process has not exited", exit.isDone());
+        process.stopAsync(10).get(10, TimeUnit.SECONDS);
+        assertFalse("process is not active", process.isActive());
+        exit.get(10, TimeUnit.SECONDS);
+
+        // a fleet is started by the bounded blocking executor
+        List<ManagedProcess> fleet = new ArrayList<>();
+        List<CompletableFuture<Void>> started = new ArrayList<>();
+        for (int i = 0; i < 2 * ProcessScheduler.DEFAULT_BLOCKING_THREADS; i++) {
+            ManagedProcess member = new UnixProcess();
+            member.setDirectory(testDir);
+            member.setCommand(new String[] { "sleep", "60" });
+            fleet.add(member);
+            started.add(member.startAsync());
+        }
+        try {
+            for (CompletableFuture<Void> future : started) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+            int threads = 0;
+            for (Thread thread : Thread.getAllStackTraces().keySet()) {
+                if (thread.getName().startsWith("Process blocking lifecycle")) {
+                    threads++;
+                }
+            }
+            assertTrue("blocking threads bounded: " + threads,
+                       threads <= ProcessScheduler.DEFAULT_BLOCKING_THREADS);
+        } finally {
+            for (ManagedProcess member : fleet) {
+                member.stop();
+            }
+        }
+    }
+
+    public void testCaptureRotation() throws Exception {
+        RotationPolicy policy = new RotationPolicy();
+        try {
+            policy.setSegments(0);
+            fail("no segments");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        policy.setMaxBytes(1000);
+        policy.setSegments(100);
+        policy.setCompress(true);
+        ManagedProcess process = new UnixProcess();
+        process.setRotationPolicy(policy);
+        process.setDirectory(testDir);
+        process.setCommand(new String[] { "sh", "-c",
+                "seq 1 1000; sleep 1; seq 1001 2000; sleep 1" });
+        RotationPolicy copied = process.clone().getRotationPolicy();
+        assertNotSame("clones do not share the policy", policy, copied);
+        assertEquals(1000, copied.getMaxBytes());
+        assertEquals(100, copied.getSegments());
+        assertTrue(copied.isCompress());
+        final List<String> lines = new CopyOnWriteArrayList<>();
+        Tailer tailer = process.tailStdOut(new TailerListenerAdapter() {
+            @Override
+            public void handle(String line) {
+                lines.add(line);
+            }
+        });
+        try {
+            process.start();
+            assertEquals("process exited normally", 0, process.waitFor());
+            File stdOut = new File(testDir,
+                                   AbstractManagedProcess.CONTROL_DIR_PREFIX
+                                           + process.getId() + "/std.out");
+            assertFalse("capture file rotated",
+                        CaptureRotator.segments(stdOut).isEmpty());
+            StringBuilder expected = new StringBuilder();
+            for (int i = 1; i <= 2000; i++) {
+                expected.append(i).append('\n');
+            }
+            assertEquals(expected.toString(),
+                         IOUtils.toString(process.getStdOut()));
+            String tail = process.getStdOutTail(1500);
+            assertEquals(expected.substring(expected.indexOf("\n501\n") + 1),
+                         tail);
+            long deadline = System.currentTimeMillis() + 5000;
+            while (lines.size() < 2000
+                   && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals("listener follows the rotations", 2000, lines.size());
+            assertEquals("2000", lines.get(1999));
+        } finally {
+            tailer.stop();
+        }
+    }
+
+    public void testLogEvents() throws Exception {
+        File log = new File(testDir, "log.txt");
+        try (OutputStream out = new FileOutputStream(log)) {
+            out.write(("{\"level\":\"info\",\"n\":42,\"ok\":true,"
+                       + "\"msg\":\"a \\\"b\\\"\"}\n"
+                       + "level=warn msg=\"disk full\" retry\n"
+                       + "plain text\n").getBytes());
+        }
+        for (CaptureMode mode : CaptureMode.values()) {
+            final List<LogEvent> json = new CopyOnWriteArrayList<>();
+            final List<LogEvent> logfmt = new CopyOnWriteArrayList<>();
+            ManagedProcess process = new UnixProcess();
+            process.setCaptureMode(mode);
+            process.setDirectory(testDir);
+            process.setCommand(new String[] { "cat", log.getAbsolutePath() });
+            process.start();
+            Tailer jsonTailer = process.tailStdOut(LogFormat.JSON,
+                                                   new LogEventListener() {
+                                                       @Override
+                                                       public void handle(Exception e) {
+                                                       }
+
+                                                       @Override
+                                                       public void handle(LogEvent event) {
+                                                           json.add(event);
+                                                       }
+                                                   });
+            Tailer logfmtTailer = process.tailStdOut(LogFormat.LOGFMT,
+                                                     new LogEventListener() {
+                                                         @Override
+                                                         public void handle(Exception e) {
+                                                         }
+
+                                                         @Override
+                                                         public void handle(LogEvent event) {
+                                                             logfmt.add(event);
+                                                         }
+                                                     });
+            try {
+                assertEquals("exit value of the process", 0, process.waitFor());
+                long deadline = System.currentTimeMillis() + 5000;
+                while ((json.size() < 3 || logfmt.size() < 3)
+                       && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(10);
+                }
+                assertEquals(mode + " json events", 3, json.size());
+                LogEvent event = json.get(0);
+                assertTrue(event.isStructured());
+                assertEquals("info", event.get("level"));
+                assertEquals(Long.valueOf(42), event.get("n"));
+                assertEquals(Boolean.TRUE, event.get("ok"));
+                assertEquals("a \"b\"", event.get("msg"));
+                assertFalse(json.get(1).isStructured());
+                assertEquals("plain text", json.get(2).getLine());
+
+                assertEquals(mode + " logfmt events", 3, logfmt.size());
+                event = logfmt.get(1);
+                assertTrue(event.isStructured());
+                assertEquals("warn", event.get("level"));
+                assertEquals("disk full", event.get("msg"));
+                assertEquals(Boolean.TRUE, event.get("retry"));
+                assertFalse(logfmt.get(2).isStructured());
+            } finally {
+                jsonTailer.stop();
+                logfmtTailer.stop();
+            }
+        }
+        StringBuilder deep = new StringBuilder("{\"a\":");
+        for (int i = 0; i < 100000; i++) {
+            deep.append('[');
+        }
+        assertFalse("deeply nested line is unstructured",
+                    LogFormat.JSON.decode(deep.toString()).isStructured());
+    }
+
+    public void testOutputStatistics() throws Exception {
+        MBeanServer mbeanServer = MBeanServerFactory.newMBeanServer();
+        ManagedProcessFactoryImpl factory = new ManagedProcessFactoryImpl(
+                                                                          mbeanServer);
+        for (CaptureMode mode : CaptureMode.values()) {
+            ManagedProcess process = factory.create();
+            assertFalse("metering is opt in", process.isOutputMetered());
+            process.setOutputMetered(true);
+            process.setCaptureMode(mode);
+            process.setDirectory(testDir);
+            process.setCommand(new String[] { "sh", "-c",
+                    "seq 1 1000; echo err >&2" });
+            process.start();
+            Tailer tailer = process.tailStdOut(new TailerListenerAdapter());
+            try {
+                assertEquals("exit value of the process", 0, process.waitFor());
+                long bytes = 0;
+                for (int i = 1; i <= 1000; i++) {
+                    bytes += Integer.toString(i).length() + 1;
+                }
+                OutputStatistics out = process.getStdOutStatistics();
+                long deadline = System.currentTimeMillis() + 5000;
+                while ((out.getLinesWritten() < 1000
+                        || out.getCaptureFileSize() < bytes
+                        || out.getTailerLag() > 0)
+                       && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(10);
+                    out = process.getStdOutStatistics();
+                }
+                assertEquals(mode + " bytes written", bytes,
+                             out.getBytesWritten());
+                assertEquals(mode + " lines written", 1000,
+                             out.getLinesWritten());
+                assertEquals(mode + " capture file size", bytes,
+                             out.getCaptureFileSize());
+                assertEquals(mode + " tailer lag", 0, out.getTailerLag());
+                assertTrue(mode + " last write",
+                           out.getLastWriteMillis() > 0);
+
+                ObjectName name = ManagedProcessFactoryImpl.getObjectName(process.getId());
+                assertTrue("process is registered",
+                           mbeanServer.isRegistered(name));
+                CompositeData err = (CompositeData) mbeanServer.getAttribute(name,
+                                                                             "StdErrStatistics");
+                assertEquals(mode + " err bytes written", 4L,
+                             err.get("bytesWritten"));
+                assertEquals(mode + " err lines written", 1L,
+                             err.get("linesWritten"));
+            } finally {
+                tailer.stop();
+            }
+            process.destroy();
+            assertFalse("destroyed process is unregistered",
+                        mbeanServer.isRegistered(ManagedProcessFactoryImpl.getObjectName(process.getId())));
+        }
+        ManagedProcess process = factory.create();
+        ObjectName name = ManagedProcessFactoryImpl.getObjectName(process.getId());
+        assertTrue("process is registered", mbeanServer.isRegistered(name));
+        factory.shutdown();
+        assertFalse("factory shutdown unregisters its processes",
+                    mbeanServer.isRegistered(name));
+        assertNull("processes are not registered by default",
+                   new ManagedProcessFactoryImpl().getMBeanServer());
+    }
+
+    public void testPipeCapture() throws Exception {
+        RotationPolicy policy = new RotationPolicy();
+        policy.setMaxBytes(5000);
+        policy.setSegments(10);
+        ManagedProcess process = new UnixProcess();
+        process.setCaptureMode(CaptureMode.PIPE);
+        process.setRotationPolicy(policy);
+        process.setTailBufferLines(100);
+        process.setDirectory(testDir);
+        process.setCommand(new String[] { "sh", "-c",
+                "seq 1 1000; echo err >&2; sleep 1; seq 1001 2000; sleep 1; exit 3" });
+        process.start();
+        final List<String> lines = new CopyOnWriteArrayList<>();
+        Tailer tailer = process.tailStdOut(new TailerListenerAdapter() {
+            @Override
+            public void handle(String line) {
+                lines.add(line);
+            }
+        });
+        try {
+            assertEquals("exit value of the process", 3, process.waitFor());
+            StringBuilder expected = new StringBuilder();
+            for (int i = 1; i <= 2000; i++) {
+                expected.append(i).append('\n');
+            }
+            assertEquals(expected.toString(),
+                         IOUtils.toString(process.getStdOut()));
+            assertEquals("err\n", IOUtils.toString(process.getStdErr()));
+            assertEquals("1999\n2000\n", process.getStdOutTail(2));
+            long deadline = System.currentTimeMillis() + 5000;
+            while (lines.size() < 2000
+                   && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals("listener replays and follows the pipe", 2000,
+                         lines.size());
+            assertEquals("1", lines.get(0));
+            assertEquals("2000", lines.get(1999));
+
+            File stdOut = new File(testDir,
+                                   AbstractManagedProcess.CONTROL_DIR_PREFIX
+                                           + process.getId() + "/std.out");
+            assertFalse("capture file rotated",
+                        CaptureRotator.segments(stdOut).isEmpty());
+            final List<String> replayed = new CopyOnWriteArrayList<>();
+            Tailer replay = process.tailStdOut(new TailerListenerAdapter() {
+                @Override
+                public void handle(String line) {
+                    replayed.add(line);
+                }
+            });
+            try {
+                deadline = System.currentTimeMillis() + 5000;
+                while (replayed.size() < 2000
+                       && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(10);
+                }
+                assertEquals("replay includes the rolled segments", lines,
+                             replayed);
+            } finally {
+                replay.stop();
+            }
+        } finally {
+            tailer.stop();
+        }
+    }
+
+    public void testProcessGroup() throws Exception {
+        ManagedProcessFactory factory = new ManagedProcessFactoryImpl();
+        ProcessGroup group = factory.createGroup(4);
+        for (int i = 0; i < 10; i++) {
+            ManagedProcess process = factory.create();
+            process.setDirectory(testDir);
+            process.setCommand(new String[] { "sleep", "60" });
+            group.add(process);
+        }
+        ManagedProcess misconfigured = factory.create();
+        misconfigured.setCommand(new String[] { "sleep", "60" });
+        group.add(misconfigured);
+        // the group stops each member by its own policy
+        ManagedProcess stubborn = factory.create();
+        stubborn.setDirectory(testDir);
+        stubborn.setCommand(new String[] { "sh", "-c",
+                "trap '' TERM; sleep 60" });
+        StopPolicy policy = new StopPolicy();
+        policy.setGracePeriodMillis(100);
+        policy.setKillProcessTree(true);
+        stubborn.setStopPolicy(policy);
+        group.add(stubborn);
+        try {
+            Map<ManagedProcess, Throwable> failures = group.start();
+            assertEquals("one member failed to start", 1, failures.size());
+            assertTrue("misconfigured member failed to start",
+                       failures.get(misconfigured) instanceof IllegalStateException);
+            group.remove(misconfigured);
+            for (ManagedProcess process : group) {
+                assertTrue("member is active", process.isActive());
+            }
+            long begin = System.currentTimeMillis();
+            assertTrue("all members restarted", group.restart().isEmpty());
+            assertTrue("restart honours the member stop policy",
+                       System.currentTimeMillis() - begin < 5000);
+            for (ManagedProcess process : group) {
+                assertTrue("member is active", process.isActive());
+            }
+        } finally {
+            long begin = System.currentTimeMillis();
+            assertTrue("all members stopped", group.stop().isEmpty());
+            assertTrue("stop honours the member stop policy",
+                       System.currentTimeMillis() - begin < 5000);
+        }
+        for (ManagedProcess process : group) {
+            assertFalse("member is not active", process.isActive());
+        }
+    }
+
+    public void testProcessTable() throws Exception {
+        ManagedProcess process = new UnixProcess();
+        process.setDirectory(testDir);
+        process.setCommand(new String[] { "sleep", "60" });
+        process.start();
+        ProcessTable table = new ProcessTable(60 * 1000);
+        try {
+            assertTrue("new process is active", process.isActive());
+            String status = table.getStatus(process.getPid());
+            assertNotNull("process in snapshot", status);
+            assertSame("snapshot is shared", table.getSnapshot(),
+                       table.getSnapshot());
+            Signals.signal(process.getPid(), Signals.SIGKILL);
+            process.waitFor();
+            assertFalse("exited process is inactive", process.isActive());
+            assertEquals("snapshot is cached", status,
+                         table.getStatus(process.getPid()));
+            table.invalidate();
+            assertNull("exited process not in fresh snapshot",
+                       table.getStatus(process.getPid()));
+        } finally {
+            process.stop();
+        }
+    }
+
+    public void testProcessStatus() throws Exception {
+        UnixProcess process = new UnixProcess();
+        process.setDirectory(testDir);
+        process.setCommand(new String[] { "sleep", "60" });
+        process.start();
+        try {
+            int pid = process.getPid();
+            String psStatus = new PsStatusProvider().getStatus(pid);
+            assertNotNull("ps reports process status", psStatus);
+            if (ProcFsStatusProvider.isAvailable()) {
+                String procStatus = new ProcFsStatusProvider().getStatus(pid);
+                assertNotNull("/proc reports process status", procStatus);
+                assertEquals("/proc and ps report the same state",
+                             psStatus.substring(0, 1), procStatus);
+            }
+        } finally {
+            process.stop();
+        }
+        assertNull("ps reports no status for dead process",
+                   new PsStatusProvider().getStatus(process.getPid()));
+        if (ProcFsStatusProvider.isAvailable()) {
+            assertNull("/proc reports no status for dead process",
+                       new ProcFsStatusProvider().getStatus(process.getPid()));
+        }
+    }
+
+    public void testReverseLineScanner() throws Exception {
+        Charset charset = Charset.forName("UTF-8");
+        assertTrue(ReverseLineScanner.supports(charset));
+        assertFalse(ReverseLineScanner.supports(Charset.forName("UTF-16")));
+        File file = new File(testDir, "scan.txt");
+        FileOutputStream out = new FileOutputStream(file);
+        out.write("one\r\ntwo\rthree\n\nfive\u00e9\n".getBytes(charset));
+        out.close();
+        // a window smaller than a line exercises scanning across windows
+        for (int window : new int[] { 1, 3, ReverseLineScanner.DEFAULT_WINDOW_SIZE }) {
+            assertEquals("", ReverseLineScanner.tail(file, 0, charset, window));
+            assertEquals("five\u00e9\n",
+                         ReverseLineScanner.tail(file, 1, charset, window));
+            assertEquals("three\n\nfive\u00e9\n",
+                         ReverseLineScanner.tail(file, 3, charset, window));
+            assertEquals("one\ntwo\nthree\n\nfive\u00e9\n",
+                         ReverseLineScanner.tail(file, 10, charset, window));
+        }
+        out = new FileOutputStream(file);
+        out.write("unterminated".getBytes(charset));
+        out.close();
+        assertEquals("unterminated\n",
+                     ReverseLineScanner.tail(file, 2, charset));
+    }
+
+    public void testSignals() throws Exception {
+        ManagedProcess process = new UnixProcess();
+        process.setDirectory(testDir);
+        process.setCommand(new String[] { "sleep", "60" });
+        process.start();
+        try {
+            if (Signals.isInVmSignallingAvailable()) {
+                assertTrue("signal delivered from within the VM",
+                           Signals.signalInVm(process.getPid(),
+                                              Signals.SIGTERM));
+            } else {
+                Signals.signal(process.getPid(), Signals.SIGTERM);
+            }
+            assertEquals("process terminated by SIGTERM",
+                         128 + Signals.SIGTERM, process.waitFor());
+        } finally {
+            process.stop();
+        }
+    }
+
     public void testSmoke() throws Exception {
         ManagedProcess process = new UnixProcess();
         process.setDirectory(testDir);
@@ -72,6 +565,124 @@ public class UnixProcessTest extends ProcessTest {
         assertFalse("process is not active", process.isActive());
     }
 
+    public void testStopPolicy() throws Exception {
+        ManagedProcess process = new UnixProcess();
+        process.setDirectory(testDir);
+        process.setCommand(new String[] { "sleep", "60" });
+        process.start();
+        long start = System.currentTimeMillis();
+        process.stop();
+        assertTrue("process stopped promptly by SIGTERM",
+                   System.currentTimeMillis() - start < 1000);
+        assertFalse(process.isActive());
+
+        // A process which ignores SIGTERM, along with its child
+        process = new UnixProcess();
+        process.setDirectory(testDir);
+        process.setCommand(new String[] { "sh", "-c",
+                "trap '' TERM; sleep 60; true" });
+        StopPolicy policy = new StopPolicy();
+        policy.setGracePeriodMillis(300);
+        policy.setKillProcessTree(true);
+        process.setStopPolicy(policy);
+        StopPolicy copied = process.clone().getStopPolicy();
+        assertNotSame("clones do not share the policy", policy, copied);
+        assertEquals(300, copied.getGracePeriodMillis());
+        assertTrue(copied.isKillProcessTree());
+        process.start();
+        ProcessStatusProvider provider = ProcFsStatusProvider.isAvailable() ? new ProcFsStatusProvider()
+                                                                           : new PsStatusProvider();
+        List<Integer> children = provider.getChildren(process.getPid());
+        for (int i = 0; children.isEmpty() && i < 200; i++) {
+            Thread.sleep(10);
+            children = provider.getChildren(process.getPid());
+        }
+        assertEquals(1, children.size());
+        start = System.currentTimeMillis();
+        process.stop();
+        long elapsed = System.currentTimeMillis() - start;
+        assertTrue("stop escalated after the grace period: " + elapsed,
+                   elapsed >= 300 && elapsed < 5000);
+        assertEquals("process terminated by SIGKILL", 128 + Signals.SIGKILL,
+                     process.waitFor());
+        String status = provider.getStatus(children.get(0));
+        for (int i = 0; status != null && !status.startsWith("Z") && i < 200; i++) {
+            Thread.sleep(10);
+            status = provider.getStatus(children.get(0));
+        }
+        assertTrue("child killed with the process tree: " + status,
+                   status == null || status.startsWith("Z"));
+    }
+
+    public void testStart() throws Exception {
+        ManagedProcess process = new UnixProcess();
+        process.setDirectory(testDir);
+        process.setCommand(new String[] { "sleep", "60" });
+        long start = System.currentTimeMillis();
+        process.start();
+        long elapsed = System.currentTimeMillis() - start;
+        try {
+            assertTrue("process started promptly: " + elapsed, elapsed < 1000);
+            assertNotNull("pid reported", process.getPid());
+            assertTrue("process is active", process.isActive());
+            assertEquals("", process.getStdOutTail(10));
+            assertEquals("", process.getStdErrTail(10));
+        } finally {
+            process.stop();
+        }
+    }
+
+    public void testStdIn() throws Exception {
+        for (CaptureMode mode : CaptureMode.values()) {
+            ManagedProcess process = new UnixProcess();
+            process.setCaptureMode(mode);
+            process.setDirectory(testDir);
+            process.setCommand(new String[] { "cat" });
+            process.start();
+            try {
+                OutputStream in = process.getStdIn();
+                assertSame("stdin is retained", in, process.getStdIn());
+                in.write("hello\n".getBytes());
+                in.close();
+                long deadline = System.currentTimeMillis() + 5000;
+                while (!process.getStdOutTail(1).equals("hello\n")
+                       && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(10);
+                }
+                assertEquals("input appended later is read", "hello\n",
+                             process.getStdOutTail(1));
+                byte[] bulk = new byte[1024 * 1024];
+                Arrays.fill(bulk, (byte) 'x');
+                in.write(bulk);
+                process.closeStdIn();
+                assertEquals("process reads the end of its input", 0,
+                             process.waitFor());
+                assertEquals(6 + bulk.length,
+                             IOUtils.toByteArray(process.getStdOut()).length);
+                try {
+                    in.write('x');
+                    fail("input is closed");
+                } catch (IOException e) {
+                    // expected
+                }
+                boolean exited = false;
+                deadline = System.currentTimeMillis() + 5000;
+                while (!exited && System.currentTimeMillis() < deadline) {
+                    try {
+                        process.getStdIn();
+                        Thread.sleep(10);
+                    } catch (IllegalThreadStateException e) {
+                        exited = true;
+                    }
+                }
+                assertTrue("stdin is unavailable once the process exits",
+                           exited);
+            } finally {
+                process.destroy();
+            }
+        }
+    }
+
     public void testStdOut() throws Exception {
         String[] names = { "bar", "baz", "foo" };
 
@@ -113,6 +724,215 @@ public class UnixProcessTest extends ProcessTest {
         assertEquals("Expected ls result", expected.toString(), rslt.toString());
     }
 
+    public void testStreamingTail() throws Exception {
+        ManagedProcess process = new UnixProcess();
+        process.setDirectory(testDir);
+        process.setCommand(new String[] { "sh", "-c",
+                "seq 1 500; printf 'a\\r\\nb' >&2" });
+        process.start();
+        assertEquals("process exited normally", 0, process.waitFor());
+        StringBuilder builder = new StringBuilder();
+        process.writeStdOutTail(3, builder);
+        assertEquals("498\n499\n500\n", builder.toString());
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        process.writeStdOutTail(3, Channels.newChannel(bytes));
+        assertEquals("498\n499\n500\n", bytes.toString());
+        bytes.reset();
+        process.writeStdErrTail(2, Channels.newChannel(bytes));
+        assertEquals("channel tail is transferred as written", "a\r\nb\n",
+                     bytes.toString());
+        assertEquals("a\nb\n", process.getStdErrTail(2));
+        try {
+            process.getStdOutTail(AbstractManagedProcess.MAX_TAIL_LINES + 1);
+            fail("tail larger than the maximum");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            process.writeStdOutTail(-1, new StringBuilder());
+            fail("negative tail");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    public void testTailBuffer() throws Exception {
+        ManagedProcess process = new UnixProcess();
+        try {
+            process.setTailBufferLines(AbstractManagedProcess.MAX_TAIL_BUFFER_LINES + 1);
+            fail("tail buffer larger than the maximum");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        process.setTailBufferLines(100);
+        process.setDirectory(testDir);
+        process.setCommand(new String[] { "sh", "-c",
+                "seq 1 500; printf '1\\r2\\r\\n3\\n' >&2" });
+        process.start();
+        assertEquals("process exited normally", 0, process.waitFor());
+        StringBuilder expected = new StringBuilder();
+        for (int i = 491; i <= 500; i++) {
+            expected.append(i).append('\n');
+        }
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!expected.toString().equals(process.getStdOutTail(10))
+               && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(expected.toString(), process.getStdOutTail(10));
+        deadline = System.currentTimeMillis() + 5000;
+        while (!"1\n2\n3\n".equals(process.getStdErrTail(10))
+               && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals("lines split on CR, CR LF and LF", "1\n2\n3\n",
+                     process.getStdErrTail(10));
+        assertEquals("buffered tail agrees with the file",
+                     process.getStdErrTail(200), process.getStdErrTail(10));
+        assertEquals("tail beyond the buffer is read from the file", 200,
+                     process.getStdOutTail(200).split("\n").length);
+        assertTrue(process.getStdOutTail(200).startsWith("301\n"));
+    }
+
+    public void testTailListeners() throws Exception {
+        final List<String> out = new CopyOnWriteArrayList<>();
+        final List<String> err = new CopyOnWriteArrayList<>();
+        final List<String> blocked = new CopyOnWriteArrayList<>();
+        final CountDownLatch release = new CountDownLatch(1);
+        ManagedProcess process = new UnixProcess();
+        process.setDirectory(testDir);
+        process.setCommand(new String[] { "sh", "-c",
+                "seq 1 3; sleep 1; seq 4 6; printf '1\\r2\\r\\n' >&2" });
+        // subscribed before the control directory exists
+        Tailer outTailer = process.tailStdOut(new TailerListenerAdapter() {
+            @Override
+            public void handle(String line) {
+                out.add(line);
+            }
+        });
+        // a listener which blocks holds up neither the other tailers nor
+        // the lifecycle of the process
+        Tailer blockedTailer = process.tailStdOut(new TailerListenerAdapter() {
+            @Override
+            public void handle(String line) {
+                blocked.add(Thread.currentThread().getName());
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        process.start();
+        Tailer errTailer = process.tailStdErr(new TailerListenerAdapter() {
+            @Override
+            public void handle(String line) {
+                err.add(line);
+                if ("1".equals(line)) {
+                    // the line is not delivered again
+                    throw new IllegalStateException("listener failure");
+                }
+            }
+        });
+        try {
+            assertEquals("process exited normally", 0, process.waitFor());
+            long deadline = System.currentTimeMillis() + 5000;
+            while ((out.size() < 6 || err.size() < 2)
+                   && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals("[1, 2, 3, 4, 5, 6]", out.toString());
+            assertEquals("[1, 2]", err.toString());
+            process.onExit().get(5, TimeUnit.SECONDS);
+            assertEquals(1, blocked.size());
+            assertTrue(blocked.get(0),
+                       blocked.get(0).startsWith("Tail listeners"));
+            release.countDown();
+            deadline = System.currentTimeMillis() + 5000;
+            while (blocked.size() < 6 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals("lines queued for the blocked listener delivered",
+                         6, blocked.size());
+        } finally {
+            release.countDown();
+            outTailer.stop();
+            errTailer.stop();
+            blockedTailer.stop();
+        }
+    }
+
+    public void testTailWhileRotating() throws Exception {
+        Charset charset = Charset.forName("UTF-8");
+        final File file = new File(testDir, "rotating.txt");
+        RotationPolicy policy = new RotationPolicy();
+        policy.setSegments(2);
+        final CaptureRotator rotator = new CaptureRotator(
+                                                          file,
+                                                          policy,
+                                                          new Supplier<List<CaptureRotator.Reader>>() {
+                                                              @Override
+                                                              public List<CaptureRotator.Reader> get() {
+                                                                  return Collections.emptyList();
+                                                              }
+                                                          });
+        final StringBuilder lines = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            lines.append("line ").append(i).append('\n');
+        }
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(lines.toString().getBytes());
+        }
+        final AtomicBoolean done = new AtomicBoolean();
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (!done.get()) {
+                        try (OutputStream out = new FileOutputStream(file, true)) {
+                            out.write(lines.toString().getBytes());
+                        }
+                        rotator.rotate();
+                    }
+                } catch (Throwable e) {
+                    failure.set(e);
+                }
+            }
+        }, "Rotating writer");
+        writer.start();
+        int tails = 0;
+        try {
+            long deadline = System.currentTimeMillis() + 2000;
+            while (System.currentTimeMillis() < deadline) {
+                // windows smaller than the file map or read it piecemeal
+                String tail = ReverseLineScanner.tail(file, 5000, charset, 4096);
+                for (String line : tail.split("\n")) {
+                    assertTrue(line,
+                               line.startsWith("line ")
+                                       || "line ".startsWith(line));
+                }
+                tails++;
+            }
+        } finally {
+            done.set(true);
+            writer.join();
+        }
+        assertNull("rotated while tailing", failure.get());
+        assertTrue(tails > 0);
+    }
+
+    public void testWaitFor() throws Exception {
+        ManagedProcess process = new UnixProcess();
+        process.setDirectory(testDir);
+        process.setCommand(new String[] { "sh", "-c", "sleep 1; exit 3" });
+        process.start();
+        assertTrue("process is active", process.isActive());
+        assertEquals("process exit value", 3, process.waitFor());
+        assertFalse("process is not active", process.isActive());
+        assertEquals("exit value", Integer.valueOf(3), process.getExitValue());
+    }
+
     protected void copyTestClassFile() throws Exception {
         String classFileName = HelloWorld.class.getCanonicalName().replace('.',
                                                                            '/')